@@ -1,6 +1,7 @@
 plugins {
     java
     id("xyz.jpenilla.run-paper") version "2.3.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.deehain.smp"
@@ -24,6 +25,61 @@ dependencies {
     compileOnly("io.papermc.paper:paper-api:1.20.4-R0.1-SNAPSHOT")
     compileOnly("me.clip:placeholderapi:2.11.5")
     compileOnly("com.google.code.gson:gson:2.10.1")
+
+    // The server provides these at runtime; benchmarks run outside it and need them on the classpath.
+    jmh("io.papermc.paper:paper-api:1.20.4-R0.1-SNAPSHOT")
+    jmh("com.google.code.gson:gson:2.10.1")
+
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+// Unit tests for the bridge's own data structures: ./gradlew test
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Benchmarks for the bridge hot paths: ./gradlew jmh
+// Results go to build/results/jmh/results.json; keep a copy per change to compare before and after.
+// Narrow the run with e.g. ./gradlew jmh -Pjmh.includes=OfflineQueue
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    (findProperty("jmh.includes") as String?)?.let { includes.set(listOf(it)) }
+}
+
+// Headless load test: boots the plugin against a stub server (20 TPS scheduler, fake players,
+// recording command dispatcher) and drives /action over HTTP. ./gradlew loadTest
+// Settings are -Ploadtest.<name>=<value> (mode=action|stream, concurrency, durationSeconds, onlineRatio, ...);
+// -Ploadtest.config.<key>=<value> overrides a config.yml key. Report: build/reports/loadtest/result.json
+val loadtest: SourceSet by sourceSets.creating
+
+dependencies {
+    "loadtestImplementation"("io.papermc.paper:paper-api:1.20.4-R0.1-SNAPSHOT")
+    "loadtestImplementation"("com.google.code.gson:gson:2.10.1")
+    "loadtestRuntimeOnly"("me.clip:placeholderapi:2.11.5")
+}
+
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the bridge against a stub server and reports throughput and latency."
+    val pluginClasspath = sourceSets.main.get().output
+    dependsOn(tasks.classes)
+    inputs.files(pluginClasspath)
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("com.deehain.smp.networkbridge.loadtest.LoadTest")
+    systemProperty("loadtest.pluginClasspath", pluginClasspath.files.joinToString(File.pathSeparator))
+    systemProperty("loadtest.dataFolder", layout.buildDirectory.dir("loadtest/plugin").get().asFile.path)
+    systemProperty("loadtest.report", layout.buildDirectory.file("reports/loadtest/result.json").get().asFile.path)
+    project.properties
+        .filterKeys { it.startsWith("loadtest.") }
+        .forEach { (key, value) -> systemProperty(key, value.toString()) }
+    outputs.upToDateWhen { false }
 }
 
 tasks.processResources {
@@ -40,3 +96,8 @@ tasks.jar {
 tasks.runServer {
     minecraftVersion("1.21.10")
 }
+
+// Same plugin on region-threaded Folia: ./gradlew runFolia
+runPaper.folia.registerTask {
+    minecraftVersion("1.21.10")
+}
@@ -0,0 +1,56 @@
+package com.deehain.smp.networkbridge;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command expansion as done in applyAction: the compiled templates against the String.replace
+ * chain they replaced, which is kept here as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandTemplateBenchmark {
+
+    @Param({
+            "say [Bridge] Streamer %streamer% added %player_name% to their nation",
+            "teamadmin add %player_name% %nation%",
+            "lp user %player_uuid% parent add %streamer% %vault_rank%"
+    })
+    public String template;
+
+    private CommandTemplate compiled;
+    private final StringBuilder buffer = new StringBuilder(128);
+    private final String playerName = "Steve_1234";
+    private final String streamer = "Palacity";
+    private final String uuid = UUID.nameUUIDFromBytes("Steve_1234".getBytes()).toString();
+    private final String nation = "Palacity";
+
+    @Setup
+    public void setup() {
+        compiled = CommandTemplate.compile(template);
+    }
+
+    @Benchmark
+    public String compiledExpand() {
+        return compiled.expand(buffer, playerName, streamer, uuid, nation);
+    }
+
+    @Benchmark
+    public String stringReplace() {
+        String cmd = template
+                .replace("%player_name%", playerName)
+                .replace("%streamer%", streamer);
+        if (cmd.contains("%player_uuid%")) {
+            cmd = cmd.replace("%player_uuid%", uuid);
+        }
+        return cmd.replace("%nation%", nation);
+    }
+
+    @Benchmark
+    public CommandTemplate compile() {
+        return CommandTemplate.compile(template);
+    }
+}
@@ -0,0 +1,72 @@
+package com.deehain.smp.networkbridge;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Body reading and decoding for POST /action: the streaming {@link ActionRequestParser} used by
+ * ActionHandler, against the read-to-String plus {@link FormCodec#parseFormEncoded} path it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormCodecBenchmark {
+
+    @Param({"plain", "encoded", "json"})
+    public String shape;
+
+    private String body;
+    private byte[] bodyBytes;
+    private String contentType;
+    private final ActionRequestParser parser = new ActionRequestParser(8192, 1);
+
+    @Setup
+    public void setup() {
+        if ("plain".equals(shape)) {
+            // What the website sends today.
+            body = "token=3f9c1e2a7b6d4c8e9a0b1c2d3e4f5a6b&playerName=Steve_1234&streamer=Palacity&action=add"
+                    + "&requestId=6f1d2c3b-4a59-4e8f-9b7a-0c1d2e3f4a5b";
+        } else if ("json".equals(shape)) {
+            body = "{\"token\":\"3f9c1e2a7b6d4c8e9a0b1c2d3e4f5a6b\",\"playerName\":\"Steve_1234\",\"streamer\":\"Palacity\","
+                    + "\"action\":\"add\",\"requestId\":\"6f1d2c3b-4a59-4e8f-9b7a-0c1d2e3f4a5b\"}";
+        } else {
+            // Worst realistic case: every value percent-encoded.
+            body = "token=3f9c1e2a%2B7b6d4c8e%2F9a0b1c2d3e4f5a6b%3D%3D&playerName=Steve%5F1234&streamer=Pala%20city"
+                    + "&action=remove&requestId=6f1d2c3b%2D4a59%2D4e8f%2D9b7a%2D0c1d2e3f4a5b";
+        }
+        bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        contentType = "json".equals(shape) ? "application/json" : "application/x-www-form-urlencoded";
+    }
+
+    @Benchmark
+    public String streamingParse() throws IOException {
+        ActionRequestParser.ActionRequest request = parser.acquire();
+        try {
+            parser.parse(new ByteArrayInputStream(bodyBytes), contentType, bodyBytes.length, request);
+            return request.playerName;
+        } finally {
+            parser.release(request);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> parseFormEncoded() {
+        return FormCodec.parseFormEncoded(body);
+    }
+
+    @Benchmark
+    public String readBody() throws IOException {
+        return FormCodec.readBody(new ByteArrayInputStream(bodyBytes), Integer.MAX_VALUE);
+    }
+
+    // The pre-streaming ActionHandler path (form bodies only).
+    @Benchmark
+    public Map<String, String> readAndParse() throws IOException {
+        return FormCodec.parseFormEncoded(FormCodec.readBody(new ByteArrayInputStream(bodyBytes), Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,74 @@
+package com.deehain.smp.networkbridge;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline queue operations on the join / periodic-sweep path (processQueuedChangesForPlayer and
+ * processQueuedChangesForOnlinePlayers) with 1k, 10k and 100k queued players.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OfflineQueueBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    private OfflineQueue queue;
+    private String[] queued;
+    private String[] notQueued;
+
+    @Setup
+    public void setup() {
+        queue = new OfflineQueue();
+        long now = System.currentTimeMillis();
+        queued = new String[1024];
+        notQueued = new String[1024];
+        for (int i = 0; i < players; i++) {
+            queue.enqueue("Player" + i, "Streamer" + (i % 40), "add", now);
+        }
+        for (int i = 0; i < queued.length; i++) {
+            // Names arrive from Bukkit in their real case, which need not match the queued case.
+            queued[i] = "PLAYER" + (i * 7919 % players);
+            notQueued[i] = "Online" + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String pick(String[] names) {
+            return names[next++ & (names.length - 1)];
+        }
+    }
+
+    // The sweep checks every online player; most have nothing queued.
+    @Benchmark
+    public boolean hasChangesMiss(Cursor cursor) {
+        return queue.hasChanges(cursor.pick(notQueued));
+    }
+
+    @Benchmark
+    public boolean hasChangesHit(Cursor cursor) {
+        return queue.hasChanges(cursor.pick(queued));
+    }
+
+    // take() as on join, then re-enqueue so the queue size stays constant across invocations.
+    @Benchmark
+    @Threads(1)
+    public QueuedTeamChange takeAndRequeue(Cursor cursor) {
+        String name = cursor.pick(queued);
+        List<QueuedTeamChange> taken = queue.take(name);
+        QueuedTeamChange change = taken.get(0);
+        return queue.enqueue(change.playerName, change.streamer, change.actionType, change.createdAt);
+    }
+
+    @Benchmark
+    public QueuedTeamChange enqueueCoalescing(Cursor cursor) {
+        return queue.enqueue(cursor.pick(queued), "Streamer1", "add", 0L);
+    }
+}
@@ -0,0 +1,82 @@
+package com.deehain.smp.networkbridge;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline queue persistence as done by saveQueuedChanges (pretty JSON, atomic rewrite) and
+ * loadQueuedChanges (parse and restore into a fresh queue). The save includes the fsync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueuePersistenceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson compactGson = new Gson();
+    private OfflineQueue queue;
+    private Path dir;
+    private Path saveFile;
+    private Path loadFile;
+
+    @Setup
+    public void setup() throws IOException {
+        queue = new OfflineQueue();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < players; i++) {
+            QueuedTeamChange change = queue.enqueue("Player" + i, "Streamer" + (i % 40), i % 5 == 0 ? "remove" : "add", now);
+            // A tenth of the file is applied history, as after a busy day with the default retention.
+            if (i % 10 == 0) {
+                queue.take(change.playerName);
+                queue.markApplied(change, now);
+            }
+        }
+        dir = Files.createTempDirectory("bridge-queue-bench");
+        saveFile = dir.resolve("queued-team-changes.json");
+        loadFile = dir.resolve("queued-team-changes-load.json");
+        QueueJournal.writeAtomically(loadFile, gson.toJson(queue.snapshot()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(saveFile);
+        Files.deleteIfExists(loadFile);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long saveJson() throws IOException {
+        return QueueJournal.writeAtomically(saveFile, gson.toJson(queue.snapshot()));
+    }
+
+    // Serialization alone, without the disk write; what a journal snapshot costs on top of I/O.
+    @Benchmark
+    public String serializeCompact() {
+        return compactGson.toJson(queue.snapshot());
+    }
+
+    @Benchmark
+    public OfflineQueue loadJson() throws IOException {
+        OfflineQueue loaded = new OfflineQueue();
+        try (Reader reader = Files.newBufferedReader(loadFile, StandardCharsets.UTF_8)) {
+            QueuedTeamChange[] arr = gson.fromJson(reader, QueuedTeamChange[].class);
+            HashSet<Long> knownSeqs = new HashSet<>();
+            for (QueuedTeamChange change : arr) {
+                loaded.restore(change, knownSeqs, 0L);
+            }
+        }
+        return loaded;
+    }
+}
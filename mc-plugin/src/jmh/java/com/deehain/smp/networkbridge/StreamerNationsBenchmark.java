@@ -0,0 +1,55 @@
+package com.deehain.smp.networkbridge;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** getNationForStreamer against streamer-nations maps far larger than the shipped config. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StreamerNationsBenchmark {
+
+    @Param({"16", "1000", "100000"})
+    public int streamers;
+
+    private ConfigurationSection section;
+    private StreamerNations index;
+    private String[] hits;
+    private int next;
+
+    @Setup
+    public void setup() {
+        section = new MemoryConfiguration().createSection("streamer-nations");
+        for (int i = 0; i < streamers; i++) {
+            section.set("Streamer" + i, "Nation" + i);
+        }
+        index = StreamerNations.from(section);
+        // Requests rarely match the configured case exactly.
+        hits = new String[1024];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = "sTrEaMeR" + (i * 7919 % streamers);
+        }
+    }
+
+    @Benchmark
+    public String lookupHit() {
+        String streamer = hits[next++ & (hits.length - 1)];
+        return index.nationFor(streamer);
+    }
+
+    @Benchmark
+    public String lookupMiss() {
+        return index.nationFor("NotAStreamer");
+    }
+
+    // Cost of /mcpbridge reload for this section size.
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public StreamerNations rebuild() {
+        return StreamerNations.from(section);
+    }
+}
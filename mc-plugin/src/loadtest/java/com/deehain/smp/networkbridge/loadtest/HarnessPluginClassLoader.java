@@ -0,0 +1,89 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import io.papermc.paper.plugin.configuration.PluginMeta;
+import io.papermc.paper.plugin.provider.classloader.ConfiguredPluginClassLoader;
+import io.papermc.paper.plugin.provider.classloader.PluginClassLoaderGroup;
+import org.bukkit.Server;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.logging.Logger;
+
+/**
+ * Loads the plugin the way Paper does, as far as {@link JavaPlugin}'s constructor is concerned:
+ * from a {@link ConfiguredPluginClassLoader} that initializes the instance while it is constructed.
+ * Plugin classes are loaded child-first so they are defined by this loader; Bukkit, Gson and the
+ * harness itself come from the parent.
+ */
+final class HarnessPluginClassLoader extends URLClassLoader implements ConfiguredPluginClassLoader {
+
+    private static final String PLUGIN_PACKAGE = "com.deehain.smp.networkbridge.";
+    private static final String HARNESS_PACKAGE = "com.deehain.smp.networkbridge.loadtest.";
+
+    private final Server server;
+    private final PluginDescriptionFile description;
+    private final File dataFolder;
+    private final Logger logger;
+    private JavaPlugin plugin;
+
+    HarnessPluginClassLoader(URL[] urls, ClassLoader parent, Server server, PluginDescriptionFile description,
+                             File dataFolder, Logger logger) {
+        super(urls, parent);
+        this.server = server;
+        this.description = description;
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+    }
+
+    JavaPlugin newPlugin() throws ReflectiveOperationException {
+        Class<? extends JavaPlugin> mainClass = Class.forName(description.getMain(), true, this).asSubclass(JavaPlugin.class);
+        return mainClass.getDeclaredConstructor().newInstance();
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!name.startsWith(PLUGIN_PACKAGE) || name.startsWith(HARNESS_PACKAGE)) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) {
+                loaded = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(loaded);
+            }
+            return loaded;
+        }
+    }
+
+    @Override
+    public Class<?> loadClass(String name, boolean resolve, boolean checkGlobal, boolean checkLibraries) throws ClassNotFoundException {
+        return loadClass(name, resolve);
+    }
+
+    @Override
+    public PluginMeta getConfiguration() {
+        return description;
+    }
+
+    @Override
+    public void init(JavaPlugin javaPlugin) {
+        this.plugin = javaPlugin;
+        javaPlugin.init(server, description, dataFolder, new File(dataFolder.getParentFile(), description.getName() + ".jar"),
+                this, description, logger);
+    }
+
+    @Override
+    public JavaPlugin getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    public PluginClassLoaderGroup getGroup() {
+        return null;
+    }
+}
@@ -0,0 +1,349 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import com.google.gson.GsonBuilder;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Boots the bridge against a stub server and drives /action (or, with {@code loadtest.mode=stream},
+ * /action/stream) with concurrent traffic.
+ *
+ * Run with {@code ./gradlew loadTest}. Every setting is a {@code -Ploadtest.<name>=<value>} project
+ * property (see {@link #main(String[])} for names and defaults); {@code -Ploadtest.config.<key>=<value>}
+ * overrides a key in the plugin's config.yml, e.g. {@code -Ploadtest.config.queue-storage=journal}.
+ */
+public final class LoadTest {
+
+    private static final Logger LOG = Logger.getLogger("LoadTest");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties props = System.getProperties();
+        // "action": one POST /action per item; "stream": long-lived /action/stream connections.
+        String mode = props.getProperty("loadtest.mode", "action");
+        int concurrency = intProp(props, "loadtest.concurrency", 32);
+        int warmupSeconds = intProp(props, "loadtest.warmupSeconds", 5);
+        int durationSeconds = intProp(props, "loadtest.durationSeconds", 30);
+        int onlinePlayers = intProp(props, "loadtest.onlinePlayers", 100);
+        int offlinePlayers = intProp(props, "loadtest.offlinePlayers", 5000);
+        double onlineRatio = doubleProp(props, "loadtest.onlineRatio", 0.5);
+        double removeRatio = doubleProp(props, "loadtest.removeRatio", 0.2);
+        int streamers = intProp(props, "loadtest.streamers", 16);
+        int loginsPerSecond = intProp(props, "loadtest.loginsPerSecond", 5);
+        File dataFolder = new File(props.getProperty("loadtest.dataFolder", "build/loadtest/plugin"));
+        File report = new File(props.getProperty("loadtest.report", "build/reports/loadtest/result.json"));
+        List<URL> pluginClasspath = new ArrayList<>();
+        for (String entry : props.getProperty("loadtest.pluginClasspath", "").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) pluginClasspath.add(new File(entry).toURI().toURL());
+        }
+        if (pluginClasspath.isEmpty()) {
+            throw new IllegalStateException("loadtest.pluginClasspath is not set; run through ./gradlew loadTest");
+        }
+
+        Logger pluginLogger = Logger.getLogger("DeeHainNetworkBridge");
+        pluginLogger.setLevel(Level.parse(props.getProperty("loadtest.pluginLogLevel", "WARNING")));
+
+        resetDataFolder(dataFolder);
+        int port = freePort();
+        String token = UUID.randomUUID().toString().replace("-", "");
+
+        PlayerRegistry players = new PlayerRegistry(onlinePlayers, offlinePlayers);
+        TickScheduler scheduler = new TickScheduler(LOG);
+        StubServer server = new StubServer(LOG, scheduler, players);
+        installServer(server);
+
+        HarnessPluginClassLoader loader = new HarnessPluginClassLoader(pluginClasspath.toArray(new URL[0]),
+                LoadTest.class.getClassLoader(), server.asServer(), readDescription(pluginClasspath), dataFolder, pluginLogger);
+        writeConfig(loader, dataFolder, props, port, token, streamers, concurrency);
+
+        scheduler.start();
+        JavaPlugin plugin = onTickThread(scheduler, loader::newPlugin);
+        onTickThread(scheduler, () -> {
+            plugin.setEnabled(true);
+            return null;
+        });
+
+        URI base = URI.create("http://127.0.0.1:" + port);
+        TrafficGenerator traffic = new TrafficGenerator(base.resolve("/action"), token, players, concurrency,
+                onlineRatio, removeRatio, streamers);
+        StreamTrafficGenerator streamTraffic = new StreamTrafficGenerator(base.resolve("/action/stream"), token, players,
+                concurrency, onlineRatio, removeRatio, streamers);
+
+        // Players log in and out during the run so queued offline changes are applied on join.
+        ScheduledExecutorService churn = Executors.newSingleThreadScheduledExecutor();
+        if (loginsPerSecond > 0) {
+            churn.scheduleAtFixedRate(() -> scheduler.runSync(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < loginsPerSecond; i++) {
+                    Player joined = players.login(random);
+                    if (joined != null) {
+                        server.callEvent(new PlayerJoinEvent(joined, Component.empty()));
+                    }
+                    Player left = players.logout(random);
+                    if (left != null) {
+                        server.callEvent(new PlayerQuitEvent(left, Component.empty(), PlayerQuitEvent.QuitReason.DISCONNECTED));
+                    }
+                }
+            }), 1, 1, TimeUnit.SECONDS);
+        }
+
+        LOG.info("Bridge listening on " + base + "; " + concurrency + " " + mode + " workers, "
+                + warmupSeconds + "s warm-up, " + durationSeconds + "s measured.");
+        Map<String, Long> bytesBefore = persistBytes(base, token);
+        long now = System.nanoTime();
+        long measureFrom = now + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long endAt = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        churn.schedule(() -> scheduler.setRecording(true), measureFrom - now, TimeUnit.NANOSECONDS);
+        TrafficGenerator.Result result = "stream".equalsIgnoreCase(mode)
+                ? streamTraffic.run(measureFrom, endAt)
+                : traffic.run(measureFrom, endAt);
+        scheduler.setRecording(false);
+        churn.shutdownNow();
+
+        Map<String, Long> bytesAfter = persistBytes(base, token);
+        String metrics = fetch(base.resolve("/metrics"), token);
+
+        onTickThread(scheduler, () -> {
+            plugin.setEnabled(false);
+            return null;
+        });
+        scheduler.stop();
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        Map<String, Object> setup = new LinkedHashMap<>();
+        setup.put("mode", mode);
+        setup.put("concurrency", concurrency);
+        setup.put("warmupSeconds", warmupSeconds);
+        setup.put("durationSeconds", durationSeconds);
+        setup.put("onlinePlayers", onlinePlayers);
+        setup.put("offlinePlayers", offlinePlayers);
+        setup.put("onlineRatio", onlineRatio);
+        setup.put("removeRatio", removeRatio);
+        setup.put("streamers", streamers);
+        setup.put("loginsPerSecond", loginsPerSecond);
+        setup.put("configOverrides", configOverrides(props));
+        out.put("setup", setup);
+
+        Map<String, Object> http = new LinkedHashMap<>();
+        http.put("requests", result.requests);
+        http.put("errors", result.errors);
+        http.put("requestsPerSecond", result.requestsPerSecond);
+        http.put("statuses", result.statuses);
+        http.put("p50Millis", result.p50Millis);
+        http.put("p99Millis", result.p99Millis);
+        http.put("p999Millis", result.p999Millis);
+        http.put("maxMillis", result.maxMillis);
+        out.put("http", http);
+
+        Map<String, Object> tick = new LinkedHashMap<>();
+        tick.put("ticks", scheduler.ticks());
+        tick.put("tasksPerTick", scheduler.ticks() == 0 ? 0d : scheduler.tasksRun() / (double) scheduler.ticks());
+        tick.put("maxTasksPerTick", scheduler.maxTasksPerTick());
+        tick.put("meanTickMillis", scheduler.meanTickMillis());
+        tick.put("maxTickMillis", scheduler.maxTickMillis());
+        tick.put("overrunTicks", scheduler.overrunTicks());
+        tick.put("asyncTasks", scheduler.asyncTasks());
+        out.put("scheduler", tick);
+
+        Map<String, Object> commands = new LinkedHashMap<>();
+        commands.put("dispatched", server.commands());
+        commands.put("offMainThread", server.commandsOffMainThread());
+        commands.put("byVerb", server.commandsByVerb());
+        out.put("commands", commands);
+
+        Map<String, Long> written = new TreeMap<>();
+        bytesAfter.forEach((store, bytes) -> written.put(store, bytes - bytesBefore.getOrDefault(store, 0L)));
+        Map<String, Object> persistence = new LinkedHashMap<>();
+        persistence.put("bytesWrittenDuringRun", written);
+        persistence.put("fileSizes", fileSizes(dataFolder));
+        out.put("persistence", persistence);
+        out.put("offlineQueuePending", gauge(metrics, "bridge_offline_queue_pending"));
+
+        String json = new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create().toJson(out);
+        Files.createDirectories(report.toPath().toAbsolutePath().getParent());
+        Files.writeString(report.toPath(), json);
+        System.out.println(json);
+        LOG.info("Report written to " + report.getAbsolutePath());
+        System.exit(0);
+    }
+
+    // Bukkit.setServer() also prints a version banner, which on newer APIs needs a real server build.
+    private static void installServer(StubServer server) throws ReflectiveOperationException {
+        Field field = Bukkit.class.getDeclaredField("server");
+        field.setAccessible(true);
+        field.set(null, server.asServer());
+    }
+
+    private static PluginDescriptionFile readDescription(List<URL> pluginClasspath) throws Exception {
+        try (URLClassLoader resources = new URLClassLoader(pluginClasspath.toArray(new URL[0]), null);
+             InputStream in = resources.getResourceAsStream("plugin.yml")) {
+            if (in == null) throw new IllegalStateException("plugin.yml not found on " + pluginClasspath);
+            return new PluginDescriptionFile(in);
+        }
+    }
+
+    // Starts from the bundled config.yml so the run uses the shipped defaults, then points it at the harness.
+    private static void writeConfig(ClassLoader loader, File dataFolder, Properties props, int port, String token,
+                                    int streamers, int concurrency) throws Exception {
+        YamlConfiguration config = new YamlConfiguration();
+        try (InputStream in = loader.getResourceAsStream("config.yml")) {
+            if (in == null) throw new IllegalStateException("config.yml not found on the plugin classpath");
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                config.load(reader);
+            }
+        }
+        config.set("listen-ip", "127.0.0.1");
+        config.set("listen-port", port);
+        config.set("auth-token", token);
+        // No BetterTeams in the stub server; skip the API lookups and the pending-nation path.
+        config.set("disable-betterteams-api", true);
+        config.set("streamer-nations", null);
+        for (int i = 0; i < streamers; i++) {
+            config.set("streamer-nations.Streamer" + i, "Nation" + i);
+        }
+        // Every stream worker gets a connection rather than a 429.
+        config.set("stream-max-connections", Math.max(config.getInt("stream-max-connections"), concurrency));
+        configOverrides(props).forEach(config::set);
+        config.save(new File(dataFolder, "config.yml"));
+    }
+
+    private static Map<String, Object> configOverrides(Properties props) {
+        Map<String, Object> overrides = new TreeMap<>();
+        String prefix = "loadtest.config.";
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                overrides.put(name.substring(prefix.length()), parseScalar(props.getProperty(name)));
+            }
+        }
+        return overrides;
+    }
+
+    // Bukkit's getInt/getBoolean ignore strings, so overrides are stored with their natural type.
+    private static Object parseScalar(String value) {
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) return Boolean.parseBoolean(value);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ignored) {
+        }
+        return value;
+    }
+
+    private static <T> T onTickThread(TickScheduler scheduler, Callable<T> task) throws Exception {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        scheduler.runSync(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future.get(30, TimeUnit.SECONDS);
+    }
+
+    private static Map<String, Long> persistBytes(URI base, String token) throws IOException, InterruptedException {
+        Map<String, Long> bytes = new TreeMap<>();
+        String prefix = "bridge_persist_bytes_total{store=\"";
+        for (String line : fetch(base.resolve("/metrics"), token).split("\n")) {
+            if (!line.startsWith(prefix)) continue;
+            int end = line.indexOf('"', prefix.length());
+            bytes.put(line.substring(prefix.length(), end), Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)));
+        }
+        return bytes;
+    }
+
+    private static double gauge(String metrics, String name) {
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith(name + " ")) return Double.parseDouble(line.substring(name.length() + 1));
+        }
+        return Double.NaN;
+    }
+
+    private static String fetch(URI uri, String token) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).header("Authorization", "Bearer " + token).GET().build();
+        return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static Map<String, Long> fileSizes(File dataFolder) throws IOException {
+        Map<String, Long> sizes = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dataFolder.toPath())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) sizes.put(file.getFileName().toString(), Files.size(file));
+            }
+        }
+        return sizes;
+    }
+
+    private static void resetDataFolder(File dataFolder) throws IOException {
+        Path root = dataFolder.toPath();
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(root);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static int intProp(Properties props, String name, int def) {
+        String value = props.getProperty(name);
+        return value == null ? def : Integer.parseInt(value.trim());
+    }
+
+    private static double doubleProp(Properties props, String name, double def) {
+        String value = props.getProperty(name);
+        return value == null ? def : Double.parseDouble(value.trim());
+    }
+}
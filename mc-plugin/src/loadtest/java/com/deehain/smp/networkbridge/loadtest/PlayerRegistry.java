@@ -0,0 +1,146 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fake player registry: a fixed population of known players, some of them online. Every player is
+ * "cached" (has joined before), as players picked on the website normally have. Players can log in
+ * and out during a run to exercise the offline queue.
+ */
+final class PlayerRegistry {
+
+    private final Map<String, StubPlayer> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, StubPlayer> byUuid = new ConcurrentHashMap<>();
+    private final Map<UUID, Player> online = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    // Rebuilt on login/logout so request generation does not copy the map.
+    private volatile Player[] onlineSnapshot = new Player[0];
+
+    PlayerRegistry(int onlinePlayers, int offlinePlayers) {
+        for (int i = 0; i < onlinePlayers + offlinePlayers; i++) {
+            String name = "Player" + i;
+            UUID uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+            StubPlayer player = new StubPlayer(name, uuid);
+            byName.put(name.toLowerCase(Locale.ROOT), player);
+            byUuid.put(uuid, player);
+            names.add(name);
+            if (i < onlinePlayers) {
+                online.put(uuid, player.asPlayer);
+            }
+        }
+        refreshSnapshot();
+    }
+
+    String randomOnline(ThreadLocalRandom random) {
+        Player[] snapshot = onlineSnapshot;
+        return snapshot.length == 0 ? randomOffline(random) : snapshot[random.nextInt(snapshot.length)].getName();
+    }
+
+    String randomOffline(ThreadLocalRandom random) {
+        // Sample until we hit someone offline; the online share is small, so this ends quickly.
+        for (int attempt = 0; attempt < 64; attempt++) {
+            String name = names.get(random.nextInt(names.size()));
+            if (!online.containsKey(byName.get(name.toLowerCase(Locale.ROOT)).uuid)) return name;
+        }
+        return names.get(random.nextInt(names.size()));
+    }
+
+    /** Takes a random offline player online and returns it, or null if everyone is online. */
+    Player login(ThreadLocalRandom random) {
+        String name = randomOffline(random);
+        StubPlayer player = byName.get(name.toLowerCase(Locale.ROOT));
+        if (online.putIfAbsent(player.uuid, player.asPlayer) != null) return null;
+        refreshSnapshot();
+        return player.asPlayer;
+    }
+
+    /** Takes a random online player offline; returns them, or null if nobody was online. */
+    Player logout(ThreadLocalRandom random) {
+        List<UUID> snapshot = new ArrayList<>(online.keySet());
+        if (snapshot.isEmpty()) return null;
+        Player player = online.remove(snapshot.get(random.nextInt(snapshot.size())));
+        refreshSnapshot();
+        return player;
+    }
+
+    private void refreshSnapshot() {
+        onlineSnapshot = online.values().toArray(new Player[0]);
+    }
+
+    int onlineCount() {
+        return online.size();
+    }
+
+    Collection<? extends Player> onlinePlayers() {
+        return List.of(onlineSnapshot);
+    }
+
+    Player playerExact(String name) {
+        StubPlayer player = byName.get(name.toLowerCase(Locale.ROOT));
+        return player != null && player.name.equals(name) ? online.get(player.uuid) : null;
+    }
+
+    Player player(UUID uuid) {
+        return online.get(uuid);
+    }
+
+    OfflinePlayer offlinePlayerIfCached(String name) {
+        StubPlayer player = byName.get(name.toLowerCase(Locale.ROOT));
+        return player != null ? player.asOffline : null;
+    }
+
+    OfflinePlayer offlinePlayer(UUID uuid) {
+        StubPlayer player = byUuid.get(uuid);
+        return player != null ? player.asOffline : new StubPlayer(null, uuid).asOffline;
+    }
+
+    private final class StubPlayer {
+        private final String name;
+        private final UUID uuid;
+        private final Player asPlayer;
+        private final OfflinePlayer asOffline;
+        private volatile boolean whitelisted;
+
+        private StubPlayer(String name, UUID uuid) {
+            this.name = name;
+            this.uuid = uuid;
+            this.asPlayer = Stubs.proxy(Player.class, "Player[" + name + "]", this::answer);
+            this.asOffline = Stubs.proxy(OfflinePlayer.class, "OfflinePlayer[" + name + "]", this::answer);
+        }
+
+        private Object answer(Object proxy, java.lang.reflect.Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUniqueId":
+                    return uuid;
+                case "isOnline":
+                    return online.containsKey(uuid);
+                case "getPlayer":
+                    return online.get(uuid);
+                case "hasPlayedBefore":
+                    return name != null;
+                case "isWhitelisted":
+                    return whitelisted;
+                case "setWhitelisted":
+                    whitelisted = (Boolean) args[0];
+                    return null;
+                case "isOp":
+                    return false;
+                default:
+                    return Stubs.UNHANDLED;
+            }
+        }
+    }
+}
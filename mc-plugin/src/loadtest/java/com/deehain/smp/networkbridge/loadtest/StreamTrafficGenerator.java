@@ -0,0 +1,262 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * /action/stream traffic: {@code concurrency} connections each keep one chunked NDJSON request open
+ * and write items, batched into one chunk per send, for as long as fewer than the server's advertised
+ * window are unacknowledged.
+ * Latency is per item, from the write to its ack; "statuses" counts ok acks as 200 and rejected
+ * items as 400.
+ */
+final class StreamTrafficGenerator {
+
+    private final URI streamUri;
+    private final String token;
+    private final PlayerRegistry players;
+    private final int concurrency;
+    private final double onlineRatio;
+    private final double removeRatio;
+    private final int streamers;
+
+    StreamTrafficGenerator(URI streamUri, String token, PlayerRegistry players, int concurrency,
+                           double onlineRatio, double removeRatio, int streamers) {
+        this.streamUri = streamUri;
+        this.token = token;
+        this.players = players;
+        this.concurrency = concurrency;
+        this.onlineRatio = onlineRatio;
+        this.removeRatio = removeRatio;
+        this.streamers = streamers;
+    }
+
+    /** Streams items until {@code endAt}; only items sent at or after {@code measureFrom} are recorded. */
+    TrafficGenerator.Result run(long measureFrom, long endAt) throws InterruptedException {
+        List<Stream> streams = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Stream stream = new Stream(measureFrom, endAt);
+            streams.add(stream);
+            threads.add(Thread.ofVirtual().name("loadtest-stream-" + i).start(stream));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+        long errors = 0L;
+        Map<Integer, Long> statuses = new TreeMap<>();
+        for (Stream stream : streams) {
+            total += stream.count;
+            errors += stream.errors;
+            stream.statuses.forEach((status, n) -> statuses.merge(status, n, Long::sum));
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (Stream stream : streams) {
+            System.arraycopy(stream.latencies, 0, all, offset, stream.count);
+            offset += stream.count;
+        }
+        return TrafficGenerator.Result.of(all, errors, statuses, TimeUnit.NANOSECONDS.toSeconds(endAt - measureFrom));
+    }
+
+    private String nextItem(ThreadLocalRandom random, long seq) {
+        String player = random.nextDouble() < onlineRatio ? players.randomOnline(random) : players.randomOffline(random);
+        String action = random.nextDouble() < removeRatio ? "remove" : "add";
+        return "{\"seq\":" + seq
+                + ",\"playerName\":\"" + player
+                + "\",\"streamer\":\"Streamer" + random.nextInt(streamers)
+                + "\",\"action\":\"" + action
+                + "\",\"requestId\":\"" + UUID.randomUUID() + "\"}\n";
+    }
+
+    private final class Stream implements Runnable {
+        private final long measureFrom;
+        private final long endAt;
+        // Written by the ack reader only.
+        private long[] latencies = new long[4096];
+        private int count;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+        private long errors;
+
+        private Stream(long measureFrom, long endAt) {
+            this.measureFrom = measureFrom;
+            this.endAt = endAt;
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try (Socket socket = new Socket(streamUri.getHost(), streamUri.getPort())) {
+                socket.setTcpNoDelay(true);
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 16384);
+                InputStream in = new BufferedInputStream(socket.getInputStream(), 16384);
+                out.write(("POST " + streamUri.getRawPath() + " HTTP/1.1\r\n"
+                        + "Host: " + streamUri.getHost() + ":" + streamUri.getPort() + "\r\n"
+                        + "X-Auth-Token: " + token + "\r\n"
+                        + "Content-Type: application/x-ndjson\r\n"
+                        + "Transfer-Encoding: chunked\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                if (readStatus(in) != 200) {
+                    errors++;
+                    return;
+                }
+                ChunkedLines acks = new ChunkedLines(in);
+                String hello = acks.readLine();
+                int window = hello == null ? 0 : (int) longField(hello, "\"window\":");
+                if (window <= 0) {
+                    errors++;
+                    return;
+                }
+
+                // At most window items are outstanding, so seq % window never collides.
+                AtomicLongArray sentAt = new AtomicLongArray(window);
+                Semaphore credits = new Semaphore(window);
+                Thread reader = Thread.ofVirtual().start(() -> readAcks(acks, sentAt, credits));
+                ByteArrayOutputStream chunk = new ByteArrayOutputStream(16384);
+                long seq = 0L;
+                while (System.nanoTime() < endAt) {
+                    // Send whatever the window allows as one chunk, like a client draining its own queue.
+                    int n = credits.drainPermits();
+                    if (n == 0) {
+                        if (!credits.tryAcquire(1, TimeUnit.SECONDS)) continue;
+                        n = 1 + credits.drainPermits();
+                    }
+                    chunk.reset();
+                    long now = System.nanoTime();
+                    for (int i = 0; i < n; i++) {
+                        seq++;
+                        sentAt.set((int) (seq % window), now);
+                        chunk.write(nextItem(random, seq).getBytes(StandardCharsets.UTF_8));
+                    }
+                    out.write((Integer.toHexString(chunk.size()) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                    chunk.writeTo(out);
+                    out.write('\r');
+                    out.write('\n');
+                    out.flush();
+                }
+                out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                reader.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (IOException e) {
+                errors++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void readAcks(ChunkedLines acks, AtomicLongArray sentAt, Semaphore credits) {
+            try {
+                String line;
+                while ((line = acks.readLine()) != null) {
+                    long seq = longField(line, "\"seq\":");
+                    if (seq < 0) continue;
+                    long start = sentAt.get((int) (seq % sentAt.length()));
+                    long now = System.nanoTime();
+                    credits.release();
+                    if (start < measureFrom) continue;
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = now - start;
+                    statuses.merge(line.contains("\"ok\":true") ? 200 : 400, 1L, Long::sum);
+                }
+            } catch (IOException e) {
+                errors++;
+            }
+        }
+    }
+
+    private static int readStatus(InputStream in) throws IOException {
+        String statusLine = readAsciiLine(in);
+        if (statusLine == null || statusLine.length() < 12) return -1;
+        String header;
+        while ((header = readAsciiLine(in)) != null && !header.isEmpty()) {
+            // Skip response headers.
+        }
+        return Integer.parseInt(statusLine.substring(9, 12));
+    }
+
+    private static String readAsciiLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') sb.append((char) b);
+        }
+        return b == -1 && sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static long longField(String json, String key) {
+        int at = json.indexOf(key);
+        if (at < 0) return -1L;
+        long value = 0L;
+        int i = at + key.length();
+        if (i >= json.length() || !Character.isDigit(json.charAt(i))) return -1L;
+        while (i < json.length() && Character.isDigit(json.charAt(i))) {
+            value = value * 10 + (json.charAt(i++) - '0');
+        }
+        return value;
+    }
+
+    /** Lines out of a chunked response body, regardless of where the chunk boundaries fall. */
+    private static final class ChunkedLines {
+        private final InputStream in;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        private int remaining;
+        private boolean done;
+
+        private ChunkedLines(InputStream in) {
+            this.in = in;
+        }
+
+        private String readLine() throws IOException {
+            while (true) {
+                if (remaining == 0 && !nextChunk()) return null;
+                int b = in.read();
+                if (b == -1) return null;
+                if (--remaining == 0) {
+                    // CRLF after the chunk data.
+                    in.read();
+                    in.read();
+                }
+                if (b == '\n') {
+                    String result = line.toString(StandardCharsets.UTF_8);
+                    line.reset();
+                    return result;
+                }
+                line.write(b);
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (done) return false;
+            String size = readAsciiLine(in);
+            if (size == null) return false;
+            int semicolon = size.indexOf(';');
+            remaining = Integer.parseInt((semicolon >= 0 ? size.substring(0, semicolon) : size).trim(), 16);
+            if (remaining == 0) {
+                done = true;
+                return false;
+            }
+            return true;
+        }
+    }
+}
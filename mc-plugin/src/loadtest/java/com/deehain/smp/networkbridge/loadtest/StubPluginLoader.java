@@ -0,0 +1,52 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginLoader;
+import org.bukkit.plugin.RegisteredListener;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Placeholder {@link PluginLoader}. Newer Paper APIs look one up through {@link java.util.ServiceLoader}
+ * when a JavaPlugin is initialized (see META-INF/services); the harness loads and enables the plugin itself.
+ */
+// PluginLoader is marked for removal, but this Paper version still looks one up at plugin init.
+@SuppressWarnings({"deprecation", "removal"})
+public final class StubPluginLoader implements PluginLoader {
+
+    @Override
+    public Plugin loadPlugin(File file) {
+        throw new UnsupportedOperationException("The load test harness loads the plugin itself");
+    }
+
+    @Override
+    public PluginDescriptionFile getPluginDescription(File file) {
+        throw new UnsupportedOperationException("The load test harness loads the plugin itself");
+    }
+
+    @Override
+    public Pattern[] getPluginFileFilters() {
+        return new Pattern[0];
+    }
+
+    @Override
+    public Map<Class<? extends Event>, Set<RegisteredListener>> createRegisteredListeners(Listener listener, Plugin plugin) {
+        return Map.of();
+    }
+
+    @Override
+    public void enablePlugin(Plugin plugin) {
+        throw new UnsupportedOperationException("The load test harness enables the plugin itself");
+    }
+
+    @Override
+    public void disablePlugin(Plugin plugin) {
+        throw new UnsupportedOperationException("The load test harness disables the plugin itself");
+    }
+}
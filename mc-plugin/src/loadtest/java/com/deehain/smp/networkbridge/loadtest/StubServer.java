@@ -0,0 +1,203 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import org.bukkit.Server;
+import org.bukkit.UnsafeValues;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link Server} the plugin sees during a load test: the tick scheduler, the player registry,
+ * a plugin manager that delivers events to registered listeners, and a console command dispatcher
+ * that records what it was asked to run instead of running it.
+ */
+final class StubServer {
+
+    private final Logger logger;
+    private final TickScheduler scheduler;
+    private final PlayerRegistry players;
+    private final Server server;
+    private final BukkitScheduler bukkitScheduler;
+    private final PluginManager pluginManager;
+    private final ConsoleCommandSender console;
+    // Newer JavaPlugin constructors ask it for a lifecycle manager; null is fine for a plugin that never uses one.
+    // Deprecated, but Server.getUnsafe() still returns it, so the stub has to provide one.
+    @SuppressWarnings("deprecation")
+    private final UnsafeValues unsafe = Stubs.proxy(UnsafeValues.class, "StubUnsafeValues", (proxy, method, args) -> Stubs.UNHANDLED);
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<RegisteredExecutor> executors = new CopyOnWriteArrayList<>();
+
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder commandsOffMainThread = new LongAdder();
+    private final Map<String, LongAdder> commandsByVerb = new ConcurrentHashMap<>();
+
+    StubServer(Logger logger, TickScheduler scheduler, PlayerRegistry players) {
+        this.logger = logger;
+        this.scheduler = scheduler;
+        this.players = players;
+        this.bukkitScheduler = scheduler.asBukkitScheduler();
+        this.pluginManager = Stubs.proxy(PluginManager.class, "StubPluginManager", this::answerPluginManager);
+        this.console = Stubs.proxy(ConsoleCommandSender.class, "CONSOLE", (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return "CONSOLE";
+                case "isOp":
+                case "hasPermission":
+                    return true;
+                default:
+                    return Stubs.UNHANDLED;
+            }
+        });
+        this.server = Stubs.proxy(Server.class, "StubServer", this::answerServer);
+    }
+
+    Server asServer() {
+        return server;
+    }
+
+    /** Delivers an event the way Bukkit would: to every matching @EventHandler and registered executor. */
+    void callEvent(Event event) {
+        for (Listener listener : listeners) {
+            for (Method method : listener.getClass().getMethods()) {
+                if (!method.isAnnotationPresent(EventHandler.class) || method.getParameterCount() != 1) continue;
+                if (!method.getParameterTypes()[0].isInstance(event)) continue;
+                try {
+                    method.invoke(listener, event);
+                } catch (InvocationTargetException e) {
+                    logger.log(Level.WARNING, "Listener " + method + " threw", e.getCause());
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        for (RegisteredExecutor registered : executors) {
+            if (!registered.eventClass.isInstance(event)) continue;
+            try {
+                registered.executor.execute(registered.listener, event);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Event executor for " + registered.eventClass.getName() + " threw", e);
+            }
+        }
+    }
+
+    long commands() {
+        return commands.sum();
+    }
+
+    long commandsOffMainThread() {
+        return commandsOffMainThread.sum();
+    }
+
+    Map<String, Long> commandsByVerb() {
+        Map<String, Long> result = new TreeMap<>();
+        commandsByVerb.forEach((verb, count) -> result.put(verb, count.sum()));
+        return result;
+    }
+
+    private Object answerServer(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getName":
+                return "LoadTest";
+            case "getVersion":
+            case "getBukkitVersion":
+            case "getMinecraftVersion":
+                return "loadtest";
+            case "getLogger":
+                return logger;
+            case "getUnsafe":
+                return unsafe;
+            case "getScheduler":
+                return bukkitScheduler;
+            case "getPluginManager":
+                return pluginManager;
+            case "isPrimaryThread":
+                return scheduler.isTickThread();
+            case "getConsoleSender":
+                return console;
+            case "getOnlinePlayers":
+                return players.onlinePlayers();
+            case "getPlayerExact":
+                return players.playerExact((String) args[0]);
+            case "getPlayer":
+                return args[0] instanceof UUID ? players.player((UUID) args[0]) : players.playerExact((String) args[0]);
+            case "getOfflinePlayerIfCached":
+                return players.offlinePlayerIfCached((String) args[0]);
+            case "getOfflinePlayer":
+                if (args[0] instanceof UUID) return players.offlinePlayer((UUID) args[0]);
+                return Stubs.UNHANDLED;
+            case "dispatchCommand":
+                return dispatch((CommandSender) args[0], (String) args[1]);
+            case "broadcastMessage":
+                return 0;
+            default:
+                return Stubs.UNHANDLED;
+        }
+    }
+
+    private boolean dispatch(CommandSender sender, String commandLine) {
+        commands.increment();
+        if (!scheduler.isTickThread()) {
+            // Bukkit requires commands to be dispatched on the main thread.
+            commandsOffMainThread.increment();
+        }
+        int space = commandLine.indexOf(' ');
+        String verb = space < 0 ? commandLine : commandLine.substring(0, space);
+        commandsByVerb.computeIfAbsent(verb, k -> new LongAdder()).increment();
+        return true;
+    }
+
+    private Object answerPluginManager(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getPlugin":
+                // Neither BetterTeams nor PlaceholderAPI is installed.
+                return null;
+            case "isPluginEnabled":
+                return false;
+            case "registerEvents":
+                listeners.add((Listener) args[0]);
+                return null;
+            case "registerEvent":
+                if (args.length >= 4 && args[3] instanceof EventExecutor) {
+                    @SuppressWarnings("unchecked")
+                    Class<? extends Event> eventClass = (Class<? extends Event>) args[0];
+                    executors.add(new RegisteredExecutor(eventClass, (Listener) args[1], (EventExecutor) args[3]));
+                }
+                return null;
+            case "callEvent":
+                callEvent((Event) args[0]);
+                return null;
+            default:
+                return Stubs.UNHANDLED;
+        }
+    }
+
+    private static final class RegisteredExecutor {
+        private final Class<? extends Event> eventClass;
+        private final Listener listener;
+        private final EventExecutor executor;
+
+        private RegisteredExecutor(Class<? extends Event> eventClass, Listener listener, EventExecutor executor) {
+            this.eventClass = eventClass;
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dynamic-proxy stubs for the Bukkit interfaces the bridge touches. Bukkit's interfaces are far too
+ * large to implement by hand, so each stub answers the methods it knows about and returns a neutral
+ * default (null, zero, false, empty collection) for everything else.
+ */
+final class Stubs {
+
+    /** Answers one call, or returns {@link #UNHANDLED} to fall back to the default value. */
+    interface Answer {
+        Object answer(Object proxy, Method method, Object[] args) throws Throwable;
+    }
+
+    static final Object UNHANDLED = new Object();
+
+    private Stubs() {
+    }
+
+    static <T> T proxy(Class<T> type, String name, Answer answer) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object[] safeArgs = args != null ? args : new Object[0];
+            switch (method.getName()) {
+                case "equals":
+                    if (safeArgs.length == 1 && method.getParameterTypes()[0] == Object.class) return proxy == safeArgs[0];
+                    break;
+                case "hashCode":
+                    if (safeArgs.length == 0) return System.identityHashCode(proxy);
+                    break;
+                case "toString":
+                    if (safeArgs.length == 0) return name;
+                    break;
+                default:
+                    break;
+            }
+            Object result = answer.answer(proxy, method, safeArgs);
+            return result != UNHANDLED ? result : defaultValue(method.getReturnType());
+        };
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            if (type == List.class || type == Collection.class) return Collections.emptyList();
+            if (type == Set.class) return Collections.emptySet();
+            if (type == Map.class) return Collections.emptyMap();
+            return null;
+        }
+        if (type == boolean.class) return false;
+        if (type == void.class) return null;
+        if (type == char.class) return '\0';
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        return 0d;
+    }
+}
@@ -0,0 +1,269 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link BukkitScheduler} stand-in with its own "Server thread" that ticks at 20 TPS.
+ * Sync tasks run on that thread in tick order; async tasks run on a cached pool. Per-tick task
+ * counts and tick durations are recorded for the report.
+ */
+final class TickScheduler {
+
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final Logger logger;
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Queue<Task> incoming = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, Task> live = new ConcurrentHashMap<>();
+    // Tick thread only.
+    private final PriorityQueue<Task> due = new PriorityQueue<>();
+    private final ExecutorService async = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Craft Scheduler Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Thread tickThread;
+    private volatile boolean running;
+    private volatile long currentTick;
+
+    // Recording; written by the tick thread, read by the report after stop().
+    private volatile boolean recording;
+    private long ticks;
+    private long tasksRun;
+    private long maxTasksPerTick;
+    private long tickNanosTotal;
+    private long maxTickNanos;
+    private long overrunTicks;
+    private final AtomicLong asyncTasks = new AtomicLong();
+
+    TickScheduler(Logger logger) {
+        this.logger = logger;
+        this.tickThread = new Thread(this::run, "Server thread");
+        this.tickThread.setDaemon(true);
+    }
+
+    BukkitScheduler asBukkitScheduler() {
+        return Stubs.proxy(BukkitScheduler.class, "TickScheduler", this::answer);
+    }
+
+    void start() {
+        running = true;
+        tickThread.start();
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        tickThread.join(TimeUnit.SECONDS.toMillis(10));
+        async.shutdown();
+        async.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    boolean isTickThread() {
+        return Thread.currentThread() == tickThread;
+    }
+
+    void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /** Runs {@code task} on the tick thread at the next tick. */
+    void runSync(Runnable task) {
+        schedule(task, 1L, -1L);
+    }
+
+    long ticks() {
+        return ticks;
+    }
+
+    long tasksRun() {
+        return tasksRun;
+    }
+
+    long maxTasksPerTick() {
+        return maxTasksPerTick;
+    }
+
+    double meanTickMillis() {
+        return ticks == 0 ? 0d : tickNanosTotal / (double) ticks / 1_000_000d;
+    }
+
+    double maxTickMillis() {
+        return maxTickNanos / 1_000_000d;
+    }
+
+    long overrunTicks() {
+        return overrunTicks;
+    }
+
+    long asyncTasks() {
+        return asyncTasks.get();
+    }
+
+    private Object answer(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        switch (name) {
+            case "runTask":
+            case "scheduleSyncDelayedTask":
+            case "runTaskLater":
+            case "scheduleSyncRepeatingTask":
+            case "runTaskTimer": {
+                Runnable runnable = requireRunnable(method, args);
+                long delay = args.length > 2 ? (Long) args[2] : 0L;
+                long period = args.length > 3 ? (Long) args[3] : -1L;
+                Task task = schedule(runnable, delay, period);
+                return method.getReturnType() == int.class ? task.id : task.asBukkitTask();
+            }
+            case "runTaskAsynchronously": {
+                Runnable runnable = requireRunnable(method, args);
+                int id = ids.incrementAndGet();
+                asyncTasks.incrementAndGet();
+                async.execute(() -> runSafely(runnable));
+                return new Task(id, runnable, 0L, -1L, false).asBukkitTask();
+            }
+            case "cancelTask":
+                cancel((Integer) args[0]);
+                return null;
+            case "cancelTasks":
+                live.keySet().forEach(this::cancel);
+                return null;
+            case "isQueued":
+            case "isCurrentlyRunning":
+                return live.containsKey((Integer) args[0]);
+            default:
+                throw new UnsupportedOperationException("TickScheduler does not implement " + method);
+        }
+    }
+
+    private static Runnable requireRunnable(Method method, Object[] args) {
+        if (args.length < 2 || !(args[0] instanceof Plugin) || !(args[1] instanceof Runnable)) {
+            throw new UnsupportedOperationException("TickScheduler does not implement " + method);
+        }
+        return (Runnable) args[1];
+    }
+
+    private Task schedule(Runnable runnable, long delay, long period) {
+        Task task = new Task(ids.incrementAndGet(), runnable, currentTick + Math.max(1L, delay), period > 0 ? period : -1L, true);
+        live.put(task.id, task);
+        incoming.add(task);
+        return task;
+    }
+
+    private void cancel(int id) {
+        Task task = live.remove(id);
+        if (task != null) task.cancelled = true;
+    }
+
+    private void run() {
+        long nextTickAt = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            long tick = ++currentTick;
+            Task task;
+            while ((task = incoming.poll()) != null) {
+                due.add(task);
+            }
+            long ran = 0;
+            while ((task = due.peek()) != null && task.nextRun <= tick) {
+                due.poll();
+                if (task.cancelled) continue;
+                runSafely(task.runnable);
+                ran++;
+                if (task.period > 0 && !task.cancelled) {
+                    task.nextRun = tick + task.period;
+                    due.add(task);
+                } else {
+                    live.remove(task.id);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (recording) {
+                ticks++;
+                tasksRun += ran;
+                maxTasksPerTick = Math.max(maxTasksPerTick, ran);
+                tickNanosTotal += elapsed;
+                maxTickNanos = Math.max(maxTickNanos, elapsed);
+                if (elapsed > TICK_NANOS) overrunTicks++;
+            }
+
+            // Like the real server: sleep off the rest of the tick, or start the next one at once when behind.
+            nextTickAt += TICK_NANOS;
+            long sleep = nextTickAt - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else {
+                nextTickAt = System.nanoTime();
+            }
+        }
+    }
+
+    private void runSafely(Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Throwable t) {
+            logger.log(Level.WARNING, "Scheduled task threw", t);
+        }
+    }
+
+    private final class Task implements Comparable<Task> {
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private final boolean sync;
+        private long nextRun;
+        private volatile boolean cancelled;
+
+        private Task(int id, Runnable runnable, long nextRun, long period, boolean sync) {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextRun = nextRun;
+            this.period = period;
+            this.sync = sync;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byTick = Long.compare(nextRun, other.nextRun);
+            return byTick != 0 ? byTick : Integer.compare(id, other.id);
+        }
+
+        private BukkitTask asBukkitTask() {
+            return Stubs.proxy(BukkitTask.class, "Task#" + id, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getTaskId":
+                        return id;
+                    case "isSync":
+                        return sync;
+                    case "isCancelled":
+                        return cancelled;
+                    case "cancel":
+                        TickScheduler.this.cancel(id);
+                        return null;
+                    default:
+                        return Stubs.UNHANDLED;
+                }
+            });
+        }
+    }
+}
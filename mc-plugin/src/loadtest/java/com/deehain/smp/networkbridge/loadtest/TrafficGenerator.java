@@ -0,0 +1,180 @@
+package com.deehain.smp.networkbridge.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop /action traffic: {@code concurrency} virtual threads each send a request, wait for
+ * the response and send the next one. Raise the concurrency between runs until throughput stops
+ * growing and latency climbs; that is the saturation point.
+ */
+final class TrafficGenerator {
+
+    private final URI actionUri;
+    private final String token;
+    private final PlayerRegistry players;
+    private final int concurrency;
+    private final double onlineRatio;
+    private final double removeRatio;
+    private final int streamers;
+
+    TrafficGenerator(URI actionUri, String token, PlayerRegistry players, int concurrency,
+                     double onlineRatio, double removeRatio, int streamers) {
+        this.actionUri = actionUri;
+        this.token = token;
+        this.players = players;
+        this.concurrency = concurrency;
+        this.onlineRatio = onlineRatio;
+        this.removeRatio = removeRatio;
+        this.streamers = streamers;
+    }
+
+    /** Sends traffic until {@code endAt}; only requests started at or after {@code measureFrom} are recorded. */
+    Result run(long measureFrom, long endAt) throws InterruptedException {
+        List<Worker> workers = new ArrayList<>();
+        try (ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(clientExecutor)
+                    .build();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                Worker worker = new Worker(client, measureFrom, endAt);
+                workers.add(worker);
+                threads.add(Thread.ofVirtual().name("loadtest-worker-" + i).start(worker));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        return Result.merge(workers, TimeUnit.NANOSECONDS.toSeconds(endAt - measureFrom));
+    }
+
+    private String nextBody(ThreadLocalRandom random) {
+        String player = random.nextDouble() < onlineRatio ? players.randomOnline(random) : players.randomOffline(random);
+        String action = random.nextDouble() < removeRatio ? "remove" : "add";
+        return "token=" + token
+                + "&playerName=" + player
+                + "&streamer=Streamer" + random.nextInt(streamers)
+                + "&action=" + action
+                + "&requestId=" + UUID.randomUUID();
+    }
+
+    private final class Worker implements Runnable {
+        private final HttpClient client;
+        private final long measureFrom;
+        private final long endAt;
+        private long[] latencies = new long[4096];
+        private int count;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+        private long errors;
+
+        private Worker(HttpClient client, long measureFrom, long endAt) {
+            this.client = client;
+            this.measureFrom = measureFrom;
+            this.endAt = endAt;
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long start;
+            while ((start = System.nanoTime()) < endAt) {
+                HttpRequest request = HttpRequest.newBuilder(actionUri)
+                        .timeout(Duration.ofSeconds(30))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(nextBody(random)))
+                        .build();
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (IOException e) {
+                    status = -1;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (start < measureFrom) continue;
+                if (status < 0) {
+                    errors++;
+                    continue;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+                statuses.merge(status, 1L, Long::sum);
+            }
+        }
+    }
+
+    static final class Result {
+        final long requests;
+        final long errors;
+        final double requestsPerSecond;
+        final Map<Integer, Long> statuses;
+        final double p50Millis;
+        final double p99Millis;
+        final double p999Millis;
+        final double maxMillis;
+
+        private Result(long requests, long errors, double requestsPerSecond, Map<Integer, Long> statuses,
+                       double p50Millis, double p99Millis, double p999Millis, double maxMillis) {
+            this.requests = requests;
+            this.errors = errors;
+            this.requestsPerSecond = requestsPerSecond;
+            this.statuses = statuses;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.p999Millis = p999Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        private static Result merge(List<Worker> workers, long seconds) {
+            int total = 0;
+            long errors = 0L;
+            Map<Integer, Long> statuses = new TreeMap<>();
+            for (Worker worker : workers) {
+                total += worker.count;
+                errors += worker.errors;
+                worker.statuses.forEach((status, n) -> statuses.merge(status, n, Long::sum));
+            }
+            long[] all = new long[total];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.latencies, 0, all, offset, worker.count);
+                offset += worker.count;
+            }
+            return of(all, errors, statuses, seconds);
+        }
+
+        /** Builds a result from raw latencies in nanoseconds; sorts {@code latencies} in place. */
+        static Result of(long[] latencies, long errors, Map<Integer, Long> statuses, long seconds) {
+            Arrays.sort(latencies);
+            return new Result(latencies.length, errors, latencies.length / (double) Math.max(1L, seconds), statuses,
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                    latencies.length == 0 ? 0d : latencies[latencies.length - 1] / 1_000_000d);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0d;
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1_000_000d;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Main-thread work queue for bridge actions. Any thread may submit; a single repeating task calls
+ * {@link #drain()} once per tick, which runs queued work until the per-tick time budget is used up
+ * and leaves the rest for the next tick. At least one task runs per tick so the queue always makes
+ * progress.
+ *
+ * Work is queued per lane (one per streamer) and lanes take turns: each turn a lane may run as many
+ * tasks as its weight before the next lane with work goes, so one streamer's bulk import only delays
+ * another streamer's single add by a few tasks instead of the whole import. Priority tasks (removals)
+ * skip the lanes and run before anything else.
+ */
+final class ActionDrainer {
+
+    /** Lane for work that isn't tied to a configured streamer. */
+    static final String SHARED_LANE = "*";
+
+    private final Queue<Entry> priority = new ConcurrentLinkedQueue<>();
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    // Lanes with queued work, in turn order. A lane is in here at most once (see Lane.scheduled).
+    private final Queue<Lane> active = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Logger logger;
+    private final BridgeMetrics metrics;
+    private volatile long budgetNanos;
+    // Lower-cased lane -> tasks per turn; lanes not listed get 1.
+    private volatile Map<String, Integer> weights = Map.of();
+    // Main thread only: the lane whose turn it is and how many tasks it may still run.
+    private Lane current;
+    private int credit;
+
+    ActionDrainer(Logger logger, BridgeMetrics metrics, long budgetNanos) {
+        this.logger = logger;
+        this.metrics = metrics;
+        this.budgetNanos = budgetNanos;
+    }
+
+    void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    void setWeights(Map<String, Integer> weights) {
+        this.weights = Map.copyOf(weights);
+    }
+
+    /** Queues work that belongs to no streamer in the shared lane. */
+    void submit(Runnable task) {
+        submit(SHARED_LANE, false, task);
+    }
+
+    /** Queues work in the given lane, or ahead of all lanes if {@code priority}. */
+    void submit(String lane, boolean priority, Runnable task) {
+        Entry entry = new Entry(task, lane, priority, System.nanoTime());
+        depth.incrementAndGet();
+        if (priority) {
+            this.priority.add(entry);
+            return;
+        }
+        Lane target = lanes.computeIfAbsent(lane, Lane::new);
+        target.depth.incrementAndGet();
+        target.queue.add(entry);
+        if (target.scheduled.compareAndSet(false, true)) {
+            active.add(target);
+        }
+    }
+
+    /** Runs queued tasks for up to the configured budget. Must be called on the main thread. */
+    void drain() {
+        long deadline = System.nanoTime() + budgetNanos;
+        Entry entry;
+        do {
+            entry = next();
+            if (entry == null) return;
+            run(entry);
+        } while (System.nanoTime() < deadline);
+    }
+
+    /** Runs everything still queued, ignoring the budget. Used on shutdown. */
+    void drainAll() {
+        Entry entry;
+        while ((entry = next()) != null) {
+            run(entry);
+        }
+    }
+
+    /** Number of tasks waiting for the main thread. */
+    int depth() {
+        return depth.get();
+    }
+
+    /** Number of priority tasks waiting for the main thread. */
+    int priorityDepth() {
+        return priority.size();
+    }
+
+    /** Tasks waiting per lane, sorted by lane; lanes that never had work are absent. */
+    Map<String, Long> laneDepths() {
+        Map<String, Long> depths = new TreeMap<>();
+        for (Lane lane : lanes.values()) {
+            depths.put(lane.name, (long) lane.depth.get());
+        }
+        return depths;
+    }
+
+    /** How long the oldest waiting task has been queued, in milliseconds; 0 when the queue is empty. */
+    long lagMillis() {
+        Entry oldest = priority.peek();
+        for (Lane lane : lanes.values()) {
+            Entry head = lane.queue.peek();
+            if (head != null && (oldest == null || head.enqueuedAt - oldest.enqueuedAt < 0)) oldest = head;
+        }
+        return oldest == null ? 0L : (System.nanoTime() - oldest.enqueuedAt) / 1_000_000L;
+    }
+
+    // Next task to run: priority first, then the lanes in turn. Main thread only.
+    private Entry next() {
+        Entry entry = priority.poll();
+        if (entry != null) {
+            depth.decrementAndGet();
+            return entry;
+        }
+        while (true) {
+            Lane lane = current;
+            if (lane == null) {
+                lane = active.poll();
+                if (lane == null) return null;
+                current = lane;
+                credit = Math.max(1, weights.getOrDefault(lane.name, 1));
+            }
+            entry = lane.queue.poll();
+            if (entry == null) {
+                current = null;
+                park(lane);
+                continue;
+            }
+            lane.depth.decrementAndGet();
+            depth.decrementAndGet();
+            if (--credit <= 0) {
+                current = null;
+                if (lane.queue.isEmpty()) {
+                    park(lane);
+                } else {
+                    active.add(lane);
+                }
+            }
+            return entry;
+        }
+    }
+
+    // Takes a lane that ran dry out of the rotation, unless a submit raced in after the last poll.
+    private void park(Lane lane) {
+        lane.scheduled.set(false);
+        if (!lane.queue.isEmpty() && lane.scheduled.compareAndSet(false, true)) {
+            active.add(lane);
+        }
+    }
+
+    private void run(Entry entry) {
+        metrics.actionQueueWait.observeNanos(System.nanoTime() - entry.enqueuedAt,
+                entry.lane, entry.priority ? "priority" : "normal");
+        try {
+            entry.task.run();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Bridge action failed on the main thread.", e);
+        }
+    }
+
+    private static final class Lane {
+        private final String name;
+        private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Lane(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Entry {
+        private final Runnable task;
+        private final String lane;
+        private final boolean priority;
+        private final long enqueuedAt;
+
+        private Entry(Runnable task, String lane, boolean priority, long enqueuedAt) {
+            this.task = task;
+            this.lane = lane;
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.deehain.smp.networkbridge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Streaming parser for {@code /action} bodies, either {@code application/x-www-form-urlencoded} or a
+ * flat {@code application/json} object.
+ *
+ * The body is read into a pooled byte buffer of {@code maxBodyBytes} and only the known fields are
+ * decoded, in place, straight from those bytes: no intermediate body String, no split, no map.
+ * The token is never turned into a String; {@link ActionRequest#tokenMatches(byte[])} compares it
+ * against the configured token bytes. Unknown fields are skipped. {@link #parseLine} does the same
+ * for one line of an NDJSON stream.
+ */
+final class ActionRequestParser {
+
+    private static final byte[] TOKEN = ascii("token");
+    private static final byte[] PLAYER_NAME = ascii("playerName");
+    private static final byte[] STREAMER = ascii("streamer");
+    private static final byte[] ACTION = ascii("action");
+    private static final byte[] REQUEST_ID = ascii("requestId");
+    private static final byte[] SEQ = ascii("seq");
+    private static final byte[] ADD = ascii("add");
+    private static final byte[] REMOVE = ascii("remove");
+
+    private final int maxBodyBytes;
+    private final ArrayBlockingQueue<ActionRequest> pool;
+
+    ActionRequestParser(int maxBodyBytes, int poolSize) {
+        this.maxBodyBytes = Math.max(256, maxBodyBytes);
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    int maxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /** Takes a request holder from the pool (or makes one). Hand it back with {@link #release(ActionRequest)}. */
+    ActionRequest acquire() {
+        ActionRequest request = pool.poll();
+        return request != null ? request : new ActionRequest(new byte[maxBodyBytes]);
+    }
+
+    void release(ActionRequest request) {
+        request.reset();
+        pool.offer(request);
+    }
+
+    /**
+     * Reads and parses a body into {@code request}.
+     *
+     * @param contentLength the declared length, or -1 if unknown (chunked)
+     * @throws FormCodec.BodyTooLargeException if the body is longer than the configured maximum
+     * @throws FormCodec.MalformedBodyException if the body cannot be decoded
+     */
+    void parse(InputStream in, String contentType, long contentLength, ActionRequest request) throws IOException {
+        if (contentLength > maxBodyBytes) {
+            throw new FormCodec.BodyTooLargeException(maxBodyBytes);
+        }
+        byte[] buf = request.buffer;
+        int length = 0;
+        int read;
+        while (length < buf.length && (read = in.read(buf, length, buf.length - length)) != -1) {
+            length += read;
+        }
+        if (length == buf.length && in.read() != -1) {
+            throw new FormCodec.BodyTooLargeException(maxBodyBytes);
+        }
+        if (isJson(contentType)) {
+            parseJson(buf, length, request);
+        } else {
+            parseForm(buf, length, request);
+        }
+    }
+
+    /**
+     * Reads the next line of an NDJSON stream from {@code in}, which should be buffered, and parses it
+     * as a flat JSON object into {@code request}. Blank lines are skipped (clients may send them as
+     * keep-alives). Returns false at the end of the stream.
+     *
+     * @throws FormCodec.BodyTooLargeException if the line is longer than the configured maximum; the
+     *         rest of that line is consumed, so the caller can carry on with the next one
+     * @throws FormCodec.MalformedBodyException if the line is not a JSON object
+     */
+    boolean parseLine(InputStream in, ActionRequest request) throws IOException {
+        request.reset();
+        byte[] buf = request.buffer;
+        while (true) {
+            int length = 0;
+            boolean tooLong = false;
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                if (length < buf.length) {
+                    buf[length++] = (byte) b;
+                } else {
+                    tooLong = true;
+                }
+            }
+            if (tooLong) {
+                throw new FormCodec.BodyTooLargeException(maxBodyBytes);
+            }
+            if (skipWhitespace(buf, 0, length) == length) {
+                if (b == -1) return false;
+                continue;
+            }
+            parseJson(buf, length, request);
+            return true;
+        }
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, "application/json", 0, 16);
+    }
+
+    // ---- application/x-www-form-urlencoded ----
+
+    private static void parseForm(byte[] buf, int length, ActionRequest request) throws IOException {
+        int pos = 0;
+        while (pos < length) {
+            int pairEnd = indexOf(buf, (byte) '&', pos, length);
+            int eq = indexOf(buf, (byte) '=', pos, pairEnd);
+            // Like before: pairs without '=' or with an empty name are ignored.
+            if (eq > pos && eq < pairEnd) {
+                int keyEnd = percentDecode(buf, pos, eq, true);
+                int valueEnd = percentDecode(buf, eq + 1, pairEnd, true);
+                assign(buf, pos, keyEnd, eq + 1, valueEnd, request);
+            }
+            pos = pairEnd + 1;
+        }
+    }
+
+    // Decodes %XX and '+' in buf[from, to) in place and returns the new end. Decoding never grows the data.
+    private static int percentDecode(byte[] buf, int from, int to, boolean plusIsSpace) throws IOException {
+        int out = from;
+        for (int i = from; i < to; i++) {
+            byte b = buf[i];
+            if (b == '%') {
+                if (i + 2 >= to) throw new FormCodec.MalformedBodyException("truncated percent escape");
+                int hi = Character.digit(buf[i + 1], 16);
+                int lo = Character.digit(buf[i + 2], 16);
+                if (hi < 0 || lo < 0) throw new FormCodec.MalformedBodyException("invalid percent escape");
+                buf[out++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else if (b == '+' && plusIsSpace) {
+                buf[out++] = ' ';
+            } else {
+                buf[out++] = b;
+            }
+        }
+        return out;
+    }
+
+    // ---- application/json ----
+
+    private static void parseJson(byte[] buf, int length, ActionRequest request) throws IOException {
+        int pos = skipWhitespace(buf, 0, length);
+        if (pos >= length || buf[pos] != '{') throw new FormCodec.MalformedBodyException("expected a JSON object");
+        pos = skipWhitespace(buf, pos + 1, length);
+        if (pos < length && buf[pos] == '}') {
+            pos++;
+        } else {
+            while (true) {
+                if (pos >= length || buf[pos] != '"') throw new FormCodec.MalformedBodyException("expected a member name");
+                int keyStart = pos + 1;
+                int keyClose = stringEnd(buf, keyStart, length);
+                int keyEnd = unescape(buf, keyStart, keyClose);
+                pos = skipWhitespace(buf, keyClose + 1, length);
+                if (pos >= length || buf[pos] != ':') throw new FormCodec.MalformedBodyException("expected ':'");
+                pos = skipWhitespace(buf, pos + 1, length);
+                if (pos >= length) throw new FormCodec.MalformedBodyException("missing value");
+
+                byte first = buf[pos];
+                if (first == '"') {
+                    int valueStart = pos + 1;
+                    int valueClose = stringEnd(buf, valueStart, length);
+                    int valueEnd = unescape(buf, valueStart, valueClose);
+                    assign(buf, keyStart, keyEnd, valueStart, valueEnd, request);
+                    pos = valueClose + 1;
+                } else if (first == '{' || first == '[') {
+                    pos = skipContainer(buf, pos, length);
+                } else {
+                    // Number, true, false or null. Scalars are taken as their literal text; null means absent.
+                    int valueEnd = pos;
+                    while (valueEnd < length && buf[valueEnd] != ',' && buf[valueEnd] != '}' && !isWhitespace(buf[valueEnd])) {
+                        valueEnd++;
+                    }
+                    if (valueEnd == pos) throw new FormCodec.MalformedBodyException("missing value");
+                    if (!(valueEnd - pos == 4 && buf[pos] == 'n' && buf[pos + 1] == 'u' && buf[pos + 2] == 'l' && buf[pos + 3] == 'l')) {
+                        assign(buf, keyStart, keyEnd, pos, valueEnd, request);
+                    }
+                    pos = valueEnd;
+                }
+
+                pos = skipWhitespace(buf, pos, length);
+                if (pos < length && buf[pos] == ',') {
+                    pos = skipWhitespace(buf, pos + 1, length);
+                    continue;
+                }
+                if (pos < length && buf[pos] == '}') {
+                    pos++;
+                    break;
+                }
+                throw new FormCodec.MalformedBodyException("expected ',' or '}'");
+            }
+        }
+        if (skipWhitespace(buf, pos, length) != length) throw new FormCodec.MalformedBodyException("trailing data");
+    }
+
+    // Index of the closing quote of a string whose content starts at from.
+    private static int stringEnd(byte[] buf, int from, int length) throws IOException {
+        for (int i = from; i < length; i++) {
+            if (buf[i] == '\\') {
+                i++;
+            } else if (buf[i] == '"') {
+                return i;
+            }
+        }
+        throw new FormCodec.MalformedBodyException("unterminated string");
+    }
+
+    // Resolves JSON escapes in buf[from, to) in place (to is the closing quote) and returns the new end.
+    private static int unescape(byte[] buf, int from, int to) throws IOException {
+        int out = from;
+        for (int i = from; i < to; i++) {
+            byte b = buf[i];
+            if (b != '\\') {
+                buf[out++] = b;
+                continue;
+            }
+            byte esc = buf[++i];
+            switch (esc) {
+                case '"': case '\\': case '/': buf[out++] = esc; break;
+                case 'b': buf[out++] = '\b'; break;
+                case 'f': buf[out++] = '\f'; break;
+                case 'n': buf[out++] = '\n'; break;
+                case 'r': buf[out++] = '\r'; break;
+                case 't': buf[out++] = '\t'; break;
+                case 'u': {
+                    int cp = hex4(buf, i + 1, to);
+                    i += 4;
+                    if (Character.isHighSurrogate((char) cp) && i + 6 < to && buf[i + 1] == '\\' && buf[i + 2] == 'u') {
+                        int low = hex4(buf, i + 3, to);
+                        if (Character.isLowSurrogate((char) low)) {
+                            cp = Character.toCodePoint((char) cp, (char) low);
+                            i += 6;
+                        }
+                    }
+                    out = writeUtf8(buf, out, cp);
+                    break;
+                }
+                default:
+                    throw new FormCodec.MalformedBodyException("invalid escape");
+            }
+        }
+        return out;
+    }
+
+    private static int hex4(byte[] buf, int from, int to) throws IOException {
+        if (from + 4 > to) throw new FormCodec.MalformedBodyException("truncated unicode escape");
+        int value = 0;
+        for (int i = from; i < from + 4; i++) {
+            int digit = Character.digit(buf[i], 16);
+            if (digit < 0) throw new FormCodec.MalformedBodyException("invalid unicode escape");
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    // An escape is at least 6 bytes (12 for a surrogate pair) and its UTF-8 form at most 3 (4), so this never overtakes the reader.
+    private static int writeUtf8(byte[] buf, int out, int cp) {
+        if (cp < 0x80) {
+            buf[out++] = (byte) cp;
+        } else if (cp < 0x800) {
+            buf[out++] = (byte) (0xC0 | (cp >> 6));
+            buf[out++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            buf[out++] = (byte) (0xE0 | (cp >> 12));
+            buf[out++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[out++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            buf[out++] = (byte) (0xF0 | (cp >> 18));
+            buf[out++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buf[out++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[out++] = (byte) (0x80 | (cp & 0x3F));
+        }
+        return out;
+    }
+
+    private static int skipContainer(byte[] buf, int pos, int length) throws IOException {
+        int depth = 0;
+        for (int i = pos; i < length; i++) {
+            byte b = buf[i];
+            if (b == '"') {
+                i = stringEnd(buf, i + 1, length);
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) return i + 1;
+            }
+        }
+        throw new FormCodec.MalformedBodyException("unterminated value");
+    }
+
+    private static int skipWhitespace(byte[] buf, int pos, int length) {
+        while (pos < length && isWhitespace(buf[pos])) pos++;
+        return pos;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    // ---- shared ----
+
+    private static void assign(byte[] buf, int keyStart, int keyEnd, int valueStart, int valueEnd, ActionRequest request) {
+        if (equalsAscii(buf, keyStart, keyEnd, TOKEN)) {
+            request.tokenStart = valueStart;
+            request.tokenEnd = valueEnd;
+        } else if (equalsAscii(buf, keyStart, keyEnd, PLAYER_NAME)) {
+            request.playerName = utf8(buf, valueStart, valueEnd);
+        } else if (equalsAscii(buf, keyStart, keyEnd, STREAMER)) {
+            request.streamer = utf8(buf, valueStart, valueEnd);
+        } else if (equalsAscii(buf, keyStart, keyEnd, ACTION)) {
+            // The two real actions map to constants; anything else is kept as sent.
+            if (equalsAscii(buf, valueStart, valueEnd, ADD)) {
+                request.action = "add";
+            } else if (equalsAscii(buf, valueStart, valueEnd, REMOVE)) {
+                request.action = "remove";
+            } else {
+                request.action = utf8(buf, valueStart, valueEnd);
+            }
+        } else if (equalsAscii(buf, keyStart, keyEnd, REQUEST_ID)) {
+            request.requestId = valueEnd > valueStart ? utf8(buf, valueStart, valueEnd) : null;
+        } else if (equalsAscii(buf, keyStart, keyEnd, SEQ)) {
+            request.seq = parseSeq(buf, valueStart, valueEnd);
+        }
+    }
+
+    // Non-negative decimal, or -1 if the value is anything else.
+    private static long parseSeq(byte[] buf, int from, int to) {
+        if (to <= from || to - from > 18) return -1L;
+        long value = 0L;
+        for (int i = from; i < to; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) return -1L;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static String utf8(byte[] buf, int from, int to) {
+        return new String(buf, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static boolean equalsAscii(byte[] buf, int from, int to, byte[] expected) {
+        if (to - from != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (buf[from + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) return i;
+        }
+        return to;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Decoded fields of one /action request or stream item, plus the pooled buffer they were decoded from. */
+    static final class ActionRequest {
+        private final byte[] buffer;
+        private int tokenStart;
+        private int tokenEnd;
+        String playerName;
+        String streamer;
+        String action;
+        String requestId;
+        // Client sequence number of a stream item, or -1 if none was sent.
+        long seq = -1L;
+
+        private ActionRequest(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean hasToken() {
+            return tokenEnd > tokenStart;
+        }
+
+        /** Compares the received token with {@code expected} in constant time for a given length. */
+        boolean tokenMatches(byte[] expected) {
+            int length = tokenEnd - tokenStart;
+            int diff = length ^ expected.length;
+            for (int i = 0; i < expected.length; i++) {
+                diff |= expected[i] ^ (i < length ? buffer[tokenStart + i] : 0);
+            }
+            return diff == 0;
+        }
+
+        private void reset() {
+            tokenStart = 0;
+            tokenEnd = 0;
+            playerName = null;
+            streamer = null;
+            action = null;
+            requestId = null;
+            seq = -1L;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Completion handles for actions applied on the main thread, looked up by the id returned to the
+ * client. Each entry holds the future that {@code applyActionTimed} completes once the whitelist,
+ * command and BetterTeams work for the action has run (exceptionally if it threw).
+ *
+ * Bounded and expiring: entries are dropped {@code ttlMillis} after they were created, and the oldest
+ * ones go first once {@code maxEntries} is reached, so unknown ids simply mean "expired or never issued".
+ */
+final class ActionTracker {
+
+    // Insertion order doubles as creation order, so expired entries are at the front.
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    // Ids are "<startup time>-<counter>" in base 36: unique across restarts without a random source.
+    private final String idPrefix = Long.toString(System.currentTimeMillis(), 36) + '-';
+    private final AtomicLong nextId = new AtomicLong();
+    private int maxEntries = 10000;
+    private long ttlMillis = 600_000L;
+
+    synchronized void configure(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = Math.max(0L, ttlMillis);
+    }
+
+    /** Registers a future for an action and returns its id. */
+    String track(String playerName, String streamer, String action, CompletableFuture<?> future) {
+        String id = idPrefix + Long.toString(nextId.incrementAndGet(), 36);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            evict(now, 1);
+            entries.put(id, new Entry(id, playerName, streamer, action, now, future));
+        }
+        return id;
+    }
+
+    /** The entry for {@code id}, or null if it expired or was never issued. */
+    synchronized Entry get(String id) {
+        evict(System.currentTimeMillis(), 0);
+        return entries.get(id);
+    }
+
+    // Drops expired entries, and the oldest live ones if needed to leave room for {@code room} more.
+    private void evict(long now, int room) {
+        Iterator<Entry> it = entries.values().iterator();
+        int excess = entries.size() + room - maxEntries;
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (excess <= 0 && entry.createdAt + ttlMillis > now) break;
+            it.remove();
+            excess--;
+        }
+    }
+
+    static final class Entry {
+        final String id;
+        final String playerName;
+        final String streamer;
+        final String action;
+        final long createdAt;
+        final CompletableFuture<?> future;
+
+        private Entry(String id, String playerName, String streamer, String action, long createdAt, CompletableFuture<?> future) {
+            this.id = id;
+            this.playerName = playerName;
+            this.streamer = streamer;
+            this.action = action;
+            this.createdAt = createdAt;
+            this.future = future;
+        }
+    }
+}
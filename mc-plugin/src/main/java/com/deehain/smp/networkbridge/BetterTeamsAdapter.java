@@ -0,0 +1,277 @@
+package com.deehain.smp.networkbridge;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Typed access to the parts of the BetterTeams API the bridge uses.
+ *
+ * BetterTeams is only a soft dependency, so everything is reached reflectively. The lookups are
+ * done once in {@link #resolve(Plugin)} and kept as {@link MethodHandle}s; call {@link #resolve(Plugin)}
+ * again whenever BetterTeams is (re)enabled and {@link #clear()} when it is disabled. While nothing is
+ * resolved {@link #isAvailable()} is false and callers should fall back to the configured commands.
+ */
+final class BetterTeamsAdapter {
+
+    static final String PLUGIN_NAME = "BetterTeams";
+
+    private static final String TEAM_CLASS = "com.booksaw.betterTeams.Team";
+    private static final String TEAM_PLAYER_CLASS = "com.booksaw.betterTeams.TeamPlayer";
+    private static final String PLAYER_RANK_CLASS = "com.booksaw.betterTeams.PlayerRank";
+    private static final String JOIN_EVENT_CLASS = "com.booksaw.betterTeams.customEvents.PlayerJoinTeamEvent";
+    private static final String LEAVE_EVENT_CLASS = "com.booksaw.betterTeams.customEvents.PlayerLeaveTeamEvent";
+    private static final String TEAM_EVENT_CLASS = "com.booksaw.betterTeams.customEvents.TeamEvent";
+    private static final String CREATE_EVENT_CLASS = "com.booksaw.betterTeams.customEvents.CreateTeamEvent";
+    private static final String MEMBER_SET_CLASS = "com.booksaw.betterTeams.team.MemberSetComponent";
+
+    private final Logger logger;
+    private volatile Handles handles;
+    // Registered for CreateTeamEvent through registerEvent(), since the event class is only known at runtime.
+    private final Listener teamCreateListener = new Listener() {
+    };
+
+    BetterTeamsAdapter(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Resolves the BetterTeams API from the given plugin's class loader. Returns false (and leaves the
+     * adapter unavailable) if the plugin is missing or its API does not have the expected shape.
+     */
+    boolean resolve(Plugin betterTeams) {
+        clear();
+        if (betterTeams == null || !betterTeams.isEnabled()) {
+            return false;
+        }
+        ClassLoader loader = betterTeams.getClass().getClassLoader();
+        try {
+            Class<?> teamClass = Class.forName(TEAM_CLASS, false, loader);
+            Class<?> teamPlayerClass = Class.forName(TEAM_PLAYER_CLASS, false, loader);
+            Class<?> playerRankClass = Class.forName(PLAYER_RANK_CLASS, false, loader);
+            Class<?> joinEventClass = Class.forName(JOIN_EVENT_CLASS, false, loader);
+            Class<?> leaveEventClass = Class.forName(LEAVE_EVENT_CLASS, false, loader);
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+            // Team.getTeam(String) -> (String)Object
+            MethodHandle getTeam = lookup.findStatic(teamClass, "getTeam", MethodType.methodType(teamClass, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+
+            // new TeamPlayer(OfflinePlayer, PlayerRank.DEFAULT) -> (OfflinePlayer)Object
+            Object defaultRank = enumConstant(playerRankClass, "DEFAULT");
+            MethodHandle newTeamPlayer = lookup.findConstructor(teamPlayerClass, MethodType.methodType(void.class, OfflinePlayer.class, playerRankClass));
+            newTeamPlayer = MethodHandles.insertArguments(newTeamPlayer, 1, defaultRank)
+                    .asType(MethodType.methodType(Object.class, OfflinePlayer.class));
+
+            // new PlayerJoinTeamEvent(Team, TeamPlayer) / new PlayerLeaveTeamEvent(Team, TeamPlayer) -> (Object, Object)Event
+            MethodType eventCtorType = MethodType.methodType(void.class, teamClass, teamPlayerClass);
+            MethodType erasedEventType = MethodType.methodType(Event.class, Object.class, Object.class);
+            MethodHandle newJoinEvent = lookup.findConstructor(joinEventClass, eventCtorType).asType(erasedEventType);
+            MethodHandle newLeaveEvent = lookup.findConstructor(leaveEventClass, eventCtorType).asType(erasedEventType);
+
+            String version = betterTeams.getPluginMeta().getVersion();
+
+            // CreateTeamEvent and TeamEvent.getTeam().getName() -> (Event)Object, (Object)String.
+            // Optional: without them pending adds are only released by the periodic check.
+            Class<? extends Event> createEventClass = null;
+            MethodHandle eventTeam = null;
+            MethodHandle teamName = null;
+            try {
+                Class<?> teamEventClass = Class.forName(TEAM_EVENT_CLASS, false, loader);
+                Class<? extends Event> createClass = Class.forName(CREATE_EVENT_CLASS, false, loader).asSubclass(Event.class);
+                eventTeam = lookup.findVirtual(teamEventClass, "getTeam", MethodType.methodType(teamClass))
+                        .asType(MethodType.methodType(Object.class, Event.class));
+                teamName = lookup.findVirtual(teamClass, "getName", MethodType.methodType(String.class))
+                        .asType(MethodType.methodType(String.class, Object.class));
+                createEventClass = createClass;
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                logger.info("BetterTeams " + version + " has no usable CreateTeamEvent; adds waiting for a nation are released by the pending-nation-poll-seconds check.");
+            }
+
+            // Team.getMembers().getOfflinePlayers() -> (Object)List. Optional: only roster diffs use it.
+            MethodHandle teamMembers = null;
+            try {
+                Class<?> memberSetClass = Class.forName(MEMBER_SET_CLASS, false, loader);
+                MethodHandle getMembers = lookup.findVirtual(teamClass, "getMembers", MethodType.methodType(memberSetClass));
+                MethodHandle offlinePlayers = lookup.findVirtual(memberSetClass, "getOfflinePlayers", MethodType.methodType(List.class));
+                teamMembers = MethodHandles.filterReturnValue(getMembers, offlinePlayers)
+                        .asType(MethodType.methodType(List.class, Object.class));
+            } catch (ReflectiveOperationException e) {
+                logger.info("BetterTeams " + version + " does not expose team members; roster diffs will use the bridge's own records.");
+            }
+
+            handles = new Handles(getTeam, newTeamPlayer, newJoinEvent, newLeaveEvent, createEventClass, eventTeam, teamName, teamMembers);
+            logger.info("BetterTeams API " + version + " resolved.");
+            return true;
+        } catch (ReflectiveOperationException | IllegalArgumentException | ClassCastException e) {
+            logger.log(Level.WARNING, "BetterTeams " + betterTeams.getPluginMeta().getVersion()
+                    + " is installed but its API could not be resolved; falling back to team commands.", e);
+            return false;
+        }
+    }
+
+    void clear() {
+        handles = null;
+        HandlerList.unregisterAll(teamCreateListener);
+    }
+
+    /**
+     * Calls {@code onCreated} with the team name whenever BetterTeams fires a (non-cancelled)
+     * {@code CreateTeamEvent}. The event fires before the team is stored, so callers should defer
+     * any work that looks the team up. Must be called again after every successful {@link #resolve(Plugin)}.
+     * Does nothing if this BetterTeams version has no such event.
+     */
+    void registerTeamCreateListener(Plugin owner, Consumer<String> onCreated) {
+        Handles h = handles;
+        if (h == null || h.createEventClass == null) return;
+        HandlerList.unregisterAll(teamCreateListener);
+        Bukkit.getPluginManager().registerEvent(h.createEventClass, teamCreateListener, EventPriority.MONITOR, (listener, event) -> {
+            if (!h.createEventClass.isInstance(event)) return;
+            try {
+                onCreated.accept((String) h.teamName.invokeExact((Object) h.eventTeam.invokeExact(event)));
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "Failed to read team name from BetterTeams CreateTeamEvent.", t);
+            }
+        }, owner, true);
+    }
+
+    boolean isAvailable() {
+        return handles != null;
+    }
+
+    /** Returns true if BetterTeams knows a team with this name. Requires {@link #isAvailable()}. */
+    boolean teamExists(String teamName) {
+        return findTeam(requireHandles(), teamName) != null;
+    }
+
+    /** Returns true if {@link #memberNames(String)} can read team members from this BetterTeams version. */
+    boolean canListMembers() {
+        Handles h = handles;
+        return h != null && h.teamMembers != null;
+    }
+
+    /**
+     * Names of the team's members (the leader included), or an empty list if there is no such team.
+     * Main thread only. Requires {@link #canListMembers()}.
+     */
+    List<String> memberNames(String teamName) {
+        Handles h = requireHandles();
+        if (h.teamMembers == null) {
+            throw new IllegalStateException("BetterTeams does not expose team members");
+        }
+        Object team = findTeam(h, teamName);
+        if (team == null) return List.of();
+        List<?> players;
+        try {
+            players = (List<?>) h.teamMembers.invokeExact(team);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        List<String> names = new ArrayList<>(players.size());
+        for (Object player : players) {
+            String name = player instanceof OfflinePlayer offline ? offline.getName() : null;
+            if (name != null) names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Builds a {@code PlayerJoinTeamEvent} for the player and team, or returns null if the team does not exist.
+     * The caller fires it on the main thread.
+     */
+    Event createJoinEvent(OfflinePlayer player, String teamName) {
+        Handles h = requireHandles();
+        Object team = findTeam(h, teamName);
+        if (team == null) return null;
+        try {
+            return (Event) h.newJoinEvent.invokeExact(team, (Object) h.newTeamPlayer.invokeExact(player));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Builds a {@code PlayerLeaveTeamEvent} for the player and team, or returns null if the team does not exist.
+     * The caller fires it on the main thread.
+     */
+    Event createLeaveEvent(OfflinePlayer player, String teamName) {
+        Handles h = requireHandles();
+        Object team = findTeam(h, teamName);
+        if (team == null) return null;
+        try {
+            return (Event) h.newLeaveEvent.invokeExact(team, (Object) h.newTeamPlayer.invokeExact(player));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private Handles requireHandles() {
+        Handles h = handles;
+        if (h == null) {
+            throw new IllegalStateException("BetterTeams API is not available");
+        }
+        return h;
+    }
+
+    private static Object findTeam(Handles h, String teamName) {
+        try {
+            return (Object) h.getTeam.invokeExact(teamName);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class<?> enumClass, String name) {
+        return Enum.valueOf((Class<Enum>) enumClass, name);
+    }
+
+    private static final class Handles {
+        private final MethodHandle getTeam;
+        private final MethodHandle newTeamPlayer;
+        private final MethodHandle newJoinEvent;
+        private final MethodHandle newLeaveEvent;
+        // These three are null if this BetterTeams version has no CreateTeamEvent the adapter understands.
+        private final Class<? extends Event> createEventClass;
+        private final MethodHandle eventTeam;
+        private final MethodHandle teamName;
+        // Null if this BetterTeams version has no member listing the adapter understands.
+        private final MethodHandle teamMembers;
+
+        private Handles(MethodHandle getTeam, MethodHandle newTeamPlayer,
+                        MethodHandle newJoinEvent, MethodHandle newLeaveEvent,
+                        Class<? extends Event> createEventClass, MethodHandle eventTeam, MethodHandle teamName,
+                        MethodHandle teamMembers) {
+            this.getTeam = getTeam;
+            this.newTeamPlayer = newTeamPlayer;
+            this.newJoinEvent = newJoinEvent;
+            this.newLeaveEvent = newLeaveEvent;
+            this.createEventClass = createEventClass;
+            this.eventTeam = eventTeam;
+            this.teamName = teamName;
+            this.teamMembers = teamMembers;
+        }
+    }
+}
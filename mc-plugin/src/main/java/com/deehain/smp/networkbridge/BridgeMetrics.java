@@ -0,0 +1,211 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Counters, histograms and gauges for the bridge, rendered in the Prometheus text format.
+ *
+ * Recording only touches {@link LongAdder}s (after a one-time map lookup per label set), so
+ * HTTP threads and the main thread never contend on a lock. Gauges are read at scrape time.
+ */
+final class BridgeMetrics {
+
+    // Histogram bucket upper bounds, in seconds: 50us .. 10s.
+    private static final double[] BUCKETS = {
+            0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 10
+    };
+
+    final LabeledCounter requests = new LabeledCounter("bridge_http_requests_total",
+            "HTTP requests handled, by endpoint and status code.", "endpoint", "status");
+    final LabeledCounter actions = new LabeledCounter("bridge_actions_total",
+            "Roster actions received, by action and outcome.", "action", "result");
+    final LabeledHistogram requestPhase = new LabeledHistogram("bridge_http_request_phase_seconds",
+            "Time spent per request phase.", "phase");
+    final LabeledHistogram mainThreadAction = new LabeledHistogram("bridge_main_thread_action_seconds",
+            "Main-thread time spent applying one action.", "action");
+    final LabeledHistogram persistFlush = new LabeledHistogram("bridge_persist_flush_seconds",
+            "Time spent writing persisted state to disk.", "store");
+    final LabeledCounter persistBytes = new LabeledCounter("bridge_persist_bytes_total",
+            "Bytes written for persisted state.", "store");
+    final LabeledHistogram actionQueueWait = new LabeledHistogram("bridge_action_queue_wait_seconds",
+            "Time actions waited for the main thread, by streamer lane.", "streamer", "lane");
+    final LabeledCounter rateLimited = new LabeledCounter("bridge_rate_limited_total",
+            "Actions rejected by the per-streamer rate limit.", "streamer");
+
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LabeledGauge> labeledGauges = new ConcurrentSkipListMap<>();
+
+    void gauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    /** A gauge with one series per key of the map returned at scrape time. */
+    void gauge(String name, String help, String labelName, Supplier<Map<String, Long>> values) {
+        labeledGauges.put(name, new LabeledGauge(help, labelName, values));
+    }
+
+    /** Records one completed disk write for {@code store}. */
+    void recordPersist(String store, long nanos, long bytes) {
+        persistFlush.observeNanos(nanos, store);
+        persistBytes.add(bytes, store);
+    }
+
+    String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        requests.render(sb);
+        actions.render(sb);
+        requestPhase.render(sb);
+        mainThreadAction.render(sb);
+        persistFlush.render(sb);
+        persistBytes.render(sb);
+        actionQueueWait.render(sb);
+        rateLimited.render(sb);
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            String name = entry.getKey();
+            sb.append("# HELP ").append(name).append(' ').append(entry.getValue().help).append('\n');
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            sb.append(name).append(' ').append(entry.getValue().value.getAsLong()).append('\n');
+        }
+        for (Map.Entry<String, LabeledGauge> entry : labeledGauges.entrySet()) {
+            String name = entry.getKey();
+            LabeledGauge gauge = entry.getValue();
+            sb.append("# HELP ").append(name).append(' ').append(gauge.help).append('\n');
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            String[] labelNames = {gauge.labelName};
+            for (Map.Entry<String, Long> series : gauge.values.get().entrySet()) {
+                sb.append(name).append(labels(labelNames, new String[]{series.getKey()}))
+                        .append(' ').append(series.getValue()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String labels(String[] names, String[] values) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) sb.append(',');
+            String value = i < values.length && values[i] != null ? values[i] : "";
+            sb.append(names[i]).append("=\"")
+                    .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    static final class LabeledCounter {
+        private final String name;
+        private final String help;
+        private final String[] labelNames;
+        private final Map<String, LongAdder> series = new ConcurrentHashMap<>();
+
+        private LabeledCounter(String name, String help, String... labelNames) {
+            this.name = name;
+            this.help = help;
+            this.labelNames = labelNames;
+        }
+
+        void inc(String... labelValues) {
+            add(1L, labelValues);
+        }
+
+        void add(long amount, String... labelValues) {
+            series.computeIfAbsent(labels(labelNames, labelValues), k -> new LongAdder()).add(amount);
+        }
+
+        private void render(StringBuilder sb) {
+            sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            for (Map.Entry<String, LongAdder> entry : series.entrySet()) {
+                sb.append(name).append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+            }
+        }
+    }
+
+    static final class LabeledHistogram {
+        private final String name;
+        private final String help;
+        private final String[] labelNames;
+        private final Map<String, Histogram> series = new ConcurrentHashMap<>();
+
+        private LabeledHistogram(String name, String help, String... labelNames) {
+            this.name = name;
+            this.help = help;
+            this.labelNames = labelNames;
+        }
+
+        void observeNanos(long nanos, String... labelValues) {
+            series.computeIfAbsent(labels(labelNames, labelValues), k -> new Histogram()).observeNanos(nanos);
+        }
+
+        private void render(StringBuilder sb) {
+            sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(name).append(" histogram\n");
+            for (Map.Entry<String, Histogram> entry : series.entrySet()) {
+                entry.getValue().render(sb, name, entry.getKey());
+            }
+        }
+    }
+
+    private static final class Histogram {
+        private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        private void observeNanos(long nanos) {
+            double seconds = nanos / 1_000_000_000.0;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+            sumNanos.add(nanos);
+        }
+
+        private void render(StringBuilder sb, String name, String labels) {
+            // labels is "{...}"; bucket lines need an extra le label inside the braces.
+            String prefix = labels.length() > 2 ? labels.substring(0, labels.length() - 1) + "," : "{";
+            long cumulative = 0L;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += counts[i].sum();
+                sb.append(name).append("_bucket").append(prefix).append("le=\"").append(BUCKETS[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += counts[BUCKETS.length].sum();
+            sb.append(name).append("_bucket").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            sb.append(name).append("_sum").append(labels).append(' ').append(sumNanos.sum() / 1_000_000_000.0).append('\n');
+            sb.append(name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    private static final class Gauge {
+        private final String help;
+        private final LongSupplier value;
+
+        private Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private static final class LabeledGauge {
+        private final String help;
+        private final String labelName;
+        private final Supplier<Map<String, Long>> values;
+
+        private LabeledGauge(String help, String labelName, Supplier<Map<String, Long>> values) {
+            this.help = help;
+            this.labelName = labelName;
+            this.values = values;
+        }
+    }
+}
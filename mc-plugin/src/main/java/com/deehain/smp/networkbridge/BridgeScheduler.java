@@ -0,0 +1,52 @@
+package com.deehain.smp.networkbridge;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Where the bridge runs its work, so the same code runs on Paper and on region-threaded Folia.
+ *
+ * "Global" work is what the rest of the bridge calls the main thread: the action drainer, console
+ * commands, whitelist and BetterTeams changes, and the bridge's own main-thread-only state. On Paper
+ * that is the server thread; on Folia it is the global region thread. Work that touches one player
+ * (kicks, PlaceholderAPI) must run on that player's region on Folia, and disk I/O runs async.
+ */
+interface BridgeScheduler {
+
+    /** Picks the Folia schedulers when running on Folia, the Bukkit scheduler otherwise. */
+    static BridgeScheduler create(Plugin plugin) {
+        return FoliaBridgeScheduler.isFolia() ? new FoliaBridgeScheduler(plugin) : new BukkitBridgeScheduler(plugin);
+    }
+
+    /** Whether global and per-player work run on different threads (Folia). */
+    boolean regionThreaded();
+
+    /** Runs the task as global work on a later tick. */
+    void runGlobal(Runnable task);
+
+    /** Runs the task as global work: right away if already on the thread that may run it (Paper), else on a later tick. */
+    void executeGlobal(Runnable task);
+
+    /** Runs the task as global work every {@code periodTicks}, starting after {@code delayTicks} (at least 1). */
+    Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /** Runs the task as global work and hands back its result. */
+    <T> Future<T> callGlobal(Callable<T> task);
+
+    /**
+     * Runs the task where the player may be touched: right away on Paper's server thread, else on the
+     * player's region. {@code retired} runs instead if the player is gone by then (Folia only; may be null).
+     */
+    void runForPlayer(Player player, Runnable task, Runnable retired);
+
+    /** Runs the task off the server threads, for disk I/O. */
+    void runAsync(Runnable task);
+
+    /** A scheduled repeating task. */
+    interface Task {
+        void cancel();
+    }
+}
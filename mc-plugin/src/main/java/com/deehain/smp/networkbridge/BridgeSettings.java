@@ -0,0 +1,178 @@
+package com.deehain.smp.networkbridge;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything the bridge reads from config.yml at runtime, captured once per load or reload.
+ * Immutable; the plugin publishes a new instance in a single volatile write, so code that reads
+ * the snapshot once sees a consistent set of values even while {@code /mcpbridge reload} runs.
+ */
+final class BridgeSettings {
+
+    // Listener
+    final String listenIp;
+    final int listenPort;
+    final String transport;
+    final String httpExecutor;
+    final int acceptBacklog;
+    final int nioEventLoops;
+    final long nioIdleTimeoutMillis;
+
+    // Request handling
+    final String authToken;
+    final int maxInFlight;
+    final int maxQueued;
+    final long queueTimeoutMs;
+    final int retryAfterSeconds;
+    final int maxBodyBytes;
+    final int batchMaxItems;
+    final int batchMaxBodyBytes;
+    final int streamMaxConnections;
+    final int streamWindow;
+    final int streamMaxBacklog;
+    final int actionStatusMaxWaiters;
+    final long actionStatusMaxWaitSeconds;
+    final boolean metricsEnabled;
+    final boolean metricsRequireToken;
+
+    // Actions
+    final boolean disableBetterTeamsApi;
+    final boolean alwaysRunTeamCommands;
+    final boolean kickAndUnwhitelistOnRemove;
+    final boolean unwhitelistOnRemove;
+    final boolean whitelistOnlyMode;
+    final boolean rejectUnknownStreamers;
+    final StreamerNations streamerNations;
+    final List<CommandTemplate> actionCommands;
+    final CommandTemplate teamAddCommand;
+    final CommandTemplate teamRemoveCommand;
+    // Lower-cased streamer -> actions per turn on the main thread.
+    final Map<String, Integer> streamerWeights;
+    final double streamerRateLimitPerSecond;
+    final int streamerRateLimitBurst;
+
+    // Stores and main thread
+    final long historyRetentionMillis;
+    final long pendingNationPollSeconds;
+    final long drainBudgetNanos;
+    final int whitelistBulkThreshold;
+    final int idempotencyCacheSize;
+    final long idempotencyTtlMillis;
+    final int actionStatusSize;
+    final long actionStatusTtlMillis;
+    final int stateChangeLogSize;
+    // Read at startup only; a reload keeps the store that is open.
+    final String queueStorage;
+    final String queueDatabaseFile;
+    final long queueSnapshotIntervalMillis;
+    final int queueJournalCompactAfter;
+
+    // Server state request threads may not look up themselves, checked on the main thread.
+    final boolean placeholderApiAvailable;
+
+    private BridgeSettings(FileConfiguration config, boolean placeholderApiAvailable) {
+        listenIp = config.getString("listen-ip", "0.0.0.0");
+        listenPort = config.getInt("listen-port", 8123);
+        transport = "nio".equalsIgnoreCase(config.getString("transport", "jdk")) ? "nio" : "jdk";
+        httpExecutor = "cached".equalsIgnoreCase(config.getString("http-executor", "virtual")) ? "cached" : "virtual";
+        acceptBacklog = config.getInt("http-accept-backlog", 128);
+        nioEventLoops = config.getInt("nio-event-loops", 1);
+        nioIdleTimeoutMillis = TimeUnit.SECONDS.toMillis(config.getLong("nio-idle-timeout-seconds", 30L));
+
+        authToken = config.getString("auth-token", "");
+        maxInFlight = config.getInt("http-max-in-flight", 32);
+        maxQueued = config.getInt("http-max-queued", 256);
+        queueTimeoutMs = config.getLong("http-queue-timeout-ms", 2000L);
+        retryAfterSeconds = config.getInt("http-retry-after-seconds", 1);
+        maxBodyBytes = config.getInt("max-body-bytes", 8192);
+        batchMaxItems = config.getInt("batch-max-items", 1000);
+        batchMaxBodyBytes = config.getInt("batch-max-body-bytes", 1048576);
+        streamMaxConnections = config.getInt("stream-max-connections", 8);
+        streamWindow = config.getInt("stream-window", 256);
+        streamMaxBacklog = config.getInt("stream-max-backlog", 5000);
+        actionStatusMaxWaiters = config.getInt("action-status-max-waiters", 256);
+        actionStatusMaxWaitSeconds = config.getLong("action-status-max-wait-seconds", 30L);
+        metricsEnabled = config.getBoolean("metrics-enabled", true);
+        metricsRequireToken = config.getBoolean("metrics-require-token", false);
+
+        disableBetterTeamsApi = config.getBoolean("disable-betterteams-api", false);
+        alwaysRunTeamCommands = config.getBoolean("always-run-team-commands", false);
+        kickAndUnwhitelistOnRemove = config.getBoolean("kick-and-unwhitelist-on-remove", false);
+        unwhitelistOnRemove = config.getBoolean("unwhitelist-on-remove", false);
+        whitelistOnlyMode = config.getBoolean("whitelist-only-mode", false);
+        rejectUnknownStreamers = config.getBoolean("reject-unknown-streamers", true);
+        streamerNations = StreamerNations.from(config.getConfigurationSection("streamer-nations"));
+        actionCommands = CommandTemplate.compileAll(config.getStringList("commands"));
+        teamAddCommand = CommandTemplate.compile(config.getString("team-add-command", "teamadmin add %player_name% %nation%"));
+        teamRemoveCommand = CommandTemplate.compile(config.getString("team-remove-command", "teamadmin remove %player_name% %nation%"));
+        streamerWeights = readWeights(config.getConfigurationSection("streamer-weights"));
+        streamerRateLimitPerSecond = config.getDouble("streamer-rate-limit-per-second", 0.0D);
+        streamerRateLimitBurst = config.getInt("streamer-rate-limit-burst", 100);
+
+        historyRetentionMillis = TimeUnit.HOURS.toMillis(config.getLong("queue-history-retention-hours", 24L));
+        pendingNationPollSeconds = Math.max(1L, config.getLong("pending-nation-poll-seconds", 60L));
+        drainBudgetNanos = Math.max(1L, (long) (config.getDouble("main-thread-budget-ms", 2.0D) * 1_000_000L));
+        whitelistBulkThreshold = config.getInt("whitelist-bulk-write-threshold", 8);
+        idempotencyCacheSize = config.getInt("idempotency-cache-size", 10000);
+        idempotencyTtlMillis = TimeUnit.SECONDS.toMillis(config.getLong("idempotency-ttl-seconds", 600L));
+        actionStatusSize = config.getInt("action-status-size", 10000);
+        actionStatusTtlMillis = TimeUnit.SECONDS.toMillis(config.getLong("action-status-ttl-seconds", 600L));
+        stateChangeLogSize = config.getInt("state-change-log-size", 10000);
+        queueStorage = config.getString("queue-storage", "json").toLowerCase(Locale.ROOT);
+        queueDatabaseFile = config.getString("queue-database-file", "queued-team-changes.db");
+        queueSnapshotIntervalMillis = TimeUnit.SECONDS.toMillis(config.getLong("queue-snapshot-interval-seconds", 300L));
+        queueJournalCompactAfter = config.getInt("queue-journal-compact-after", 10000);
+
+        this.placeholderApiAvailable = placeholderApiAvailable;
+    }
+
+    /** {@code placeholderApiAvailable}: whether PlaceholderAPI is enabled right now. */
+    static BridgeSettings from(FileConfiguration config, boolean placeholderApiAvailable) {
+        return new BridgeSettings(config, placeholderApiAvailable);
+    }
+
+    private static Map<String, Integer> readWeights(ConfigurationSection section) {
+        if (section == null) return Map.of();
+        Map<String, Integer> weights = new HashMap<>();
+        for (String streamer : section.getKeys(false)) {
+            int weight = section.getInt(streamer, 1);
+            if (weight > 0) weights.put(streamer.toLowerCase(Locale.ROOT), weight);
+        }
+        return Map.copyOf(weights);
+    }
+
+    /** Whether both bind the same address. */
+    boolean sameAddress(BridgeSettings other) {
+        return other != null && listenIp.equals(other.listenIp) && listenPort == other.listenPort;
+    }
+
+    /**
+     * Whether a listener built from {@code other} can keep serving these settings, i.e. only
+     * per-request settings (and the executor, which can be swapped) differ. Anything else needs a
+     * new server socket.
+     */
+    boolean sameListener(BridgeSettings other) {
+        return sameAddress(other)
+                && transport.equals(other.transport)
+                && acceptBacklog == other.acceptBacklog
+                && nioEventLoops == other.nioEventLoops
+                && nioIdleTimeoutMillis == other.nioIdleTimeoutMillis
+                // The nio transport sizes its per-connection buffers from the body limits.
+                && (!"nio".equals(transport) || nioMaxBodyBytes() == other.nioMaxBodyBytes());
+    }
+
+    int nioMaxBodyBytes() {
+        return Math.max(maxBodyBytes, batchMaxBodyBytes);
+    }
+
+    String address() {
+        return listenIp + ":" + listenPort;
+    }
+}
@@ -0,0 +1,58 @@
+package com.deehain.smp.networkbridge;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/** {@link BridgeScheduler} on Paper and other single-threaded servers: everything but I/O runs on the server thread. */
+final class BukkitBridgeScheduler implements BridgeScheduler {
+
+    private final Plugin plugin;
+
+    BukkitBridgeScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean regionThreaded() {
+        return false;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    public void executeGlobal(Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        int id = Bukkit.getScheduler().scheduleSyncRepeatingTask(plugin, task, Math.max(1L, delayTicks), periodTicks);
+        return () -> Bukkit.getScheduler().cancelTask(id);
+    }
+
+    @Override
+    public <T> Future<T> callGlobal(Callable<T> task) {
+        return Bukkit.getScheduler().callSyncMethod(plugin, task);
+    }
+
+    @Override
+    public void runForPlayer(Player player, Runnable task, Runnable retired) {
+        executeGlobal(task);
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+    }
+}
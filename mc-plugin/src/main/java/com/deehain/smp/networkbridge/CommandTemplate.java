@@ -0,0 +1,141 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A command template from config.yml, split once into literal text and bridge placeholders
+ * ({@code %player_name%}, {@code %streamer%}, {@code %player_uuid%}, {@code %nation%}) so each
+ * expansion is a single append pass. Any other {@code %...%} token is kept as literal text and
+ * marks the template as needing PlaceholderAPI.
+ */
+final class CommandTemplate {
+
+    static final int PLAYER_NAME = 0;
+    static final int STREAMER = 1;
+    static final int PLAYER_UUID = 2;
+    static final int NATION = 3;
+
+    private static final String[] PLACEHOLDERS = {"%player_name%", "%streamer%", "%player_uuid%", "%nation%"};
+
+    private final String raw;
+    // Literal segments are Strings, placeholders are Integer indexes into the values passed to expand().
+    private final Object[] segments;
+    private final boolean needsUuid;
+    private final boolean needsPlaceholderApi;
+
+    private CommandTemplate(String raw, Object[] segments, boolean needsUuid, boolean needsPlaceholderApi) {
+        this.raw = raw;
+        this.segments = segments;
+        this.needsUuid = needsUuid;
+        this.needsPlaceholderApi = needsPlaceholderApi;
+    }
+
+    static CommandTemplate compile(String raw) {
+        List<Object> segments = new ArrayList<>();
+        boolean needsUuid = false;
+        boolean needsPlaceholderApi = false;
+        StringBuilder literal = new StringBuilder();
+
+        int i = 0;
+        while (i < raw.length()) {
+            char c = raw.charAt(i);
+            if (c == '%') {
+                int placeholder = matchPlaceholder(raw, i);
+                if (placeholder >= 0) {
+                    if (literal.length() > 0) {
+                        segments.add(literal.toString());
+                        literal.setLength(0);
+                    }
+                    segments.add(placeholder);
+                    needsUuid |= placeholder == PLAYER_UUID;
+                    i += PLACEHOLDERS[placeholder].length();
+                    continue;
+                }
+                int end = raw.indexOf('%', i + 1);
+                if (end > i + 1 && isPlaceholderToken(raw, i + 1, end)) {
+                    // Unknown %token% - left for PlaceholderAPI.
+                    needsPlaceholderApi = true;
+                    literal.append(raw, i, end + 1);
+                    i = end + 1;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        if (literal.length() > 0) {
+            segments.add(literal.toString());
+        }
+        return new CommandTemplate(raw, segments.toArray(), needsUuid, needsPlaceholderApi);
+    }
+
+    /** Compiles every non-blank template in the list. */
+    static List<CommandTemplate> compileAll(List<String> raws) {
+        List<CommandTemplate> templates = new ArrayList<>();
+        if (raws == null) return List.of();
+        for (String raw : raws) {
+            if (raw == null || raw.trim().isEmpty()) continue;
+            templates.add(compile(raw));
+        }
+        return List.copyOf(templates);
+    }
+
+    /** Whether any of the templates leaves placeholders for PlaceholderAPI. */
+    static boolean anyNeedsPlaceholderApi(List<CommandTemplate> templates) {
+        for (CommandTemplate template : templates) {
+            if (template.needsPlaceholderApi) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Expands the template into {@code out} (which is cleared first) and returns the result.
+     * A null value leaves its placeholder untouched, matching the old String.replace behaviour.
+     */
+    String expand(StringBuilder out, String playerName, String streamer, String playerUuid, String nation) {
+        out.setLength(0);
+        for (Object segment : segments) {
+            if (segment instanceof String) {
+                out.append((String) segment);
+                continue;
+            }
+            int index = (Integer) segment;
+            String value;
+            switch (index) {
+                case PLAYER_NAME: value = playerName; break;
+                case STREAMER: value = streamer; break;
+                case PLAYER_UUID: value = playerUuid; break;
+                default: value = nation; break;
+            }
+            out.append(value != null ? value : PLACEHOLDERS[index]);
+        }
+        return out.toString();
+    }
+
+    String raw() {
+        return raw;
+    }
+
+    boolean needsUuid() {
+        return needsUuid;
+    }
+
+    boolean needsPlaceholderApi() {
+        return needsPlaceholderApi;
+    }
+
+    private static int matchPlaceholder(String raw, int at) {
+        for (int p = 0; p < PLACEHOLDERS.length; p++) {
+            if (raw.startsWith(PLACEHOLDERS[p], at)) return p;
+        }
+        return -1;
+    }
+
+    private static boolean isPlaceholderToken(String raw, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (Character.isWhitespace(raw.charAt(i))) return false;
+        }
+        return true;
+    }
+}
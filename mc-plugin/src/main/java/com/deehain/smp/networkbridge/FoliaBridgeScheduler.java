@@ -0,0 +1,88 @@
+package com.deehain.smp.networkbridge;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * {@link BridgeScheduler} on Folia: global work goes to the {@code GlobalRegionScheduler}, per-player
+ * work to the player's {@code EntityScheduler} and I/O to the {@code AsyncScheduler}. The Bukkit
+ * scheduler throws on Folia, so nothing here touches it.
+ */
+final class FoliaBridgeScheduler implements BridgeScheduler {
+
+    private static final boolean FOLIA = detectFolia();
+
+    private final Plugin plugin;
+
+    FoliaBridgeScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    static boolean isFolia() {
+        return FOLIA;
+    }
+
+    private static boolean detectFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean regionThreaded() {
+        return true;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    public void executeGlobal(Runnable task) {
+        // No portable way to tell the global region thread apart on older API versions; always hop.
+        Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        ScheduledTask scheduled = Bukkit.getGlobalRegionScheduler()
+                .runAtFixedRate(plugin, t -> task.run(), Math.max(1L, delayTicks), periodTicks);
+        return scheduled::cancel;
+    }
+
+    @Override
+    public <T> Future<T> callGlobal(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Bukkit.getGlobalRegionScheduler().execute(plugin, () -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void runForPlayer(Player player, Runnable task, Runnable retired) {
+        if (!player.getScheduler().execute(plugin, task, retired, 1L) && retired != null) {
+            // The player was already removed; execute() runs neither callback then.
+            retired.run();
+        }
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getAsyncScheduler().runNow(plugin, t -> task.run());
+    }
+}
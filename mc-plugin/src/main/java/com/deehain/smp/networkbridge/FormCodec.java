@@ -0,0 +1,63 @@
+package com.deehain.smp.networkbridge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Request body helpers shared by the bridge HTTP handlers. */
+final class FormCodec {
+
+    private FormCodec() {
+    }
+
+    /** Reads the whole body as UTF-8, failing with {@link BodyTooLargeException} once it exceeds {@code maxBytes}. */
+    static String readBody(InputStream is, int maxBytes) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            if (baos.size() + len > maxBytes) {
+                throw new BodyTooLargeException(maxBytes);
+            }
+            baos.write(buffer, 0, len);
+        }
+        return baos.toString(StandardCharsets.UTF_8);
+    }
+
+    static Map<String, String> parseFormEncoded(String body) {
+        Map<String, String> map = new HashMap<>();
+        if (body == null || body.isEmpty()) return map;
+
+        String[] pairs = body.split("&");
+        for (String pair : pairs) {
+            int idx = pair.indexOf('=');
+            if (idx <= 0) continue;
+            String key = URLDecoder.decode(pair.substring(0, idx), StandardCharsets.UTF_8);
+            String value = URLDecoder.decode(pair.substring(idx + 1), StandardCharsets.UTF_8);
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    /** The request body is longer than the endpoint allows; answered with 413. */
+    static final class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        BodyTooLargeException(int maxBytes) {
+            super("request body exceeds " + maxBytes + " bytes");
+        }
+    }
+
+    /** The request body cannot be decoded; answered with 400. */
+    static final class MalformedBodyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedBodyException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, time-expiring map of requestId -> response JSON. A requestId is reserved before the
+ * action runs so concurrent duplicates are detected, then completed with the response that was sent.
+ */
+final class IdempotencyCache {
+    static final String IN_PROGRESS = "";
+
+    private int maxEntries = 10000;
+    private long ttlMillis = TimeUnit.MINUTES.toMillis(10);
+
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    synchronized void configure(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = Math.max(0L, ttlMillis);
+    }
+
+    /** Returns null if the id was free (it is now reserved), otherwise the stored response or IN_PROGRESS. */
+    synchronized String reserve(String requestId) {
+        long now = System.currentTimeMillis();
+        evictExpired(now);
+        CachedResponse existing = entries.get(requestId);
+        if (existing != null) {
+            return existing.json;
+        }
+        entries.put(requestId, new CachedResponse(IN_PROGRESS, now + ttlMillis));
+        return null;
+    }
+
+    synchronized void complete(String requestId, String json) {
+        entries.put(requestId, new CachedResponse(json, System.currentTimeMillis() + ttlMillis));
+    }
+
+    synchronized void release(String requestId) {
+        entries.remove(requestId);
+    }
+
+    // Entries are in insertion order, so expired ones are at the front.
+    private void evictExpired(long now) {
+        Iterator<CachedResponse> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt > now) break;
+            it.remove();
+        }
+    }
+
+    private static final class CachedResponse {
+        private final String json;
+        private final long expiresAt;
+
+        private CachedResponse(String json, long expiresAt) {
+            this.json = json;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.deehain.smp.networkbridge;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The default {@link QueueStore}: the queue lives in an {@link OfflineQueue} and is written to
+ * queued-team-changes.json, either rewritten in full on every flush ("json") or appended to a
+ * {@link QueueJournal} and compacted into that file now and then ("journal"). Team adds waiting for
+ * their nation are rewritten to pending-team-actions.json.
+ */
+final class JsonQueueStore implements QueueStore {
+
+    private final OfflineQueue queue = new OfflineQueue();
+    private final Path queueFile;
+    private final Path pendingFile;
+    private final Logger logger;
+    private final BridgeMetrics metrics;
+    private final Executor io;
+    private final Gson gson;
+    private final Gson compactGson;
+    // Non-null in journal mode; queue changes are then appended instead of rewritten.
+    private volatile QueueJournal journal;
+    // File writes run one at a time under writeLock and skip themselves once a later write has covered
+    // them, so an older snapshot never replaces a newer one. The *WritesDone counters are guarded by it.
+    private final Object writeLock = new Object();
+    private final AtomicLong queueWritesRequested = new AtomicLong();
+    private long queueWritesDone;
+    private long pendingWritesDone;
+    // Latest pending-team-actions.json content and how many saves asked for it; guarded by pendingLock.
+    private String pendingJson;
+    private long pendingWritesRequested;
+    private final Object pendingLock = new Object();
+
+    /** {@code journal} null rewrites the whole file on every flush. */
+    JsonQueueStore(Path queueFile, Path pendingFile, QueueJournalSettings journal, Logger logger, BridgeMetrics metrics,
+                   Executor io, Gson gson, Gson compactGson) {
+        this.queueFile = queueFile;
+        this.pendingFile = pendingFile;
+        this.logger = logger;
+        this.metrics = metrics;
+        this.io = io;
+        this.gson = gson;
+        this.compactGson = compactGson;
+        if (journal != null) {
+            this.journal = new QueueJournal(queueFile, journal.file, logger, journal.snapshotIntervalMillis,
+                    journal.compactAfterRecords, () -> compactGson.toJson(queue.snapshot()), metrics);
+        }
+    }
+
+    @Override
+    public void open(long historyCutoff) {
+        queue.clear();
+        Set<Long> knownSeqs = new HashSet<>();
+        if (Files.isRegularFile(queueFile)) {
+            try (Reader reader = Files.newBufferedReader(queueFile, StandardCharsets.UTF_8)) {
+                QueuedTeamChange[] arr = gson.fromJson(reader, QueuedTeamChange[].class);
+                if (arr != null) {
+                    for (QueuedTeamChange change : arr) {
+                        queue.restore(change, knownSeqs, historyCutoff);
+                    }
+                }
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to load queued team changes from JSON.", e);
+            }
+        }
+
+        if (journal == null) return;
+        int replayed = 0;
+        try {
+            for (String line : journal.readRecords()) {
+                JournalRecord record;
+                try {
+                    record = compactGson.fromJson(line, JournalRecord.class);
+                } catch (Exception e) {
+                    logger.warning("Skipping unreadable offline queue journal record: " + line);
+                    continue;
+                }
+                if (record == null || record.op == null) continue;
+                if ("enqueue".equals(record.op)) {
+                    queue.restore(record.change, knownSeqs, historyCutoff);
+                } else if ("apply".equals(record.op)) {
+                    queue.replayApplied(record.playerName, record.seq, record.at);
+                }
+                replayed++;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to replay offline queue journal.", e);
+        }
+        if (replayed > 0) {
+            logger.info("Replayed " + replayed + " offline queue journal records.");
+        }
+        try {
+            journal.start();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to open offline queue journal, falling back to JSON rewrites.", e);
+            journal = null;
+        }
+    }
+
+    @Override
+    public QueuedTeamChange enqueue(String playerName, UUID uuid, String streamer, String actionType, long now) {
+        QueuedTeamChange change = queue.enqueue(playerName, uuid, streamer, actionType, now);
+        QueueJournal journal = this.journal;
+        if (journal != null) {
+            JournalRecord record = new JournalRecord();
+            record.op = "enqueue";
+            record.change = change;
+            journal.append(compactGson.toJson(record));
+        }
+        return change;
+    }
+
+    @Override
+    public void take(String playerName, long now, Consumer<List<QueuedTeamChange>> consumer) {
+        // Removing the entry hands this player's changes to us exclusively; new changes start a fresh list.
+        List<QueuedTeamChange> changes = queue.take(playerName);
+        if (changes == null || changes.isEmpty()) return;
+        QueueJournal journal = this.journal;
+        for (QueuedTeamChange change : changes) {
+            queue.markApplied(change, now);
+            if (journal != null) {
+                JournalRecord record = new JournalRecord();
+                record.op = "apply";
+                record.playerName = change.playerName;
+                record.seq = change.seq;
+                record.at = now;
+                journal.append(compactGson.toJson(record));
+            }
+        }
+        consumer.accept(changes);
+    }
+
+    @Override
+    public void pruneHistory(long cutoff) {
+        if (queue.pruneHistory(cutoff)) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // In journal mode every change has already been appended; snapshots happen on the journal thread.
+        if (journal != null) return;
+        long generation = queueWritesRequested.incrementAndGet();
+        io.execute(() -> writeQueue(generation));
+    }
+
+    private void writeQueue(long generation) {
+        synchronized (writeLock) {
+            if (generation <= queueWritesDone) return;
+            // The snapshot is taken after this read, so it covers every flush requested so far.
+            long covered = queueWritesRequested.get();
+            try {
+                long start = System.nanoTime();
+                long bytes = QueueJournal.writeAtomically(queueFile, gson.toJson(queue.snapshot()));
+                metrics.recordPersist("queue", System.nanoTime() - start, bytes);
+                queueWritesDone = covered;
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to save queued team changes to JSON.", e);
+            }
+        }
+    }
+
+    @Override
+    public void forEachPending(String streamer, Consumer<QueuedTeamChange> consumer) {
+        queue.forEachPending(change -> {
+            if (streamer == null || streamer.equalsIgnoreCase(change.streamer)) {
+                consumer.accept(change);
+            }
+        });
+    }
+
+    @Override
+    public boolean inMemory() {
+        return true;
+    }
+
+    @Override
+    public long queueVersion() {
+        return 0L;
+    }
+
+    @Override
+    public List<PendingTeamAction> loadPendingTeamActions() {
+        List<PendingTeamAction> actions = new ArrayList<>();
+        if (!Files.isRegularFile(pendingFile)) return actions;
+        try (Reader reader = Files.newBufferedReader(pendingFile, StandardCharsets.UTF_8)) {
+            PendingTeamAction[] arr = gson.fromJson(reader, PendingTeamAction[].class);
+            if (arr != null) {
+                for (PendingTeamAction action : arr) {
+                    if (action == null || action.playerName == null || action.nation == null) continue;
+                    actions.add(action);
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to load pending team actions from JSON.", e);
+        }
+        return actions;
+    }
+
+    @Override
+    public void savePendingTeamActions(List<PendingTeamAction> actions) {
+        String json = gson.toJson(actions);
+        long generation;
+        synchronized (pendingLock) {
+            pendingJson = json;
+            generation = ++pendingWritesRequested;
+        }
+        io.execute(() -> writePending(generation));
+    }
+
+    private void writePending(long generation) {
+        synchronized (writeLock) {
+            if (generation <= pendingWritesDone) return;
+            String json;
+            long covered;
+            synchronized (pendingLock) {
+                json = pendingJson;
+                covered = pendingWritesRequested;
+            }
+            try {
+                long start = System.nanoTime();
+                long bytes = QueueJournal.writeAtomically(pendingFile, json);
+                metrics.recordPersist("pending", System.nanoTime() - start, bytes);
+                pendingWritesDone = covered;
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to save pending team actions to JSON.", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public int playerCount() {
+        return queue.playerCount();
+    }
+
+    @Override
+    public long pendingCount() {
+        return queue.pendingCount();
+    }
+
+    @Override
+    public int historySize() {
+        return queue.historySize();
+    }
+
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        } else {
+            // The server no longer runs our async tasks at this point, so write directly.
+            writeQueue(queueWritesRequested.incrementAndGet());
+        }
+    }
+
+    /** Journal mode settings; see queue-snapshot-interval-seconds and queue-journal-compact-after. */
+    static final class QueueJournalSettings {
+        private final Path file;
+        private final long snapshotIntervalMillis;
+        private final int compactAfterRecords;
+
+        QueueJournalSettings(Path file, long snapshotIntervalMillis, int compactAfterRecords) {
+            this.file = file;
+            this.snapshotIntervalMillis = snapshotIntervalMillis;
+            this.compactAfterRecords = compactAfterRecords;
+        }
+    }
+
+    private static final class JournalRecord {
+        private String op; // "enqueue" or "apply"
+        private QueuedTeamChange change;
+        private String playerName;
+        private long seq;
+        private long at;
+    }
+}
@@ -2,70 +2,160 @@ package com.deehain.smp.networkbridge;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import me.clip.placeholderapi.PlaceholderAPI;
+import net.kyori.adventure.text.Component;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.*;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 public class NetworkBridgePlugin extends JavaPlugin implements Listener {
 
-    private HttpServer httpServer;
-    private ExecutorService httpExecutor;
-    private boolean debugMode = false;
-    private boolean alwaysRunTeamCommands = false;
-    private boolean disableBetterTeamsApi = false;
-    private boolean kickAndUnwhitelistOnRemove = false;
-    private boolean unwhitelistOnRemove = false;
-    private boolean whitelistOnlyMode = false;
-
-    // Queue of team changes that still need to be applied in-game
-    private final List<QueuedTeamChange> queuedChanges = Collections.synchronizedList(new ArrayList<>());
-    private File queueFile;
-
-    private final Map<String, List<PendingTeamAction>> pendingTeamActions = new HashMap<>();
-    private int pendingTaskId = -1;
-
-    private int queuedChangesTaskId = -1;
+    private static final String PLACEHOLDER_API = "PlaceholderAPI";
+
+    // Read by the metrics gauge from HTTP threads.
+    private volatile HttpServer httpServer;
+    private volatile SwappableExecutor httpExecutor;
+    // Handlers for the current settings; the listener's contexts look them up per request.
+    private volatile Routes routes;
+    private volatile boolean debugMode = false;
+
+    // config.yml as of the last load or reload. Read it once into a local where several values must agree.
+    private volatile BridgeSettings settings;
+
+    // Team changes that still need to be applied in-game, plus applied ones kept for queue-history-retention-hours,
+    // and the adds waiting for their nation. Backend per queue-storage, chosen at enable.
+    private QueueStore queueStore;
+
+    // Reused for command expansion; only touched on the main thread.
+    private final StringBuilder commandBuffer = new StringBuilder(128);
+
+    // Created in onEnable, once the plugin's logger is set up.
+    private BetterTeamsAdapter betterTeams;
+
+    // Adds waiting for their nation to be created: nation -> lower-cased player name -> action.
+    // Main thread only; persisted to pending-team-actions.json.
+    private final Map<String, Map<String, PendingTeamAction>> pendingTeamActions = new HashMap<>();
+    // Size of pendingTeamActions, published for readers off the main thread.
+    private volatile int pendingTeamActionCount;
+    private BridgeScheduler.Task pendingTask;
+
+    private BridgeScheduler.Task queuedChangesTask;
+
+    // Responses already sent for a client-supplied requestId, so website retries are answered without re-applying.
+    private final IdempotencyCache idempotencyCache = new IdempotencyCache();
+
+    // Completion of actions applied on the main thread, polled at GET /action/{id}.
+    private final ActionTracker actionTracker = new ActionTracker();
+
+    private final BridgeMetrics metrics = new BridgeMetrics();
+
+    // Bukkit scheduler on Paper, region schedulers on Folia. "Main thread" below means its global work.
+    // Picked in onEnable.
+    private BridgeScheduler scheduler;
+
+    // What the bridge has applied or is holding, served at GET /state. Replaced at enable, before the listener starts.
+    private RosterState rosterState = new RosterState(1, 0L);
+    private File rosterFile;
+    // Version last written to roster-state.json. Main thread only.
+    private long savedRosterVersion = -1L;
+
+    // Player name -> UUID for request threads; persisted to player-uuids.json.
+    private final PlayerUuidIndex playerUuids = new PlayerUuidIndex();
+    private File playerUuidsFile;
+    // Index version last written to player-uuids.json. Main thread only.
+    private long savedPlayerUuidsVersion = -1L;
+
+    // Main-thread work queue for bridge actions, drained once per tick within main-thread-budget-ms.
+    // Streamers take turns; removals go first.
+    // Created in onEnable, before the first settings are applied.
+    private ActionDrainer actionDrainer;
+    // Per-streamer limit on actions accepted over HTTP.
+    private final StreamerRateLimiter rateLimiter = new StreamerRateLimiter();
+    // Concurrency limits outlive the Routes of a reload, so requests still running on the old handlers
+    // keep counting against them; applySettings resizes them in place.
+    private final OverloadFilter overload = new OverloadFilter();
+    private final ResizableSemaphore streamSlots = new ResizableSemaphore(0);
+    private final ResizableSemaphore statusWaiters = new ResizableSemaphore(0);
+    private BridgeScheduler.Task drainTask;
+    // Set once onDisable starts; the scheduler refuses new tasks from then on, so disk writes run inline.
+    private volatile boolean shuttingDown;
+    // Tracked actions applied this tick; completed once the tick's whitelist changes are flushed too. Main thread only.
+    private final List<CompletableFuture<Void>> appliedThisTick = new ArrayList<>();
+
+    // Whitelist changes from this tick's actions, applied in one go after the drainer. Created in onEnable.
+    private WhitelistCoalescer whitelist;
 
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson compactGson = new Gson();
 
     @Override
     public void onEnable() {
         saveDefaultConfig();
-        this.disableBetterTeamsApi = getConfig().getBoolean("disable-betterteams-api", false);
-        this.alwaysRunTeamCommands = getConfig().getBoolean("always-run-team-commands", false);
-        this.kickAndUnwhitelistOnRemove = getConfig().getBoolean("kick-and-unwhitelist-on-remove", false);
-        this.unwhitelistOnRemove = getConfig().getBoolean("unwhitelist-on-remove", false);
-        this.whitelistOnlyMode = getConfig().getBoolean("whitelist-only-mode", false);
+        scheduler = BridgeScheduler.create(this);
+        betterTeams = new BetterTeamsAdapter(getLogger());
+        actionDrainer = new ActionDrainer(getLogger(), metrics, TimeUnit.MILLISECONDS.toNanos(2));
+        // The server keeps whitelist.json in its working directory.
+        whitelist = new WhitelistCoalescer(getLogger(), metrics, scheduler, Path.of("whitelist.json"),
+                (playerName, whitelisted) -> rosterState.setWhitelisted(playerName, whitelisted));
+        applySettings(BridgeSettings.from(getConfig(), Bukkit.getPluginManager().isPluginEnabled(PLACEHOLDER_API)));
         if (!getDataFolder().exists() && !getDataFolder().mkdirs()) {
             getLogger().warning("Could not create plugin data folder: " + getDataFolder());
         }
-        this.queueFile = new File(getDataFolder(), "queued-team-changes.json");
-        loadQueuedChanges();
+        queueStore = openQueueStore();
+
+        loadPendingTeamActions();
 
+        this.rosterFile = new File(getDataFolder(), "roster-state.json");
+        loadRosterState();
+
+        this.playerUuidsFile = new File(getDataFolder(), "player-uuids.json");
+        loadPlayerUuids();
+
+        resolveBetterTeams(Bukkit.getPluginManager().getPlugin(BetterTeamsAdapter.PLUGIN_NAME));
         Bukkit.getPluginManager().registerEvents(this, this);
+        if (!pendingTeamActions.isEmpty()) {
+            startPendingTask();
+        }
 
+        registerGauges();
+        drainTask = scheduler.runGlobalTimer(this::drainActions, 1L, 1L);
         startHttpServer();
         startQueuedChangesTask();
         getLogger().info("NetworkBridgePlugin enabled.");
@@ -73,17 +163,74 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
 
     @Override
     public void onDisable() {
+        shuttingDown = true;
         stopHttpServer();
         cancelPendingTask();
         cancelQueuedChangesTask();
-        saveQueuedChanges();
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        // Don't drop actions that were accepted but not yet applied.
+        actionDrainer.drainAll();
+        // Async profile lookups would no longer come back, so do the rest of them here.
+        flushWhitelist(true);
+        queueStore.close();
+        // Whatever the drain and flush above left unsaved; written inline now that shuttingDown is set.
+        saveRosterState();
+        savePlayerUuids();
         getLogger().info("NetworkBridgePlugin disabled.");
     }
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        processQueuedChangesForPlayer(player.getUniqueId(), player.getName());
+        playerUuids.joined(player.getName(), player.getUniqueId());
+        // On Folia joins fire on the player's region; the offline queue is global work.
+        scheduler.executeGlobal(() -> processQueuedChangesForPlayer(player.getUniqueId(), player.getName()));
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        playerUuids.quit(event.getPlayer().getName());
+    }
+
+    @EventHandler
+    public void onPluginEnable(PluginEnableEvent event) {
+        String name = event.getPlugin().getName();
+        if (BetterTeamsAdapter.PLUGIN_NAME.equals(name)) {
+            resolveBetterTeams(event.getPlugin());
+        } else if (PLACEHOLDER_API.equals(name)) {
+            applySettings(BridgeSettings.from(getConfig(), true));
+        }
+    }
+
+    private void resolveBetterTeams(Plugin plugin) {
+        if (betterTeams.resolve(plugin)) {
+            betterTeams.registerTeamCreateListener(this, this::onTeamCreated);
+        }
+    }
+
+    // BetterTeams fires CreateTeamEvent before storing the team, so look it up on the next tick.
+    private void onTeamCreated(String teamName) {
+        if (teamName == null || pendingTeamActions.isEmpty()) return;
+        scheduler.runGlobal(() -> {
+            for (String nation : new ArrayList<>(pendingTeamActions.keySet())) {
+                if (nation.equalsIgnoreCase(teamName)) {
+                    releasePendingTeamActions(nation);
+                }
+            }
+        });
+    }
+
+    @EventHandler
+    public void onPluginDisable(PluginDisableEvent event) {
+        String name = event.getPlugin().getName();
+        if (BetterTeamsAdapter.PLUGIN_NAME.equals(name)) {
+            betterTeams.clear();
+        } else if (PLACEHOLDER_API.equals(name)) {
+            applySettings(BridgeSettings.from(getConfig(), false));
+        }
     }
 
     @Override
@@ -98,12 +245,10 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
                 return true;
             }
             reloadConfig();
-            this.disableBetterTeamsApi = getConfig().getBoolean("disable-betterteams-api", false);
-            this.alwaysRunTeamCommands = getConfig().getBoolean("always-run-team-commands", false);
-            this.kickAndUnwhitelistOnRemove = getConfig().getBoolean("kick-and-unwhitelist-on-remove", false);
-            this.unwhitelistOnRemove = getConfig().getBoolean("unwhitelist-on-remove", false);
-            this.whitelistOnlyMode = getConfig().getBoolean("whitelist-only-mode", false);
-            restartHttpServer();
+            BridgeSettings previous = settings;
+            BridgeSettings next = BridgeSettings.from(getConfig(), Bukkit.getPluginManager().isPluginEnabled(PLACEHOLDER_API));
+            applySettings(next);
+            applyReload(previous, next);
             sender.sendMessage("§aMC Plugin Bridge config reloaded.");
             return true;
         }
@@ -118,37 +263,211 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
             return true;
         }
 
-        sender.sendMessage("§eUsage: /" + label + " <reload|debug>");
+        if (args.length > 0 && args[0].equalsIgnoreCase("status")) {
+            if (!sender.hasPermission("mcpbridge.status")) {
+                sender.sendMessage("§cYou do not have permission to do that.");
+                return true;
+            }
+            sender.sendMessage("§aBridge action queue: §f" + actionDrainer.depth() + " §awaiting, oldest §f" + actionDrainer.lagMillis() + "ms");
+            StringBuilder lanes = new StringBuilder("§aPer streamer: §f").append(actionDrainer.priorityDepth()).append(" §aremovals");
+            for (Map.Entry<String, Long> lane : actionDrainer.laneDepths().entrySet()) {
+                if (lane.getValue() > 0) lanes.append(", §f").append(lane.getValue()).append(" §a").append(lane.getKey());
+            }
+            sender.sendMessage(lanes.toString());
+            sender.sendMessage("§aOffline queue: §f" + queueStore.playerCount() + " §aplayers with pending changes");
+            return true;
+        }
+
+        sender.sendMessage("§eUsage: /" + label + " <reload|debug|status>");
         return true;
     }
 
-    private void startHttpServer() {
-        stopHttpServer();
+    private void registerGauges() {
+        metrics.gauge("bridge_offline_queue_players", "Players with unapplied offline changes.", () -> queueStore.playerCount());
+        metrics.gauge("bridge_offline_queue_pending", "Unapplied offline changes.", () -> queueStore.pendingCount());
+        metrics.gauge("bridge_offline_queue_applied", "Applied offline changes kept as history.", () -> queueStore.historySize());
+        metrics.gauge("bridge_pending_team_actions", "Team adds waiting for their nation to exist.", () -> pendingTeamActionCount);
+        metrics.gauge("bridge_action_queue_depth", "Actions waiting for the main thread.", actionDrainer::depth);
+        metrics.gauge("bridge_http_open_connections", "Connections held open by the nio transport.",
+                () -> httpServer instanceof NioHttpServer nio ? nio.openConnections() : 0);
+        metrics.gauge("bridge_action_queue_lag_ms", "Age of the oldest action waiting for the main thread.", actionDrainer::lagMillis);
+        metrics.gauge("bridge_action_queue_priority_depth", "Removals waiting for the main thread.", actionDrainer::priorityDepth);
+        metrics.gauge("bridge_action_queue_lane_depth", "Actions waiting for the main thread, by streamer lane.", "streamer",
+                actionDrainer::laneDepths);
+    }
+
+    // Publishes a settings snapshot and hands the parts that live elsewhere to their owners.
+    private void applySettings(BridgeSettings next) {
+        settings = next;
+        actionDrainer.setBudgetNanos(next.drainBudgetNanos);
+        actionDrainer.setWeights(next.streamerWeights);
+        rateLimiter.configure(next.streamerRateLimitPerSecond, next.streamerRateLimitBurst);
+        whitelist.setBulkThreshold(next.whitelistBulkThreshold);
+        idempotencyCache.configure(next.idempotencyCacheSize, next.idempotencyTtlMillis);
+        actionTracker.configure(next.actionStatusSize, next.actionStatusTtlMillis);
+        overload.configure(next.maxInFlight, next.maxQueued, next.queueTimeoutMs, next.retryAfterSeconds);
+        streamSlots.resize(Math.max(1, next.streamMaxConnections));
+        statusWaiters.resize(next.actionStatusMaxWaiters);
+    }
 
-        String listenIp = getConfig().getString("listen-ip", "0.0.0.0");
-        int listenPort = getConfig().getInt("listen-port", 8123);
-        String authToken = getConfig().getString("auth-token", "");
+    // How long a replaced listener may keep finishing its in-flight exchanges.
+    private static final int HTTP_DRAIN_SECONDS = 5;
+    // Bumped by every reload that replaces the listener; a rebind still in flight for an older one is dropped. Main thread only.
+    private long listenerGeneration;
 
+    // Binds a listener for the current settings. Used at enable; reloads go through applyReload().
+    private void startHttpServer() {
+        BridgeSettings current = settings;
+        routes = new Routes(current);
+        BoundListener listener = bindListener(current);
+        if (listener == null) return;
+        httpServer = listener.server;
+        httpExecutor = listener.executor;
+    }
+
+    // Null (after logging) if the address cannot be bound.
+    private BoundListener bindListener(BridgeSettings s) {
         try {
-            InetAddress address = InetAddress.getByName(listenIp);
-            httpServer = HttpServer.create(new InetSocketAddress(address, listenPort), 0);
+            return tryBindListener(s);
         } catch (IOException e) {
-            getLogger().log(Level.SEVERE, "Failed to bind HTTP server on " + listenIp + ":" + listenPort, e);
-            return;
+            getLogger().log(Level.SEVERE, "Failed to bind HTTP server on " + s.address(), e);
+            return null;
+        }
+    }
+
+    private BoundListener tryBindListener(BridgeSettings s) throws IOException {
+        HttpServer server;
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(s.listenIp), s.listenPort);
+        if ("nio".equals(s.transport)) {
+            // The handlers still enforce their own limits; this only bounds what one connection may buffer.
+            server = NioHttpServer.create(address, s.acceptBacklog, s.nioEventLoops, s.nioMaxBodyBytes(),
+                    s.nioIdleTimeoutMillis, getLogger());
+        } else {
+            server = HttpServer.create(address, s.acceptBacklog);
         }
 
-        httpExecutor = Executors.newCachedThreadPool();
-        httpServer.setExecutor(httpExecutor);
+        SwappableExecutor executor = new SwappableExecutor(newHttpPool(s));
+        server.setExecutor(executor);
+
+        // Contexts only look up the current Routes, so a reload can swap handlers without touching the socket.
+        server.createContext("/action", new Route(r -> r.action, true));
+        server.createContext("/action/batch", new Route(r -> r.batch, true));
+        // Long-polls mostly wait, so they are bounded by action-status-max-waiters instead of the overload filter.
+        server.createContext("/action/", new Route(r -> r.status, false));
+        // Long-lived, so not behind the overload filter; it limits itself to stream-max-connections.
+        if ("nio".equals(s.transport)) {
+            server.createContext("/action/stream", new StreamUnsupportedHandler());
+        } else {
+            server.createContext("/action/stream", new Route(r -> r.stream, false));
+        }
+        server.createContext("/state", new Route(r -> r.state, true));
+        server.createContext("/roster", new Route(r -> r.roster, true));
+        // Not behind the overload filter, so the bridge stays observable while it is shedding load.
+        server.createContext("/metrics", new Route(r -> r.metrics, false));
+
+        server.start();
+        getLogger().info("HTTP listener (" + s.transport + ") started on " + s.address() + " at /action, /action/{id}, /action/batch, /action/stream, /roster and /state");
+        return new BoundListener(server, executor);
+    }
 
-        httpServer.createContext("/action", new ActionHandler(authToken));
+    private static ExecutorService newHttpPool(BridgeSettings s) {
+        if ("cached".equals(s.httpExecutor)) {
+            return Executors.newCachedThreadPool();
+        }
+        // Virtual threads keep the platform thread count flat; the overload filter bounds how many exist.
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bridge-http-", 0).factory());
+    }
 
-        httpServer.start();
-        getLogger().info("HTTP listener started on " + listenIp + ":" + listenPort + " at /action");
+    /**
+     * Publishes reloaded settings. Handlers are rebuilt and swapped in while the listener keeps
+     * accepting; requests already running finish on the handlers they started with. The socket is
+     * only replaced if a listener setting changed: on a new address the new listener is bound before
+     * the old one drains, on the same address the old socket has to close first, so that rebind runs
+     * off the main thread and the new listener is published back on it.
+     */
+    private void applyReload(BridgeSettings previous, BridgeSettings next) {
+        routes = new Routes(next);
+        if (httpServer != null && next.sameListener(previous)) {
+            if (!next.httpExecutor.equals(previous.httpExecutor)) {
+                httpExecutor.swap(newHttpPool(next));
+            }
+            getLogger().info("Bridge settings reloaded; HTTP listener on " + next.address() + " kept.");
+            return;
+        }
+        HttpServer oldServer = httpServer;
+        SwappableExecutor oldExecutor = httpExecutor;
+        if (oldServer != null && next.sameAddress(previous)) {
+            // Nothing is published until the rebind below is done, so a reload meanwhile leaves the old listener alone.
+            httpServer = null;
+            httpExecutor = null;
+            long generation = ++listenerGeneration;
+            Thread.ofPlatform().name("bridge-http-rebind").start(() -> rebindListener(oldServer, oldExecutor, next, generation));
+            return;
+        }
+        BoundListener listener = bindListener(next);
+        if (listener == null) {
+            getLogger().warning("Keeping the HTTP listener on " + (previous != null ? previous.address() : "(none)") + ".");
+            return;
+        }
+        listenerGeneration++;
+        httpServer = listener.server;
+        httpExecutor = listener.executor;
+        if (oldServer != null) {
+            Thread.ofPlatform().name("bridge-http-drain").start(() -> drainListener(oldServer, oldExecutor));
+        }
     }
 
-    private void restartHttpServer() {
-        stopHttpServer();
-        startHttpServer();
+    // Off the main thread: stop() closes the server socket before it waits for in-flight exchanges, so
+    // the address frees up shortly after the drain starts. The new listener is published on the main thread.
+    private void rebindListener(HttpServer oldServer, SwappableExecutor oldExecutor, BridgeSettings next, long generation) {
+        Thread drain = Thread.ofPlatform().name("bridge-http-drain").start(() -> drainListener(oldServer, oldExecutor));
+        BoundListener listener = null;
+        for (int attempt = 1; listener == null && attempt <= 5 && !shuttingDown; attempt++) {
+            try {
+                drain.join(20L * attempt);
+                listener = tryBindListener(next);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                if (attempt == 5) getLogger().log(Level.SEVERE, "Failed to bind HTTP server on " + next.address(), e);
+            }
+        }
+        if (listener == null) return;
+        BoundListener bound = listener;
+        try {
+            scheduler.runGlobal(() -> {
+                // Superseded by a later reload, or the plugin is going away.
+                if (generation != listenerGeneration || shuttingDown) {
+                    closeListener(bound);
+                    return;
+                }
+                httpServer = bound.server;
+                httpExecutor = bound.executor;
+            });
+        } catch (RuntimeException e) {
+            // The scheduler refuses tasks once the plugin is disabled.
+            closeListener(bound);
+        }
+    }
+
+    private static void closeListener(BoundListener listener) {
+        try {
+            listener.server.stop(0);
+        } catch (Exception ignored) {
+        }
+        listener.executor.shutdownNow();
+    }
+
+    // Stops accepting, gives running exchanges up to HTTP_DRAIN_SECONDS, then lets the executor wind down.
+    private void drainListener(HttpServer server, SwappableExecutor executor) {
+        try {
+            server.stop(HTTP_DRAIN_SECONDS);
+        } catch (Exception ignored) {
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 
     private void stopHttpServer() {
@@ -165,120 +484,379 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
         }
     }
 
-    private void startQueuedChangesTask() {
-        if (queuedChangesTaskId != -1) {
-            Bukkit.getScheduler().cancelTask(queuedChangesTaskId);
+    private record BoundListener(HttpServer server, SwappableExecutor executor) {
+    }
+
+    /** Executor given to a listener; the pool behind it can be replaced on reload without rebinding. */
+    private static final class SwappableExecutor implements Executor {
+        private volatile ExecutorService pool;
+
+        private SwappableExecutor(ExecutorService pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            ExecutorService current = pool;
+            try {
+                current.execute(task);
+            } catch (RejectedExecutionException e) {
+                // Raced with swap(): the old pool was shut down after we read it.
+                if (pool == current) throw e;
+                pool.execute(task);
+            }
+        }
+
+        // Tasks already running on the old pool finish there.
+        private void swap(ExecutorService next) {
+            ExecutorService old = pool;
+            pool = next;
+            old.shutdown();
+        }
+
+        private void shutdown() {
+            pool.shutdown();
+        }
+
+        private void shutdownNow() {
+            pool.shutdownNow();
         }
-        // Run every 30 seconds
-        queuedChangesTaskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(this, this::processQueuedChangesForOnlinePlayers, 20L * 30, 20L * 30);
     }
 
-    private void cancelQueuedChangesTask() {
-        if (queuedChangesTaskId != -1) {
-            Bukkit.getScheduler().cancelTask(queuedChangesTaskId);
-            queuedChangesTaskId = -1;
+    /** The bridge's handlers for one settings snapshot. Built whole and published in one write. */
+    private final class Routes {
+        private final HttpHandler action;
+        private final HttpHandler batch;
+        private final HttpHandler status;
+        private final HttpHandler stream;
+        private final HttpHandler state;
+        private final HttpHandler roster;
+        // Null when metrics are disabled.
+        private final HttpHandler metrics;
+
+        private Routes(BridgeSettings s) {
+            // One pooled parse buffer per handler that may run at once.
+            ActionRequestParser actionParser = new ActionRequestParser(s.maxBodyBytes, s.maxInFlight);
+            action = new ActionHandler(s.authToken, actionParser);
+            batch = new BatchActionHandler(s.authToken, s.batchMaxItems, s.batchMaxBodyBytes);
+            status = new ActionStatusHandler(s.authToken, s.actionStatusMaxWaitSeconds);
+            stream = new ActionStreamHandler(s.authToken, actionParser, s.streamWindow, s.streamMaxBacklog);
+            state = new StateHandler(s.authToken);
+            roster = new RosterHandler(s.authToken, s.batchMaxItems, s.batchMaxBodyBytes);
+            metrics = s.metricsEnabled ? new MetricsHandler(s.metricsRequireToken ? s.authToken : "") : null;
         }
     }
 
-    private void loadQueuedChanges() {
-        queuedChanges.clear();
-        if (queueFile == null || !queueFile.exists()) {
-            return;
+    /** Context handler that dispatches to the handler of the current {@link Routes}. */
+    private final class Route implements HttpHandler {
+        private final Function<Routes, HttpHandler> select;
+        private final boolean overloadFiltered;
+
+        private Route(Function<Routes, HttpHandler> select, boolean overloadFiltered) {
+            this.select = select;
+            this.overloadFiltered = overloadFiltered;
         }
-        try (Reader reader = new InputStreamReader(new FileInputStream(queueFile), StandardCharsets.UTF_8)) {
-            QueuedTeamChange[] arr = gson.fromJson(reader, QueuedTeamChange[].class);
-            if (arr != null) {
-                Collections.addAll(queuedChanges, arr);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            Routes current = routes;
+            HttpHandler handler = select.apply(current);
+            if (handler == null) {
+                try {
+                    exchange.sendResponseHeaders(404, -1);
+                } finally {
+                    exchange.close();
+                }
+            } else if (overloadFiltered) {
+                new Filter.Chain(List.of(overload), handler).doFilter(exchange);
+            } else {
+                handler.handle(exchange);
             }
-        } catch (Exception e) {
-            getLogger().log(Level.WARNING, "Failed to load queued team changes from JSON.", e);
         }
     }
 
-    private void saveQueuedChanges() {
-        if (queueFile == null) return;
-        // Write to disk off the main thread to avoid blocking the server tick.
-        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-            try (Writer writer = new OutputStreamWriter(new FileOutputStream(queueFile), StandardCharsets.UTF_8)) {
-                synchronized (queuedChanges) {
-                    gson.toJson(queuedChanges, writer);
+    private void startQueuedChangesTask() {
+        if (queuedChangesTask != null) {
+            queuedChangesTask.cancel();
+        }
+        // Run every 30 seconds
+        queuedChangesTask = scheduler.runGlobalTimer(() -> {
+            processQueuedChangesForOnlinePlayers();
+            saveRosterState();
+            savePlayerUuids();
+        }, 20L * 30, 20L * 30);
+    }
+
+    private void cancelQueuedChangesTask() {
+        if (queuedChangesTask != null) {
+            queuedChangesTask.cancel();
+            queuedChangesTask = null;
+        }
+    }
+
+    private QueueStore openQueueStore() {
+        BridgeSettings s = settings;
+        long historyCutoff = System.currentTimeMillis() - s.historyRetentionMillis;
+        if ("sqlite".equals(s.queueStorage)) {
+            Path file = getDataFolder().toPath().resolve(s.queueDatabaseFile);
+            SqliteQueueStore store = new SqliteQueueStore(file, getLogger(), metrics);
+            try {
+                store.open(historyCutoff);
+                if (store.created()) {
+                    importJsonQueue(store, historyCutoff);
                 }
-            } catch (Exception e) {
-                getLogger().log(Level.WARNING, "Failed to save queued team changes to JSON.", e);
+                return store;
+            } catch (IOException e) {
+                getLogger().log(Level.SEVERE, "Failed to open the offline queue database, falling back to JSON files.", e);
             }
+        }
+        JsonQueueStore.QueueJournalSettings journal = null;
+        if ("journal".equals(s.queueStorage)) {
+            journal = new JsonQueueStore.QueueJournalSettings(
+                    new File(getDataFolder(), "queued-team-changes.journal").toPath(),
+                    s.queueSnapshotIntervalMillis, s.queueJournalCompactAfter);
+        }
+        JsonQueueStore store = jsonQueueStore(journal);
+        store.open(historyCutoff);
+        return store;
+    }
+
+    private JsonQueueStore jsonQueueStore(JsonQueueStore.QueueJournalSettings journal) {
+        return new JsonQueueStore(new File(getDataFolder(), "queued-team-changes.json").toPath(),
+                new File(getDataFolder(), "pending-team-actions.json").toPath(),
+                journal, getLogger(), metrics, this::runAsync, gson, compactGson);
+    }
+
+    // A new database starts with whatever the JSON files held, so switching queue-storage loses nothing.
+    private void importJsonQueue(SqliteQueueStore store, long historyCutoff) {
+        JsonQueueStore json = jsonQueueStore(null);
+        json.open(historyCutoff);
+        int[] imported = {0};
+        json.forEachPending(null, change -> {
+            store.enqueue(change.playerName, change.uuid, change.streamer, change.actionType, change.createdAt);
+            imported[0]++;
         });
+        List<PendingTeamAction> pending = json.loadPendingTeamActions();
+        if (!pending.isEmpty()) {
+            store.savePendingTeamActions(pending);
+        }
+        if (imported[0] > 0 || !pending.isEmpty()) {
+            getLogger().info("Imported " + imported[0] + " queued change(s) and " + pending.size()
+                    + " pending team add(s) from JSON into the queue database.");
+        }
+    }
+
+    private void saveQueuedChanges() {
+        queueStore.flush();
     }
 
     private void queueTeamChange(String playerName, String streamer, String actionType) {
-        QueuedTeamChange change = new QueuedTeamChange(playerName, streamer, actionType, System.currentTimeMillis());
-        synchronized (queuedChanges) {
-            queuedChanges.add(change);
+        addQueuedChange(playerName, streamer, actionType);
+        saveQueuedChanges();
+    }
+
+    // Adds a change to the in-memory queue without persisting it; callers are responsible for saving.
+    private void addQueuedChange(String playerName, String streamer, String actionType) {
+        QueuedTeamChange change = queueStore.enqueue(playerName, playerUuids.get(playerName), streamer, actionType, System.currentTimeMillis());
+        if (queueStore.inMemory()) {
+            rosterState.setQueued(change);
         }
         if (debugMode) {
             getLogger().info("[DEBUG] Queued team change for offline player: " + playerName + " (streamer=" + streamer + ", action=" + actionType + ")");
         }
-        saveQueuedChanges();
     }
 
     private void processQueuedChangesForPlayer(UUID uuid, String playerName) {
-        if (uuid == null && (playerName == null || playerName.isEmpty())) return;
+        if (playerName == null || playerName.isEmpty()) return;
 
-        List<QueuedTeamChange> toApply = new ArrayList<>();
-        synchronized (queuedChanges) {
-            for (QueuedTeamChange change : queuedChanges) {
-                if (change.applied) continue;
-                if (change.playerName.equalsIgnoreCase(playerName)) {
-                    toApply.add(change);
+        // The store hands each change out once; with the database backend this runs on its writer thread.
+        queueStore.take(playerName, System.currentTimeMillis(), changes -> {
+            for (QueuedTeamChange change : changes) {
+                if (debugMode) {
+                    getLogger().info("[DEBUG] Applying queued change for player: " + change.playerName + " (streamer=" + change.streamer + ", action=" + change.actionType + ")");
+                }
+                handleActionAsync(change.playerName, change.streamer, change.actionType);
+                if (queueStore.inMemory()) {
+                    rosterState.clearQueued(change);
                 }
             }
-        }
+            saveQueuedChanges();
+        });
+    }
 
-        if (toApply.isEmpty()) return;
+    private void processQueuedChangesForOnlinePlayers() {
+        queueStore.pruneHistory(System.currentTimeMillis() - settings.historyRetentionMillis);
+        if (queueStore.isEmpty()) return;
 
-        for (QueuedTeamChange change : toApply) {
-            if (debugMode) {
-                getLogger().info("[DEBUG] Applying queued change for player join: " + change.playerName + " (streamer=" + change.streamer + ", action=" + change.actionType + ")");
-            }
-            handleActionAsync(change.playerName, change.streamer, change.actionType);
-            change.applied = true;
+        for (Player online : Bukkit.getOnlinePlayers()) {
+            processQueuedChangesForPlayer(online.getUniqueId(), online.getName());
         }
-
-        saveQueuedChanges();
     }
 
-    private void processQueuedChangesForOnlinePlayers() {
-        if (queuedChanges.isEmpty()) return;
+    /**
+     * Admission control in front of every bridge context. At most {@code maxInFlight} exchanges
+     * run handlers at once and at most {@code maxQueued} more may wait for a slot; anything beyond
+     * that (or waiting longer than the queue timeout) is answered immediately with 429 and a
+     * {@code Retry-After} header instead of tying up another thread.
+     */
+    private class OverloadFilter extends Filter {
+
+        private final ResizableSemaphore inFlight = new ResizableSemaphore(1);
+        private final AtomicInteger waiting = new AtomicInteger();
+        private volatile int maxQueued;
+        private volatile long queueTimeoutMs;
+        private volatile String retryAfter = "1";
+
+        private void configure(int maxInFlight, int maxQueued, long queueTimeoutMs, int retryAfterSeconds) {
+            inFlight.resize(Math.max(1, maxInFlight));
+            this.maxQueued = Math.max(0, maxQueued);
+            this.queueTimeoutMs = Math.max(0L, queueTimeoutMs);
+            this.retryAfter = String.valueOf(Math.max(1, retryAfterSeconds));
+        }
 
-        for (QueuedTeamChange change : queuedChanges) {
-            if (change.applied) continue;
-            Player online = Bukkit.getPlayerExact(change.playerName);
-            if (online != null) {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (!acquire()) {
                 if (debugMode) {
-                    getLogger().info("[DEBUG] Applying queued change in periodic scan: " + change.playerName + " (streamer=" + change.streamer + ", action=" + change.actionType + ")");
+                    getLogger().warning("[DEBUG] Shedding request from " + exchange.getRemoteAddress() + " (bridge overloaded)");
                 }
-                handleActionAsync(change.playerName, change.streamer, change.actionType);
-                change.applied = true;
+                metrics.requests.inc(exchange.getHttpContext().getPath(), "429");
+                reject(exchange);
+                return;
+            }
+            try {
+                chain.doFilter(exchange);
+            } finally {
+                inFlight.release();
             }
         }
 
-        saveQueuedChanges();
+        private boolean acquire() {
+            if (inFlight.tryAcquire()) return true;
+            if (waiting.incrementAndGet() > maxQueued) {
+                waiting.decrementAndGet();
+                return false;
+            }
+            try {
+                return inFlight.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        private void reject(HttpExchange exchange) throws IOException {
+            try {
+                byte[] bytes = "{\"ok\":false,\"error\":\"overloaded\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.getResponseHeaders().set("Retry-After", retryAfter);
+                exchange.sendResponseHeaders(429, bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        @Override
+        public String description() {
+            return "Bridge overload shedding";
+        }
     }
 
-    private class ActionHandler implements HttpHandler {
+    private abstract class BridgeHandler implements HttpHandler {
 
-        private final String authToken;
+        protected final String authToken;
 
-        private ActionHandler(String authToken) {
+        protected BridgeHandler(String authToken) {
             this.authToken = authToken == null ? "" : authToken;
         }
 
+        // Declared Content-Length, or -1 when absent or unparseable (e.g. chunked bodies).
+        protected long contentLength(HttpExchange exchange) {
+            String value = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (value == null) return -1L;
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        }
+
+        /**
+         * Takes a rate-limit token for an action of the streamer. Returns 0 if the action may go
+         * ahead, otherwise milliseconds until the streamer may send again. Removals are never limited.
+         */
+        protected long rateLimit(String streamer, String action) {
+            if ("remove".equalsIgnoreCase(action) || !rateLimiter.enabled()) return 0L;
+            String lane = laneFor(streamer);
+            long retryMillis = rateLimiter.tryAcquire(lane);
+            if (retryMillis > 0L) {
+                metrics.rateLimited.inc(lane);
+                metrics.actions.inc(actionLabel(action), "rejected");
+            }
+            return retryMillis;
+        }
+
+        protected void sendRateLimited(HttpExchange exchange, long retryMillis) throws IOException {
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.max(1L, (retryMillis + 999L) / 1000L)));
+            sendJson(exchange, 429, "{\"ok\":false,\"error\":\"rate_limited\",\"retryAfterMs\":" + retryMillis + "}");
+        }
+
+        // Token from the X-Auth-Token header, an "Authorization: Bearer" header or the ?token= query parameter.
+        protected String requestToken(HttpExchange exchange) {
+            String token = exchange.getRequestHeaders().getFirst("X-Auth-Token");
+            if (token != null) return token;
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+                return authorization.substring(7).trim();
+            }
+            return FormCodec.parseFormEncoded(exchange.getRequestURI().getRawQuery()).getOrDefault("token", "");
+        }
+
+        protected void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+            send(exchange, status, "application/json; charset=utf-8", json);
+        }
+
+        protected void sendPlain(HttpExchange exchange, int status, String text) throws IOException {
+            send(exchange, status, "text/plain; charset=utf-8", text);
+        }
+
+        protected void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+            long start = System.nanoTime();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+            metrics.requestPhase.observeNanos(System.nanoTime() - start, "respond");
+            metrics.requests.inc(exchange.getHttpContext().getPath(), Integer.toString(status));
+        }
+    }
+
+    private class ActionHandler extends BridgeHandler {
+
+        private final ActionRequestParser parser;
+        private final byte[] authTokenBytes;
+
+        private ActionHandler(String authToken, ActionRequestParser parser) {
+            super(authToken);
+            this.parser = parser;
+            this.authTokenBytes = this.authToken.getBytes(StandardCharsets.UTF_8);
+        }
+
         @Override
         public void handle(HttpExchange exchange) {
             if (debugMode) {
                 getLogger().info("[DEBUG] Incoming request from " + exchange.getRemoteAddress());
                 getLogger().info("[DEBUG] Method: " + exchange.getRequestMethod());
             }
-            
+
+            ActionRequestParser.ActionRequest params = parser.acquire();
             try {
                 if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
                     if (debugMode) {
@@ -287,76 +865,1017 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
                     sendPlain(exchange, 405, "Method Not Allowed");
                     return;
                 }
-
-                String body = readBody(exchange.getRequestBody());
-                Map<String, String> params = parseFormEncoded(body);
-                
-                if (debugMode) {
-                    getLogger().info("[DEBUG] Request body: " + body);
-                    getLogger().info("[DEBUG] Parsed params: " + params.toString());
+
+                long parseStart = System.nanoTime();
+                try {
+                    parser.parse(exchange.getRequestBody(), exchange.getRequestHeaders().getFirst("Content-Type"),
+                            contentLength(exchange), params);
+                } catch (FormCodec.BodyTooLargeException e) {
+                    sendJson(exchange, 413, "{\"ok\":false,\"error\":\"body_too_large\",\"max\":" + parser.maxBodyBytes() + "}");
+                    return;
+                } catch (FormCodec.MalformedBodyException e) {
+                    if (debugMode) {
+                        getLogger().warning("[DEBUG] Rejected: malformed body (" + e.getMessage() + ")");
+                    }
+                    sendJson(exchange, 400, "{\"ok\":false,\"error\":\"malformed_body\"}");
+                    return;
+                }
+                long authStart = System.nanoTime();
+                metrics.requestPhase.observeNanos(authStart - parseStart, "parse");
+
+                if (debugMode) {
+                    // Never echo the raw body: it carries the auth token.
+                    getLogger().info("[DEBUG] Parsed params: playerName=" + params.playerName
+                            + ", streamer=" + params.streamer + ", action=" + params.action);
+                }
+
+                if (!authToken.isEmpty()) {
+                    if (debugMode) {
+                        getLogger().info("[DEBUG] Checking token: expected=*****, received=" + (params.hasToken() ? "*****" : "(none)"));
+                    }
+                    if (!params.tokenMatches(authTokenBytes)) {
+                        getLogger().warning("Received request with invalid token from " + exchange.getRemoteAddress());
+                        if (debugMode) {
+                            getLogger().warning("[DEBUG] Token mismatch! Authentication failed.");
+                        }
+                        sendJson(exchange, 401, "{\"ok\":false,\"error\":\"invalid_token\"}");
+                        return;
+                    }
+                    if (debugMode) {
+                        getLogger().info("[DEBUG] Token validated successfully");
+                    }
+                }
+                metrics.requestPhase.observeNanos(System.nanoTime() - authStart, "auth");
+
+                String playerName = params.playerName;
+                String streamer = params.streamer;
+                String action = params.action != null ? params.action : "add";
+                String requestId = params.requestId;
+
+                if (playerName == null || streamer == null) {
+                    sendJson(exchange, 400, "{\"ok\":false,\"error\":\"missing_fields\"}");
+                    return;
+                }
+
+                // Check if this is a test connection
+                if ("TestPlayer".equals(playerName) && "TestStreamer".equals(streamer)) {
+                    if (debugMode) {
+                        getLogger().info("[DEBUG] Test connection detected!");
+                    }
+                    scheduler.runGlobal(() -> {
+                        Bukkit.broadcastMessage("§a[Bridge] Test connection received successfully!");
+                    });
+                    sendJson(exchange, 200, "{\"ok\":true,\"message\":\"Test connection successful\"}");
+                    return;
+                }
+
+                if (!isKnownStreamer(streamer)) {
+                    if (debugMode) {
+                        getLogger().warning("[DEBUG] Rejected: streamer '" + streamer + "' has no entry in streamer-nations");
+                    }
+                    metrics.actions.inc(actionLabel(action), "rejected");
+                    sendJson(exchange, 400, "{\"ok\":false,\"error\":\"unknown_streamer\"}");
+                    return;
+                }
+                
+                if (debugMode) {
+                    getLogger().info("[DEBUG] Processing action: " + action + " for player: " + playerName + " (streamer: " + streamer + ")");
+                }
+
+                if (requestId != null) {
+                    String previous = idempotencyCache.reserve(requestId);
+                    if (previous != null) {
+                        if (debugMode) {
+                            getLogger().info("[DEBUG] Duplicate requestId " + requestId + ", replaying previous response.");
+                        }
+                        if (IdempotencyCache.IN_PROGRESS.equals(previous)) {
+                            sendJson(exchange, 409, "{\"ok\":false,\"error\":\"duplicate_in_progress\"}");
+                        } else {
+                            sendJson(exchange, 200, previous);
+                        }
+                        return;
+                    }
+                }
+
+                long retryMillis = rateLimit(streamer, action);
+                if (retryMillis > 0L) {
+                    if (requestId != null) {
+                        idempotencyCache.release(requestId);
+                    }
+                    sendRateLimited(exchange, retryMillis);
+                    return;
+                }
+
+                String response;
+                try {
+                    // If the player is online, apply immediately; otherwise, queue for when they join.
+                    if (playerUuids.isOnline(playerName)) {
+                        if (debugMode) {
+                            getLogger().info("[DEBUG] Player is online, applying action immediately.");
+                        }
+                        String actionId = handleTrackedActionAsync(playerName, streamer, action);
+                        metrics.actions.inc(actionLabel(action), "applied");
+                        response = "{\"ok\":true,\"applied\":true,\"queued\":false,\"id\":\"" + actionId + "\"}";
+                    } else {
+                        if (debugMode) {
+                            getLogger().info("[DEBUG] Player is offline, queuing action for later.");
+                        }
+                        queueTeamChange(playerName, streamer, action);
+                        metrics.actions.inc(actionLabel(action), "queued");
+                        response = "{\"ok\":true,\"applied\":false,\"queued\":true}";
+                    }
+                } catch (RuntimeException e) {
+                    if (requestId != null) {
+                        idempotencyCache.release(requestId);
+                    }
+                    throw e;
+                }
+                if (requestId != null) {
+                    idempotencyCache.complete(requestId, response);
+                }
+                sendJson(exchange, 200, response);
+
+            } catch (Exception ex) {
+                getLogger().log(Level.SEVERE, "Error handling /action request", ex);
+                try {
+                    sendJson(exchange, 500, "{\"ok\":false,\"error\":\"internal_error\"}");
+                } catch (IOException ignored) {
+                }
+            } finally {
+                parser.release(params);
+                try {
+                    exchange.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts many actions in one request, either as a JSON array of
+     * {@code {playerName, streamer, action}} objects or as NDJSON (one object per line).
+     * The token is taken from the {@code X-Auth-Token} header or the {@code token} query parameter.
+     * Online players go onto the main-thread action queue and offline players are
+     * persisted with a single queue write.
+     */
+    private class BatchActionHandler extends BridgeHandler {
+
+        private final int maxItems;
+        private final int maxBodyBytes;
+
+        private BatchActionHandler(String authToken, int maxItems, int maxBodyBytes) {
+            super(authToken);
+            this.maxItems = maxItems > 0 ? maxItems : 1000;
+            this.maxBodyBytes = maxBodyBytes > 0 ? maxBodyBytes : 1048576;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            try {
+                if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendPlain(exchange, 405, "Method Not Allowed");
+                    return;
+                }
+
+                if (!authToken.isEmpty()) {
+                    if (!authToken.equals(requestToken(exchange))) {
+                        getLogger().warning("Received batch request with invalid token from " + exchange.getRemoteAddress());
+                        sendJson(exchange, 401, "{\"ok\":false,\"error\":\"invalid_token\"}");
+                        return;
+                    }
+                }
+
+                if (contentLength(exchange) > maxBodyBytes) {
+                    sendJson(exchange, 413, "{\"ok\":false,\"error\":\"body_too_large\",\"max\":" + maxBodyBytes + "}");
+                    return;
+                }
+                List<JsonObject> items;
+                long parseStart = System.nanoTime();
+                try {
+                    items = parseItems(FormCodec.readBody(exchange.getRequestBody(), maxBodyBytes));
+                } catch (FormCodec.BodyTooLargeException e) {
+                    sendJson(exchange, 413, "{\"ok\":false,\"error\":\"body_too_large\",\"max\":" + maxBodyBytes + "}");
+                    return;
+                } catch (RuntimeException e) {
+                    sendJson(exchange, 400, "{\"ok\":false,\"error\":\"invalid_json\"}");
+                    return;
+                }
+                metrics.requestPhase.observeNanos(System.nanoTime() - parseStart, "parse");
+                if (items.size() > maxItems) {
+                    sendJson(exchange, 413, "{\"ok\":false,\"error\":\"too_many_items\",\"max\":" + maxItems + "}");
+                    return;
+                }
+
+                if (debugMode) {
+                    getLogger().info("[DEBUG] Batch request with " + items.size() + " items from " + exchange.getRemoteAddress());
+                }
+
+                BridgeSettings s = settings;
+                List<CommandTemplate> commands = s.actionCommands;
+                boolean papiAvailable = s.placeholderApiAvailable;
+                List<PreparedAction> online = new ArrayList<>();
+                int queued = 0;
+                JsonArray results = new JsonArray();
+
+                for (int i = 0; i < items.size(); i++) {
+                    JsonObject item = items.get(i);
+                    JsonObject result = new JsonObject();
+                    result.addProperty("index", i);
+
+                    String playerName = getString(item, "playerName");
+                    String streamer = getString(item, "streamer");
+                    String action = getString(item, "action");
+                    if (action == null) action = "add";
+
+                    if (playerName == null || streamer == null) {
+                        result.addProperty("ok", false);
+                        result.addProperty("error", "missing_fields");
+                        results.add(result);
+                        continue;
+                    }
+                    result.addProperty("playerName", playerName);
+                    String requestId = getString(item, "requestId");
+                    if (requestId != null && requestId.isEmpty()) requestId = null;
+                    if (requestId != null) {
+                        String previous = idempotencyCache.reserve(requestId);
+                        if (previous != null) {
+                            JsonObject replay = IdempotencyCache.IN_PROGRESS.equals(previous)
+                                    ? new JsonObject() : JsonParser.parseString(previous).getAsJsonObject();
+                            if (replay.size() == 0) {
+                                replay.addProperty("ok", false);
+                                replay.addProperty("error", "duplicate_in_progress");
+                            }
+                            replay.addProperty("index", i);
+                            replay.addProperty("duplicate", true);
+                            results.add(replay);
+                            continue;
+                        }
+                    }
+                    if (!isKnownStreamer(streamer)) {
+                        result.addProperty("ok", false);
+                        result.addProperty("error", "unknown_streamer");
+                        metrics.actions.inc(actionLabel(action), "rejected");
+                        results.add(result);
+                        if (requestId != null) {
+                            idempotencyCache.complete(requestId, result.toString());
+                        }
+                        continue;
+                    }
+                    long retryMillis = rateLimit(streamer, action);
+                    if (retryMillis > 0L) {
+                        // Not recorded for the requestId, so a retry after the limit goes through.
+                        result.addProperty("ok", false);
+                        result.addProperty("error", "rate_limited");
+                        result.addProperty("retryAfterMs", retryMillis);
+                        results.add(result);
+                        if (requestId != null) {
+                            idempotencyCache.release(requestId);
+                        }
+                        continue;
+                    }
+
+                    if (playerUuids.isOnline(playerName)) {
+                        PreparedAction prepared = prepareAction(playerName, streamer, action, commands, papiAvailable);
+                        online.add(prepared);
+                        metrics.actions.inc(actionLabel(action), "applied");
+                        result.addProperty("ok", true);
+                        result.addProperty("applied", true);
+                        result.addProperty("queued", false);
+                        result.addProperty("id", trackAction(prepared));
+                    } else {
+                        addQueuedChange(playerName, streamer, action);
+                        metrics.actions.inc(actionLabel(action), "queued");
+                        queued++;
+                        result.addProperty("ok", true);
+                        result.addProperty("applied", false);
+                        result.addProperty("queued", true);
+                    }
+                    results.add(result);
+                    if (requestId != null) {
+                        idempotencyCache.complete(requestId, result.toString());
+                    }
+                }
+
+                handleActionsAsync(online);
+                if (queued > 0) {
+                    saveQueuedChanges();
+                }
+
+                JsonObject response = new JsonObject();
+                response.addProperty("ok", true);
+                response.addProperty("applied", online.size());
+                response.addProperty("queued", queued);
+                response.add("results", results);
+                sendJson(exchange, 200, response.toString());
+
+            } catch (Exception ex) {
+                getLogger().log(Level.SEVERE, "Error handling /action/batch request", ex);
+                try {
+                    sendJson(exchange, 500, "{\"ok\":false,\"error\":\"internal_error\"}");
+                } catch (IOException ignored) {
+                }
+            } finally {
+                try {
+                    exchange.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        private List<JsonObject> parseItems(String body) {
+            List<JsonObject> items = new ArrayList<>();
+            String trimmed = body == null ? "" : body.trim();
+            if (trimmed.isEmpty()) return items;
+
+            if (trimmed.charAt(0) == '[') {
+                for (JsonElement element : JsonParser.parseString(trimmed).getAsJsonArray()) {
+                    items.add(element.getAsJsonObject());
+                }
+                return items;
+            }
+
+            // NDJSON: one object per non-empty line
+            for (String line : trimmed.split("\\r?\\n")) {
+                if (line.isBlank()) continue;
+                items.add(JsonParser.parseString(line).getAsJsonObject());
+            }
+            return items;
+        }
+
+        private String getString(JsonObject item, String key) {
+            JsonElement element = item.get(key);
+            if (element == null || element.isJsonNull()) return null;
+            return element.getAsString();
+        }
+    }
+
+    /**
+     * Long-lived action channel. The website opens one {@code POST /action/stream}, authenticates once via
+     * the headers or query string, and keeps writing NDJSON items ({@code {seq, playerName, streamer,
+     * action, requestId}}) into the chunked request body. The response is a chunked NDJSON stream: a
+     * {@code hello} line carrying the ack window, then one ack per item, in order, echoing its
+     * {@code seq} (or the item's position if none was sent).
+     *
+     * Clients should keep at most {@code window} items unacknowledged. Acks are flushed whenever no more
+     * input is buffered or a full window is pending, and offline-queue writes are coalesced per flush.
+     * While more than {@code maxBacklog} actions wait for the main thread the stream stops reading, so
+     * the backpressure reaches the sender through TCP.
+     */
+    private class ActionStreamHandler extends BridgeHandler {
+
+        private final ActionRequestParser parser;
+        private final int window;
+        private final int maxBacklog;
+
+        private ActionStreamHandler(String authToken, ActionRequestParser parser, int window, int maxBacklog) {
+            super(authToken);
+            this.parser = parser;
+            this.window = Math.max(1, window);
+            this.maxBacklog = Math.max(1, maxBacklog);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            // The JDK listener's body streams block inside synchronized methods, which would pin a
+            // virtual thread's carrier for the whole life of the stream; use a platform thread instead.
+            // Rejections go there too: closing the exchange drains the request body, which only ends
+            // once the client has read the error and hung up.
+            try {
+                Thread thread = new Thread(() -> serve(exchange), "bridge-stream-" + exchange.getRemoteAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (Exception ex) {
+                getLogger().log(Level.SEVERE, "Error handling /action/stream request", ex);
+                try {
+                    exchange.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        private void serve(HttpExchange exchange) {
+            boolean acquired = false;
+            try {
+                if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendPlain(exchange, 405, "Method Not Allowed");
+                    return;
+                }
+                if (!authToken.isEmpty() && !authToken.equals(requestToken(exchange))) {
+                    getLogger().warning("Received stream request with invalid token from " + exchange.getRemoteAddress());
+                    sendJson(exchange, 401, "{\"ok\":false,\"error\":\"invalid_token\"}");
+                    return;
+                }
+                if (!streamSlots.tryAcquire()) {
+                    sendJson(exchange, 429, "{\"ok\":false,\"error\":\"too_many_streams\"}");
+                    return;
+                }
+                acquired = true;
+                exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+                exchange.sendResponseHeaders(200, 0);
+                metrics.requests.inc(exchange.getHttpContext().getPath(), "200");
+                if (debugMode) {
+                    getLogger().info("[DEBUG] Action stream opened by " + exchange.getRemoteAddress());
+                }
+                long items = pump(new BufferedInputStream(exchange.getRequestBody()), exchange.getResponseBody());
+                if (debugMode) {
+                    getLogger().info("[DEBUG] Action stream from " + exchange.getRemoteAddress() + " closed after " + items + " items");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // Client went away or the listener is shutting down.
+                if (debugMode) {
+                    getLogger().info("[DEBUG] Action stream from " + exchange.getRemoteAddress() + " ended: " + e.getMessage());
+                }
+            } catch (Exception ex) {
+                getLogger().log(Level.SEVERE, "Error handling /action/stream request", ex);
+            } finally {
+                if (acquired) {
+                    streamSlots.release();
+                }
+                try {
+                    exchange.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        // Reads items until the client ends its body; returns how many were acknowledged.
+        private long pump(InputStream in, OutputStream out) throws IOException, InterruptedException {
+            StringBuilder acks = new StringBuilder(4096);
+            acks.append("{\"type\":\"hello\",\"window\":").append(window).append("}\n");
+            Flush flush = new Flush(out, acks);
+            flush.run();
+
+            ActionRequestParser.ActionRequest item = parser.acquire();
+            long nextSeq = 1L;
+            long count = 0L;
+            try {
+                while (true) {
+                    while (actionDrainer.depth() > maxBacklog) {
+                        flush.run();
+                        Thread.sleep(50L);
+                    }
+                    String result;
+                    try {
+                        if (!parser.parseLine(in, item)) break;
+                        result = apply(item, flush);
+                    } catch (FormCodec.BodyTooLargeException e) {
+                        result = "{\"ok\":false,\"error\":\"item_too_large\"}";
+                    } catch (FormCodec.MalformedBodyException e) {
+                        result = "{\"ok\":false,\"error\":\"invalid_json\"}";
+                    }
+                    long seq = item.seq >= 0 ? item.seq : nextSeq;
+                    nextSeq = seq + 1;
+                    count++;
+                    acks.append("{\"seq\":").append(seq).append(',').append(result, 1, result.length()).append('\n');
+                    if (++flush.pending >= window || in.available() == 0) {
+                        flush.run();
+                    }
+                }
+                flush.run();
+                return count;
+            } finally {
+                parser.release(item);
+            }
+        }
+
+        // Same rules as /action, minus the test-connection shortcut. Returns the ack as a JSON object.
+        private String apply(ActionRequestParser.ActionRequest item, Flush flush) {
+            String playerName = item.playerName;
+            String streamer = item.streamer;
+            String action = item.action != null ? item.action : "add";
+            if (playerName == null || streamer == null) {
+                return "{\"ok\":false,\"error\":\"missing_fields\"}";
+            }
+
+            String requestId = item.requestId;
+            if (requestId != null) {
+                String previous = idempotencyCache.reserve(requestId);
+                if (previous != null) {
+                    if (IdempotencyCache.IN_PROGRESS.equals(previous)) {
+                        return "{\"ok\":false,\"error\":\"duplicate_in_progress\",\"duplicate\":true}";
+                    }
+                    return previous.substring(0, previous.length() - 1) + ",\"duplicate\":true}";
+                }
+            }
+
+            String result;
+            long retryMillis;
+            try {
+                if (!isKnownStreamer(streamer)) {
+                    metrics.actions.inc(actionLabel(action), "rejected");
+                    result = "{\"ok\":false,\"error\":\"unknown_streamer\"}";
+                } else if ((retryMillis = rateLimit(streamer, action)) > 0L) {
+                    // Released below rather than recorded, so the client can resend the item later.
+                    if (requestId != null) {
+                        idempotencyCache.release(requestId);
+                        requestId = null;
+                    }
+                    result = "{\"ok\":false,\"error\":\"rate_limited\",\"retryAfterMs\":" + retryMillis + "}";
+                } else if (playerUuids.isOnline(playerName)) {
+                    handleActionAsync(playerName, streamer, action);
+                    metrics.actions.inc(actionLabel(action), "applied");
+                    result = "{\"ok\":true,\"applied\":true,\"queued\":false}";
+                } else {
+                    addQueuedChange(playerName, streamer, action);
+                    flush.queueChanged = true;
+                    metrics.actions.inc(actionLabel(action), "queued");
+                    result = "{\"ok\":true,\"applied\":false,\"queued\":true}";
+                }
+            } catch (RuntimeException e) {
+                if (requestId != null) {
+                    idempotencyCache.release(requestId);
+                }
+                throw e;
+            }
+            if (requestId != null) {
+                idempotencyCache.complete(requestId, result);
+            }
+            return result;
+        }
+
+        /** Writes out buffered acks, saving the offline queue first if any of them queued a change. */
+        private final class Flush {
+            private final OutputStream out;
+            private final StringBuilder acks;
+            private int pending;
+            private boolean queueChanged;
+
+            private Flush(OutputStream out, StringBuilder acks) {
+                this.out = out;
+                this.acks = acks;
+            }
+
+            private void run() throws IOException {
+                if (queueChanged) {
+                    saveQueuedChanges();
+                    queueChanged = false;
+                }
+                if (acks.length() == 0) return;
+                out.write(acks.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                acks.setLength(0);
+                pending = 0;
+            }
+        }
+    }
+
+    /**
+     * {@code /action/stream} on the nio transport, which neither reads chunked request bodies nor
+     * streams responses; answers 501 instead of accepting a stream it could not serve.
+     */
+    private class StreamUnsupportedHandler extends BridgeHandler {
+
+        private StreamUnsupportedHandler() {
+            super("");
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                sendJson(exchange, 501, "{\"ok\":false,\"error\":\"stream_requires_jdk_transport\"}");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * {@code GET /action/{id}}: status of an action accepted by /action or /action/batch, as
+     * {@code {"ok":true,"id","status":"pending"|"done"|"failed",playerName,streamer,action}}.
+     * With {@code ?wait=5s} (or {@code 500ms}, or plain seconds) a pending action is waited for up to
+     * that long, capped at action-status-max-wait-seconds, so clients learn about completion as soon
+     * as it happens instead of polling. When action-status-max-waiters requests are already waiting,
+     * further ones are answered immediately. Unknown or expired ids get 404 {@code unknown_action}.
+     */
+    private class ActionStatusHandler extends BridgeHandler {
+
+        private final long maxWaitMillis;
+
+        private ActionStatusHandler(String authToken, long maxWaitSeconds) {
+            super(authToken);
+            this.maxWaitMillis = TimeUnit.SECONDS.toMillis(Math.max(0L, maxWaitSeconds));
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            try {
+                if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendPlain(exchange, 405, "Method Not Allowed");
+                    return;
+                }
+                if (!authToken.isEmpty() && !authToken.equals(requestToken(exchange))) {
+                    sendJson(exchange, 401, "{\"ok\":false,\"error\":\"invalid_token\"}");
+                    return;
+                }
+                String path = exchange.getRequestURI().getPath();
+                String id = path.substring(exchange.getHttpContext().getPath().length());
+                ActionTracker.Entry entry = id.isEmpty() || id.indexOf('/') >= 0 ? null : actionTracker.get(id);
+                if (entry == null) {
+                    sendJson(exchange, 404, "{\"ok\":false,\"error\":\"unknown_action\"}");
+                    return;
+                }
+
+                long waitMillis;
+                try {
+                    waitMillis = Math.min(parseWait(FormCodec.parseFormEncoded(exchange.getRequestURI().getRawQuery()).get("wait")), maxWaitMillis);
+                } catch (NumberFormatException e) {
+                    sendJson(exchange, 400, "{\"ok\":false,\"error\":\"invalid_wait\"}");
+                    return;
+                }
+                if (waitMillis > 0 && !entry.future.isDone() && statusWaiters.tryAcquire()) {
+                    try {
+                        entry.future.get(waitMillis, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException | ExecutionException ignored) {
+                        // Reported from the future's state below.
+                    } finally {
+                        statusWaiters.release();
+                    }
+                }
+
+                JsonObject response = new JsonObject();
+                response.addProperty("ok", true);
+                response.addProperty("id", entry.id);
+                response.addProperty("status", !entry.future.isDone() ? "pending"
+                        : entry.future.isCompletedExceptionally() ? "failed" : "done");
+                response.addProperty("playerName", entry.playerName);
+                response.addProperty("streamer", entry.streamer);
+                response.addProperty("action", entry.action);
+                exchange.getResponseHeaders().set("Cache-Control", "no-store");
+                sendJson(exchange, 200, response.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                getLogger().log(Level.SEVERE, "Error handling /action status request", ex);
+                try {
+                    sendJson(exchange, 500, "{\"ok\":false,\"error\":\"internal_error\"}");
+                } catch (IOException ignored) {
+                }
+            } finally {
+                try {
+                    exchange.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        // "5s", "500ms" or plain seconds; absent means don't wait.
+        private long parseWait(String value) {
+            if (value == null || value.isEmpty()) return 0L;
+            String trimmed = value.trim().toLowerCase(Locale.ROOT);
+            if (trimmed.endsWith("ms")) return Math.max(0L, Long.parseLong(trimmed.substring(0, trimmed.length() - 2)));
+            if (trimmed.endsWith("s")) trimmed = trimmed.substring(0, trimmed.length() - 1);
+            return Math.max(0L, TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed)));
+        }
+    }
+
+    /**
+     * Roster reconciliation. {@code GET /state} returns everything {@link RosterState} tracks, with its
+     * version as the ETag; {@code GET /state?since=<version>} returns only the changes after that
+     * version, or the full state with {@code "reset":true} once the change log no longer reaches back
+     * that far. A matching If-None-Match is answered with 304 and no body. The snapshot is copied from
+     * the state in one short critical section and rendered here, on the HTTP thread.
+     *
+     * When the offline queue lives in a database rather than in memory, queued changes are read from
+     * the store for the full state only, and the store's queue version is part of the ETag. Deltas then
+     * need the whole ETag as {@code since}, and a queue version other than the current one gets the
+     * full state with {@code "reset":true}.
+     */
+    private class StateHandler extends BridgeHandler {
+
+        // Last full body, reused until the version moves.
+        private volatile RenderedState lastFull;
+
+        private StateHandler(String authToken) {
+            super(authToken);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            try {
+                if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendPlain(exchange, 405, "Method Not Allowed");
+                    return;
+                }
+                if (!authToken.isEmpty() && !authToken.equals(requestToken(exchange))) {
+                    sendJson(exchange, 401, "{\"ok\":false,\"error\":\"invalid_token\"}");
+                    return;
+                }
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+
+                RosterState state = rosterState;
+                long queueVersion = queueStore.queueVersion();
+                String etag = etag(state.version(), queueVersion);
+                if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    exchange.sendResponseHeaders(304, -1);
+                    metrics.requests.inc(exchange.getHttpContext().getPath(), "304");
+                    return;
+                }
+
+                String sinceParam = FormCodec.parseFormEncoded(exchange.getRequestURI().getRawQuery()).get("since");
+                if (sinceParam != null) {
+                    // A version, or a whole ETag ("<version>-<queueVersion>", quotes optional).
+                    String value = sinceParam.trim().replace("\"", "");
+                    long since;
+                    long sinceQueueVersion = -1L;
+                    try {
+                        int dash = value.indexOf('-');
+                        if (dash >= 0) {
+                            sinceQueueVersion = Long.parseLong(value.substring(dash + 1));
+                            value = value.substring(0, dash);
+                        }
+                        since = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        sendJson(exchange, 400, "{\"ok\":false,\"error\":\"invalid_since\"}");
+                        return;
+                    }
+                    // Deltas never list a database-backed queue, so once it has moved only the full state is current.
+                    boolean queueUnchanged = queueStore.inMemory() || sinceQueueVersion == queueVersion;
+                    List<RosterState.Change> changes = queueUnchanged ? state.changesSince(since) : null;
+                    if (changes != null) {
+                        long version = changes.isEmpty() ? since : changes.get(changes.size() - 1).version;
+                        exchange.getResponseHeaders().set("ETag", etag(version, queueVersion));
+                        sendJson(exchange, 200, renderChanges(version, since, changes));
+                        return;
+                    }
+                }
+
+                RenderedState full = fullState(state, queueVersion);
+                exchange.getResponseHeaders().set("ETag", etag(full.version, full.queueVersion));
+                // A delta that can't be served: send everything and tell the client to start over.
+                sendJson(exchange, 200, sinceParam != null ? "{\"reset\":true," + full.json.substring(1) : full.json);
+            } catch (Exception ex) {
+                getLogger().log(Level.WARNING, "Error handling /state request", ex);
+                try {
+                    sendJson(exchange, 500, "{\"ok\":false,\"error\":\"internal_error\"}");
+                } catch (IOException ignored) {
+                }
+            } finally {
+                try {
+                    exchange.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        private RenderedState fullState(RosterState state, long queueVersion) throws IOException {
+            RenderedState cached = lastFull;
+            if (cached != null && cached.state == state && cached.version == state.version()) {
+                return cached;
+            }
+            RosterState.Snapshot snapshot = state.snapshot();
+            JsonArray whitelist = new JsonArray();
+            JsonObject nations = new JsonObject();
+            JsonArray queued = new JsonArray();
+            JsonArray pending = new JsonArray();
+            // Every configured streamer is listed, even without members; keyed case-insensitively.
+            Map<String, JsonArray> members = new HashMap<>();
+            for (Map.Entry<String, String> entry : settings.streamerNations.entries().entrySet()) {
+                members.put(entry.getKey().toLowerCase(Locale.ROOT), nationEntry(nations, entry.getKey(), entry.getValue()));
+            }
+            for (RosterState.Fact fact : snapshot.facts) {
+                switch (fact.kind) {
+                    case WHITELIST -> whitelist.add(fact.playerName);
+                    case MEMBER -> members.computeIfAbsent(fact.streamer.toLowerCase(Locale.ROOT),
+                            k -> nationEntry(nations, fact.streamer, fact.nation)).add(fact.playerName);
+                    case QUEUED -> queued.add(factJson(fact));
+                    case PENDING -> pending.add(factJson(fact));
+                }
+            }
+            if (!queueStore.inMemory()) {
+                queueStore.forEachPending(null, change -> queued.add(addFact(new JsonObject(),
+                        new RosterState.Fact(RosterState.Kind.QUEUED, change.playerName, change.streamer, null,
+                                change.actionType, change.seq))));
+            }
+            JsonObject root = new JsonObject();
+            root.addProperty("version", snapshot.version);
+            root.add("whitelist", whitelist);
+            root.add("nations", nations);
+            root.add("queued", queued);
+            root.add("pending", pending);
+            RenderedState rendered = new RenderedState(state, snapshot.version, queueVersion, root.toString());
+            // A database-backed queue stays off the heap between requests, rendered or not.
+            if (queueStore.inMemory()) {
+                lastFull = rendered;
+            }
+            return rendered;
+        }
+
+        private JsonArray nationEntry(JsonObject nations, String streamer, String nation) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("nation", nation);
+            JsonArray members = new JsonArray();
+            entry.add("members", members);
+            nations.add(streamer, entry);
+            return members;
+        }
+
+        private String renderChanges(long version, long since, List<RosterState.Change> changes) {
+            JsonArray array = new JsonArray();
+            for (RosterState.Change change : changes) {
+                JsonObject item = new JsonObject();
+                item.addProperty("version", change.version);
+                item.addProperty("type", change.fact.kind.label);
+                item.addProperty("op", change.present ? "set" : "remove");
+                array.add(addFact(item, change.fact));
+            }
+            JsonObject root = new JsonObject();
+            root.addProperty("version", version);
+            root.addProperty("since", since);
+            root.add("changes", array);
+            return root.toString();
+        }
+
+        private JsonObject factJson(RosterState.Fact fact) {
+            return addFact(new JsonObject(), fact);
+        }
+
+        private JsonObject addFact(JsonObject json, RosterState.Fact fact) {
+            json.addProperty("playerName", fact.playerName);
+            if (fact.streamer != null) json.addProperty("streamer", fact.streamer);
+            if (fact.nation != null) json.addProperty("nation", fact.nation);
+            if (fact.action != null) json.addProperty("action", fact.action);
+            if (fact.kind == RosterState.Kind.QUEUED) json.addProperty("seq", fact.seq);
+            return json;
+        }
+
+        private String etag(long version, long queueVersion) {
+            return queueVersion == 0L ? "\"" + version + "\"" : "\"" + version + "-" + queueVersion + "\"";
+        }
+
+        private boolean etagMatches(String ifNoneMatch, String etag) {
+            if (ifNoneMatch == null) return false;
+            for (String candidate : ifNoneMatch.split(",")) {
+                String value = candidate.trim();
+                if (value.startsWith("W/")) value = value.substring(2);
+                if (value.equals(etag) || value.equals("*")) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Desired-state roster sync. {@code PUT /roster/{streamer}} takes the complete player list for the
+     * streamer (a JSON array of names, or {@code {"players":[...]}}) and applies only the difference to
+     * the current roster: players missing from it are added, players no longer listed are removed, and
+     * the streamer themself is never removed. Changes go through the same path as {@code /action/batch}
+     * (online players applied in one drainer batch, offline players queued), so resending an unchanged
+     * roster costs nothing.
+     *
+     * The current roster is read from BetterTeams on the main thread when its API lists members, and
+     * from the bridge's own records in {@link RosterState} otherwise. Queued changes (read from the
+     * offline queue store) and adds waiting for their nation count as already applied.
+     */
+    private class RosterHandler extends BridgeHandler {
+
+        private final int maxPlayers;
+        private final int maxBodyBytes;
+
+        private RosterHandler(String authToken, int maxPlayers, int maxBodyBytes) {
+            super(authToken);
+            this.maxPlayers = maxPlayers > 0 ? maxPlayers : 1000;
+            this.maxBodyBytes = maxBodyBytes > 0 ? maxBodyBytes : 1048576;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            try {
+                if (!"PUT".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendPlain(exchange, 405, "Method Not Allowed");
+                    return;
+                }
+                if (!authToken.isEmpty() && !authToken.equals(requestToken(exchange))) {
+                    getLogger().warning("Received roster request with invalid token from " + exchange.getRemoteAddress());
+                    sendJson(exchange, 401, "{\"ok\":false,\"error\":\"invalid_token\"}");
+                    return;
+                }
+
+                String path = exchange.getRequestURI().getPath();
+                String contextPath = exchange.getHttpContext().getPath();
+                String streamer = path.length() > contextPath.length() + 1 ? path.substring(contextPath.length() + 1) : "";
+                if (streamer.isEmpty() || streamer.indexOf('/') >= 0) {
+                    sendJson(exchange, 404, "{\"ok\":false,\"error\":\"missing_streamer\"}");
+                    return;
+                }
+                if (!isKnownStreamer(streamer)) {
+                    sendJson(exchange, 400, "{\"ok\":false,\"error\":\"unknown_streamer\"}");
+                    return;
+                }
+
+                if (contentLength(exchange) > maxBodyBytes) {
+                    sendJson(exchange, 413, "{\"ok\":false,\"error\":\"body_too_large\",\"max\":" + maxBodyBytes + "}");
+                    return;
+                }
+                List<String> desired;
+                long parseStart = System.nanoTime();
+                try {
+                    desired = parsePlayers(FormCodec.readBody(exchange.getRequestBody(), maxBodyBytes));
+                } catch (FormCodec.BodyTooLargeException e) {
+                    sendJson(exchange, 413, "{\"ok\":false,\"error\":\"body_too_large\",\"max\":" + maxBodyBytes + "}");
+                    return;
+                } catch (RuntimeException e) {
+                    sendJson(exchange, 400, "{\"ok\":false,\"error\":\"invalid_json\"}");
+                    return;
+                }
+                metrics.requestPhase.observeNanos(System.nanoTime() - parseStart, "parse");
+                if (desired.size() > maxPlayers) {
+                    sendJson(exchange, 413, "{\"ok\":false,\"error\":\"too_many_items\",\"max\":" + maxPlayers + "}");
+                    return;
                 }
 
-                if (!authToken.isEmpty()) {
-                    String token = params.getOrDefault("token", "");
-                    if (debugMode) {
-                        getLogger().info("[DEBUG] Checking token: expected=*****, received=" + (token.isEmpty() ? "(none)" : "*****"));
-                    }
-                    if (!authToken.equals(token)) {
-                        getLogger().warning("Received request with invalid token from " + exchange.getRemoteAddress());
-                        if (debugMode) {
-                            getLogger().warning("[DEBUG] Token mismatch! Authentication failed.");
-                        }
-                        sendJson(exchange, 401, "{\"ok\":false,\"error\":\"invalid_token\"}");
+                BridgeSettings s = settings;
+                String nation = s.streamerNations.nationFor(streamer);
+                boolean fromBetterTeams = !s.whitelistOnlyMode && !s.disableBetterTeamsApi && nation != null && betterTeams.canListMembers();
+                Collection<String> members;
+                if (fromBetterTeams) {
+                    // BetterTeams state is only safe to read on the main thread.
+                    try {
+                        members = scheduler.callGlobal(() -> betterTeams.memberNames(nation))
+                                .get(5, TimeUnit.SECONDS);
+                    } catch (java.util.concurrent.TimeoutException e) {
+                        sendJson(exchange, 503, "{\"ok\":false,\"error\":\"main_thread_busy\"}");
                         return;
                     }
-                    if (debugMode) {
-                        getLogger().info("[DEBUG] Token validated successfully");
+                } else {
+                    members = new ArrayList<>();
+                    for (RosterState.Fact fact : rosterState.facts(RosterState.Kind.MEMBER)) {
+                        if (streamer.equalsIgnoreCase(fact.streamer)) members.add(fact.playerName);
                     }
                 }
 
-                String playerName = params.get("playerName");
-                String streamer = params.get("streamer");
-                String action = params.getOrDefault("action", "add");
-
-                if (playerName == null || streamer == null) {
-                    sendJson(exchange, 400, "{\"ok\":false,\"error\":\"missing_fields\"}");
-                    return;
+                // Lower-cased name -> name, for everything that is or will be on the roster.
+                Map<String, String> current = new LinkedHashMap<>();
+                for (String name : members) {
+                    current.put(OfflineQueue.key(name), name);
                 }
-
-                // Check if this is a test connection
-                if ("TestPlayer".equals(playerName) && "TestStreamer".equals(streamer)) {
-                    if (debugMode) {
-                        getLogger().info("[DEBUG] Test connection detected!");
+                queueStore.forEachPending(streamer, change -> {
+                    if ("remove".equalsIgnoreCase(change.actionType)) {
+                        current.remove(OfflineQueue.key(change.playerName));
+                    } else {
+                        current.put(OfflineQueue.key(change.playerName), change.playerName);
+                    }
+                });
+                if (nation != null) {
+                    for (RosterState.Fact fact : rosterState.facts(RosterState.Kind.PENDING)) {
+                        if (nation.equalsIgnoreCase(fact.nation)) current.put(OfflineQueue.key(fact.playerName), fact.playerName);
                     }
-                    Bukkit.getScheduler().runTask(NetworkBridgePlugin.this, () -> {
-                        Bukkit.broadcastMessage("§a[Bridge] Test connection received successfully!");
-                    });
-                    sendJson(exchange, 200, "{\"ok\":true,\"message\":\"Test connection successful\"}");
-                    return;
                 }
-                
-                if (debugMode) {
-                    getLogger().info("[DEBUG] Processing action: " + action + " for player: " + playerName + " (streamer: " + streamer + ")");
+
+                Map<String, String> wanted = new LinkedHashMap<>();
+                for (String name : desired) {
+                    wanted.putIfAbsent(OfflineQueue.key(name), name);
+                }
+                List<String> toAdd = new ArrayList<>();
+                for (Map.Entry<String, String> entry : wanted.entrySet()) {
+                    if (!current.containsKey(entry.getKey())) toAdd.add(entry.getValue());
+                }
+                List<String> toRemove = new ArrayList<>();
+                String streamerKey = OfflineQueue.key(streamer);
+                for (Map.Entry<String, String> entry : current.entrySet()) {
+                    // Streamers lead their nation and are never removed from it.
+                    if (!wanted.containsKey(entry.getKey()) && !entry.getKey().equals(streamerKey)) toRemove.add(entry.getValue());
                 }
 
-                // If the player is online, apply immediately; otherwise, queue for when they join.
-                Player online = Bukkit.getPlayerExact(playerName);
-                if (online != null) {
-                    if (debugMode) {
-                        getLogger().info("[DEBUG] Player is online, applying action immediately.");
-                    }
-                    handleActionAsync(playerName, streamer, action);
-                    sendJson(exchange, 200, "{\"ok\":true,\"applied\":true,\"queued\":false}");
-                } else {
-                    if (debugMode) {
-                        getLogger().info("[DEBUG] Player is offline, queuing action for later.");
+                List<CommandTemplate> commands = s.actionCommands;
+                boolean papiAvailable = s.placeholderApiAvailable;
+                List<PreparedAction> online = new ArrayList<>();
+                int queued = 0;
+                for (int i = 0; i < toAdd.size() + toRemove.size(); i++) {
+                    boolean add = i < toAdd.size();
+                    String playerName = add ? toAdd.get(i) : toRemove.get(i - toAdd.size());
+                    String action = add ? "add" : "remove";
+                    if (playerUuids.isOnline(playerName)) {
+                        online.add(prepareAction(playerName, streamer, action, commands, papiAvailable));
+                        metrics.actions.inc(action, "applied");
+                    } else {
+                        addQueuedChange(playerName, streamer, action);
+                        metrics.actions.inc(action, "queued");
+                        queued++;
                     }
-                    queueTeamChange(playerName, streamer, action);
-                    sendJson(exchange, 200, "{\"ok\":true,\"applied\":false,\"queued\":true}");
+                }
+                handleActionsAsync(online);
+                if (queued > 0) {
+                    saveQueuedChanges();
+                }
+                if (debugMode) {
+                    getLogger().info("[DEBUG] Roster for " + streamer + ": " + wanted.size() + " players, "
+                            + toAdd.size() + " to add, " + toRemove.size() + " to remove");
                 }
 
+                JsonObject response = new JsonObject();
+                response.addProperty("ok", true);
+                response.addProperty("streamer", streamer);
+                response.addProperty("source", fromBetterTeams ? "betterteams" : "bridge");
+                response.add("added", toJsonArray(toAdd));
+                response.add("removed", toJsonArray(toRemove));
+                response.addProperty("unchanged", wanted.size() - toAdd.size());
+                response.addProperty("applied", online.size());
+                response.addProperty("queued", queued);
+                sendJson(exchange, 200, response.toString());
             } catch (Exception ex) {
-                getLogger().log(Level.SEVERE, "Error handling /action request", ex);
+                getLogger().log(Level.SEVERE, "Error handling /roster request", ex);
                 try {
                     sendJson(exchange, 500, "{\"ok\":false,\"error\":\"internal_error\"}");
                 } catch (IOException ignored) {
@@ -369,169 +1888,286 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
             }
         }
 
-        private String readBody(InputStream is) throws IOException {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = is.read(buffer)) != -1) {
-                baos.write(buffer, 0, len);
+        private List<String> parsePlayers(String body) {
+            String trimmed = body == null ? "" : body.trim();
+            if (trimmed.isEmpty()) throw new IllegalArgumentException("empty body");
+            JsonElement root = JsonParser.parseString(trimmed);
+            JsonArray array = root.isJsonObject() ? root.getAsJsonObject().getAsJsonArray("players") : root.getAsJsonArray();
+            if (array == null) throw new IllegalArgumentException("missing players");
+            List<String> players = new ArrayList<>(array.size());
+            for (JsonElement element : array) {
+                String name = element.getAsString().trim();
+                if (!name.isEmpty()) players.add(name);
             }
-            return baos.toString(StandardCharsets.UTF_8);
+            return players;
         }
 
-        private Map<String, String> parseFormEncoded(String body) {
-            Map<String, String> map = new HashMap<>();
-            if (body == null || body.isEmpty()) return map;
-
-            String[] pairs = body.split("&");
-            for (String pair : pairs) {
-                int idx = pair.indexOf('=');
-                if (idx <= 0) continue;
-                String key = URLDecoder.decode(pair.substring(0, idx), StandardCharsets.UTF_8);
-                String value = URLDecoder.decode(pair.substring(idx + 1), StandardCharsets.UTF_8);
-                map.put(key, value);
+        private JsonArray toJsonArray(List<String> names) {
+            JsonArray array = new JsonArray();
+            for (String name : names) {
+                array.add(name);
             }
-            return map;
+            return array;
         }
+    }
 
-        private void sendJson(HttpExchange exchange, int status, String json) throws IOException {
-            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
-            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
-            exchange.sendResponseHeaders(status, bytes.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(bytes);
-            }
+    private static final class RenderedState {
+        private final RosterState state;
+        private final long version;
+        private final long queueVersion;
+        private final String json;
+
+        private RenderedState(RosterState state, long version, long queueVersion, String json) {
+            this.state = state;
+            this.version = version;
+            this.queueVersion = queueVersion;
+            this.json = json;
+        }
+    }
+
+    /** Prometheus text-format scrape endpoint. */
+    private class MetricsHandler extends BridgeHandler {
+
+        private MetricsHandler(String authToken) {
+            super(authToken);
         }
 
-        private void sendPlain(HttpExchange exchange, int status, String text) throws IOException {
-            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
-            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
-            exchange.sendResponseHeaders(status, bytes.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(bytes);
+        @Override
+        public void handle(HttpExchange exchange) {
+            try {
+                if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendPlain(exchange, 405, "Method Not Allowed");
+                    return;
+                }
+                if (!authToken.isEmpty() && !authToken.equals(requestToken(exchange))) {
+                    sendPlain(exchange, 401, "Unauthorized");
+                    return;
+                }
+                send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", metrics.scrape());
+            } catch (Exception ex) {
+                getLogger().log(Level.WARNING, "Error handling /metrics request", ex);
+            } finally {
+                try {
+                    exchange.close();
+                } catch (Exception ignored) {
+                }
             }
         }
     }
 
     private void handleActionAsync(String playerName, String streamer, String actionType) {
-        // Still try to resolve a UUID internally for PlaceholderAPI and BetterTeams,
-        // but all external communication and config use Minecraft usernames only.
-        OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayerIfCached(playerName);
-        if (offlinePlayer == null) {
-            // Try online players
-            Player onlinePlayer = Bukkit.getPlayerExact(playerName);
-            if (onlinePlayer != null) {
-                offlinePlayer = onlinePlayer;
-            }
+        BridgeSettings s = settings;
+        PreparedAction action = prepareAction(playerName, streamer, actionType, s.actionCommands, s.placeholderApiAvailable);
+        submitAction(action);
+    }
+
+    // Like handleActionAsync, but returns an id whose status is served at GET /action/{id}.
+    private String handleTrackedActionAsync(String playerName, String streamer, String actionType) {
+        BridgeSettings s = settings;
+        PreparedAction action = prepareAction(playerName, streamer, actionType, s.actionCommands, s.placeholderApiAvailable);
+        String id = trackAction(action);
+        submitAction(action);
+        return id;
+    }
+
+    // Must be called before the action is submitted to the drainer.
+    private String trackAction(PreparedAction action) {
+        action.completion = new CompletableFuture<>();
+        return actionTracker.track(action.playerName, action.streamer, action.actionType, action.completion);
+    }
+
+    private void handleActionsAsync(List<PreparedAction> actions) {
+        for (PreparedAction action : actions) {
+            submitAction(action);
         }
-        
-        UUID uuid = offlinePlayer != null ? offlinePlayer.getUniqueId() : null;
-        final String finalStreamer = streamer; // use streamer name directly from the website/config
-        final UUID finalUuid = uuid;
-        List<String> commands = getConfig().getStringList("commands");
-        boolean hasCommands = commands != null && !commands.isEmpty();
+    }
 
-        boolean papiAvailable = Bukkit.getPluginManager().getPlugin("PlaceholderAPI") != null;
+    // Queues the action in its streamer's lane; removals (and the kicks they may cause) jump the queue.
+    private void submitAction(PreparedAction action) {
+        actionDrainer.submit(laneFor(action.streamer), "remove".equalsIgnoreCase(action.actionType),
+                () -> applyActionTimed(action));
+    }
 
-        Bukkit.getScheduler().runTask(this, () -> {
-            Player onlinePlayer = finalUuid != null ? Bukkit.getPlayer(finalUuid) : null;
+    // Drainer lane and rate-limit bucket for a streamer: one per streamer-nations entry, everything else shared.
+    private String laneFor(String streamer) {
+        return settings.streamerNations.nationFor(streamer) != null
+                ? streamer.toLowerCase(Locale.ROOT) : ActionDrainer.SHARED_LANE;
+    }
 
-            // Always ensure chosen players are whitelisted BEFORE any BetterTeams logic
-            if ("add".equalsIgnoreCase(actionType)) {
-                String cmd = "whitelist add " + playerName;
-                getLogger().info("Ensuring player is whitelisted: /" + cmd);
-                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmd);
-            }
+    // Drain task, once per tick.
+    private void drainActions() {
+        actionDrainer.drain();
+        flushWhitelist(false);
+    }
 
-            // Optional: kick + unwhitelist or only unwhitelist on removal
-            if ("remove".equalsIgnoreCase(actionType)) {
-                if (kickAndUnwhitelistOnRemove) {
-                    if (onlinePlayer != null) {
-                        String kickCmd = "kick " + playerName + " Removed from team";
-                        getLogger().info("Kicking player on team removal: /" + kickCmd);
-                        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), kickCmd);
-                    }
-                    String wlCmd = "whitelist remove " + playerName;
-                    getLogger().info("Removing player from whitelist on team removal: /" + wlCmd);
-                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), wlCmd);
-                } else if (unwhitelistOnRemove) {
-                    String wlCmd = "whitelist remove " + playerName;
-                    getLogger().info("Removing player from whitelist on team removal (no kick): /" + wlCmd);
-                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), wlCmd);
-                }
+    private void flushWhitelist(boolean blocking) {
+        try {
+            if (blocking) {
+                whitelist.flushBlocking();
+            } else {
+                whitelist.flush();
             }
+        } catch (RuntimeException e) {
+            getLogger().log(Level.WARNING, "Failed to apply whitelist changes.", e);
+        }
+        for (CompletableFuture<Void> completion : appliedThisTick) {
+            completion.complete(null);
+        }
+        appliedThisTick.clear();
+    }
 
-            if (!whitelistOnlyMode) {
-                if (hasCommands) {
-                    for (String raw : commands) {
-                        if (raw == null || raw.trim().isEmpty()) continue;
+    private void applyActionTimed(PreparedAction action) {
+        long start = System.nanoTime();
+        try {
+            applyAction(action);
+            if (action.completion != null) appliedThisTick.add(action.completion);
+        } catch (RuntimeException e) {
+            if (action.completion != null) action.completion.completeExceptionally(e);
+            throw e;
+        } finally {
+            metrics.mainThreadAction.observeNanos(System.nanoTime() - start, actionLabel(action.actionType));
+        }
+    }
 
-                        String cmd = raw
-                                .replace("%player_name%", playerName)
-                                .replace("%streamer%", finalStreamer);
+    // Metric label for a client-supplied action; anything unexpected is folded into "other".
+    private static String actionLabel(String action) {
+        if ("add".equalsIgnoreCase(action)) return "add";
+        if ("remove".equalsIgnoreCase(action)) return "remove";
+        return "other";
+    }
 
-                        // %player_uuid% is optional and only filled if we have one
-                        if (cmd.contains("%player_uuid%")) {
-                            cmd = cmd.replace("%player_uuid%", finalUuid != null ? finalUuid.toString() : "unknown");
-                        }
+    private PreparedAction prepareAction(String playerName, String streamer, String actionType, List<CommandTemplate> commands, boolean papiAvailable) {
+        // Still resolve a UUID internally for PlaceholderAPI and BetterTeams,
+        // but all external communication and config use Minecraft usernames only.
+        // From the bridge's own index, so this is safe on request threads.
+        UUID uuid = playerUuids.get(playerName);
+        return new PreparedAction(playerName, streamer, getNationForStreamer(streamer), actionType, uuid, commands, papiAvailable);
+    }
 
-                        if (papiAvailable && onlinePlayer != null) {
-                            try {
-                                cmd = PlaceholderAPI.setPlaceholders(onlinePlayer, cmd);
-                            } catch (Throwable t) {
-                                getLogger().log(Level.WARNING, "Failed to apply PlaceholderAPI placeholders to command: " + raw, t);
-                            }
-                        }
+    private void applyAction(PreparedAction action) {
+        String playerName = action.playerName;
+        String actionType = action.actionType;
+        String streamer = action.streamer; // use streamer name directly from the website/config
+        UUID uuid = action.uuid;
+        List<CommandTemplate> commands = action.commands;
+        boolean hasCommands = commands != null && !commands.isEmpty();
+        boolean papiAvailable = action.papiAvailable;
+        BridgeSettings s = settings;
 
-                        getLogger().info("Dispatching command from web request: /" + cmd);
-                        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmd);
-                    }
-                } else {
-                    getLogger().warning("No commands configured to run for incoming actions.");
+        Player onlinePlayer = uuid != null ? Bukkit.getPlayer(uuid) : Bukkit.getPlayerExact(playerName);
+        if (uuid == null && onlinePlayer != null) {
+            // Online before the bridge saw the join; the main thread may ask the server directly.
+            uuid = onlinePlayer.getUniqueId();
+        }
+
+        // Always ensure chosen players are whitelisted. Applied with the rest of this tick's
+        // whitelist changes once the drainer is done, skipping players already whitelisted.
+        if ("add".equalsIgnoreCase(actionType)) {
+            whitelist.request(playerName, uuid, true);
+        }
+
+        // Optional: kick + unwhitelist or only unwhitelist on removal
+        if ("remove".equalsIgnoreCase(actionType)) {
+            if (s.kickAndUnwhitelistOnRemove) {
+                if (onlinePlayer != null) {
+                    getLogger().info("Kicking player on team removal: " + playerName);
+                    scheduler.runForPlayer(onlinePlayer, () -> onlinePlayer.kick(Component.text("Removed from team")), null);
                 }
+                whitelist.request(playerName, uuid, false);
+            } else if (s.unwhitelistOnRemove) {
+                whitelist.request(playerName, uuid, false);
             }
+        }
 
-            // BetterTeams integration: streamer -> nation -> /teamadmin add/remove %player% %nation%
-            if (!whitelistOnlyMode && !disableBetterTeamsApi) {
-                String nation = getNationForStreamer(finalStreamer);
-                if (nation != null && !nation.isEmpty() && finalUuid != null) {
-                    if ("remove".equalsIgnoreCase(actionType)) {
-                        handleTeamRemovalForPlayer(playerName, finalUuid, finalStreamer, nation);
-                    } else {
-                        handleTeamForPlayer(playerName, finalUuid, finalStreamer, nation);
+        if (!s.whitelistOnlyMode) {
+            if (hasCommands && papiAvailable && onlinePlayer != null && scheduler.regionThreaded()
+                    && CommandTemplate.anyNeedsPlaceholderApi(commands)) {
+                dispatchOnPlayerRegion(onlinePlayer, commands, playerName, streamer, uuid);
+            } else if (hasCommands) {
+                for (CommandTemplate template : commands) {
+                    // %player_uuid% is optional and only filled if we have one
+                    String uuidValue = template.needsUuid() ? (uuid != null ? uuid.toString() : "unknown") : null;
+                    String cmd = template.expand(commandBuffer, playerName, streamer, uuidValue, null);
+
+                    // Only hand the command to PlaceholderAPI if it still contains placeholders we don't own.
+                    if (papiAvailable && onlinePlayer != null && template.needsPlaceholderApi()) {
+                        try {
+                            cmd = PlaceholderAPI.setPlaceholders(onlinePlayer, cmd);
+                        } catch (Throwable t) {
+                            getLogger().log(Level.WARNING, "Failed to apply PlaceholderAPI placeholders to command: " + template.raw(), t);
+                        }
                     }
+
+                    getLogger().info("Dispatching command from web request: /" + cmd);
+                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmd);
                 }
+            } else {
+                getLogger().warning("No commands configured to run for incoming actions.");
             }
-        });
-    }
-
-    private String getNationForStreamer(String streamer) {
-        if (streamer == null || streamer.isEmpty()) return null;
-        // streamer-nations now maps streamer IGN directly to nation name
-        ConfigurationSection section = getConfig().getConfigurationSection("streamer-nations");
-        if (section == null) return null;
+        }
 
-        // Try exact key first
-        String direct = section.getString(streamer);
-        if (direct != null && !direct.isEmpty()) {
-            return direct;
+        // BetterTeams integration: streamer -> nation -> /teamadmin add/remove %player% %nation%
+        if (!s.whitelistOnlyMode && !s.disableBetterTeamsApi) {
+            String nation = action.nation;
+            if (nation != null && !nation.isEmpty()) {
+                if (uuid == null && debugMode) {
+                    getLogger().info("[DEBUG] No UUID known for " + playerName + " (never joined), using the team command instead of the BetterTeams API.");
+                }
+                if ("remove".equalsIgnoreCase(actionType)) {
+                    handleTeamRemovalForPlayer(playerName, uuid, streamer, nation);
+                } else {
+                    handleTeamForPlayer(playerName, uuid, streamer, nation);
+                }
+            }
+        } else {
+            // No team to change in these modes; record the outcome per streamer so /state and roster diffs still see it.
+            rosterState.setMember(playerName, streamer, action.nation, !"remove".equalsIgnoreCase(actionType));
         }
+    }
 
-        // Case-insensitive lookup
-        for (String key : section.getKeys(false)) {
-            if (key.equalsIgnoreCase(streamer)) {
-                String value = section.getString(key);
-                if (value != null && !value.isEmpty()) {
-                    return value;
+    // Folia: placeholders for a player may only be resolved on the player's region, and console commands
+    // only run as global work, so expand there and hop back. Commands keep their order.
+    private void dispatchOnPlayerRegion(Player player, List<CommandTemplate> commands, String playerName, String streamer, UUID uuid) {
+        List<String> expanded = new ArrayList<>(commands.size());
+        for (CommandTemplate template : commands) {
+            String uuidValue = template.needsUuid() ? (uuid != null ? uuid.toString() : "unknown") : null;
+            expanded.add(template.expand(commandBuffer, playerName, streamer, uuidValue, null));
+        }
+        scheduler.runForPlayer(player, () -> {
+            for (int i = 0; i < expanded.size(); i++) {
+                if (!commands.get(i).needsPlaceholderApi()) continue;
+                try {
+                    expanded.set(i, PlaceholderAPI.setPlaceholders(player, expanded.get(i)));
+                } catch (Throwable t) {
+                    getLogger().log(Level.WARNING, "Failed to apply PlaceholderAPI placeholders to command: " + commands.get(i).raw(), t);
                 }
             }
+            scheduler.runGlobal(() -> dispatchAll(expanded));
+        }, () -> dispatchAll(expanded));
+    }
+
+    private void dispatchAll(List<String> cmds) {
+        for (String cmd : cmds) {
+            getLogger().info("Dispatching command from web request: /" + cmd);
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmd);
         }
-        return null;
+    }
+
+    // Safe to call from any thread; reads the current immutable index.
+    private String getNationForStreamer(String streamer) {
+        return settings.streamerNations.nationFor(streamer);
+    }
+
+    // Whether an action for this streamer should be accepted. In whitelist-only mode the nation is never used.
+    private boolean isKnownStreamer(String streamer) {
+        BridgeSettings s = settings;
+        return s.whitelistOnlyMode || !s.rejectUnknownStreamers || s.streamerNations.nationFor(streamer) != null;
     }
 
     private void handleTeamForPlayer(String playerName, UUID uuid, String streamer, String nation) {
-        if (disableBetterTeamsApi) {
+        if (settings.disableBetterTeamsApi) {
             runTeamAddCommand(playerName, nation);
+            rosterState.setMember(playerName, streamer, nation, true);
             return;
         }
 
@@ -550,16 +2186,19 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
             // Fallback to configured command if API failed or UUID unavailable
             runTeamAddCommand(playerName, nation);
         }
+        rosterState.setMember(playerName, streamer, nation, true);
     }
 
     private void handleTeamRemovalForPlayer(String playerName, UUID uuid, String streamer, String nation) {
-        if (disableBetterTeamsApi) {
+        if (settings.disableBetterTeamsApi) {
             runTeamRemoveCommand(playerName, nation);
+            rosterState.setMember(playerName, streamer, nation, false);
             return;
         }
 
         if (!doesNationExist(nation)) {
             getLogger().info("Nation '" + nation + "' does not exist for removal, skipping team remove for player " + playerName);
+            rosterState.setMember(playerName, streamer, nation, false);
             return;
         }
 
@@ -572,52 +2211,30 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
             // Fallback to configured command if API failed or UUID unavailable
             runTeamRemoveCommand(playerName, nation);
         }
+        rosterState.setMember(playerName, streamer, nation, false);
     }
 
     private boolean tryBetterTeamsAdd(String playerName, UUID uuid, String nationName) {
+        if (!betterTeams.isAvailable()) {
+            // API not present, will fall back to commands
+            if (debugMode) {
+                getLogger().warning("[DEBUG] BetterTeams API classes not found, falling back to commands.");
+            }
+            return false;
+        }
         try {
-            // Use BetterTeams Team + TeamPlayer + PlayerJoinTeamEvent as per official repo
-            Class<?> teamClass = Class.forName("com.booksaw.betterTeams.Team");
-            Class<?> teamPlayerClass = Class.forName("com.booksaw.betterTeams.TeamPlayer");
-            Class<?> playerRankClass = Class.forName("com.booksaw.betterTeams.PlayerRank");
-            Class<?> joinEventClass = Class.forName("com.booksaw.betterTeams.customEvents.PlayerJoinTeamEvent");
-
-            // Team team = Team.getTeam(nationName);
-            java.lang.reflect.Method getTeamMethod = teamClass.getMethod("getTeam", String.class);
-            Object team = getTeamMethod.invoke(null, nationName);
-            if (team == null) {
+            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(uuid);
+            Event event = betterTeams.createJoinEvent(offlinePlayer, nationName);
+            if (event == null) {
                 if (debugMode) {
                     getLogger().info("[DEBUG] BetterTeams API: team '" + nationName + "' not found");
                 }
                 return false;
             }
 
-            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(uuid);
-            if (offlinePlayer == null) {
-                return false;
-            }
-
-            // PlayerRank.DEFAULT
-            @SuppressWarnings("unchecked")
-            Object defaultRank = Enum.valueOf((Class<Enum>) playerRankClass, "DEFAULT");
-
-            // new TeamPlayer(OfflinePlayer, PlayerRank)
-            java.lang.reflect.Constructor<?> tpCtor = teamPlayerClass.getConstructor(OfflinePlayer.class, playerRankClass);
-            Object teamPlayer = tpCtor.newInstance(offlinePlayer, defaultRank);
-
-            // new PlayerJoinTeamEvent(Team, TeamPlayer)
-            java.lang.reflect.Constructor<?> eventCtor = joinEventClass.getConstructor(teamClass, teamPlayerClass);
-            Event event = (Event) eventCtor.newInstance(team, teamPlayer);
-
             Bukkit.getPluginManager().callEvent(event);
             getLogger().info("BetterTeams API: fired PlayerJoinTeamEvent for '" + playerName + "' in team '" + nationName + "'.");
             return true;
-        } catch (ClassNotFoundException e) {
-            // API not present, will fall back to commands
-            if (debugMode) {
-                getLogger().warning("[DEBUG] BetterTeams API classes not found, falling back to commands.");
-            }
-            return false;
         } catch (Exception e) {
             getLogger().log(Level.WARNING, "Failed to add player '" + playerName + "' to team '" + nationName + "' via BetterTeams API events.", e);
             return false;
@@ -625,44 +2242,25 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
     }
 
     private boolean tryBetterTeamsRemove(String playerName, UUID uuid, String nationName) {
+        if (!betterTeams.isAvailable()) {
+            if (debugMode) {
+                getLogger().warning("[DEBUG] BetterTeams API classes not found for removal, falling back to commands.");
+            }
+            return false;
+        }
         try {
-            Class<?> teamClass = Class.forName("com.booksaw.betterTeams.Team");
-            Class<?> teamPlayerClass = Class.forName("com.booksaw.betterTeams.TeamPlayer");
-            Class<?> playerRankClass = Class.forName("com.booksaw.betterTeams.PlayerRank");
-            Class<?> leaveEventClass = Class.forName("com.booksaw.betterTeams.customEvents.PlayerLeaveTeamEvent");
-
-            java.lang.reflect.Method getTeamMethod = teamClass.getMethod("getTeam", String.class);
-            Object team = getTeamMethod.invoke(null, nationName);
-            if (team == null) {
+            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(uuid);
+            Event event = betterTeams.createLeaveEvent(offlinePlayer, nationName);
+            if (event == null) {
                 if (debugMode) {
                     getLogger().info("[DEBUG] BetterTeams API: team '" + nationName + "' not found for removal");
                 }
                 return false;
             }
 
-            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(uuid);
-            if (offlinePlayer == null) {
-                return false;
-            }
-
-            // PlayerRank.DEFAULT (rank is mostly irrelevant for leave)
-            @SuppressWarnings("unchecked")
-            Object defaultRank = Enum.valueOf((Class<Enum>) playerRankClass, "DEFAULT");
-
-            java.lang.reflect.Constructor<?> tpCtor = teamPlayerClass.getConstructor(OfflinePlayer.class, playerRankClass);
-            Object teamPlayer = tpCtor.newInstance(offlinePlayer, defaultRank);
-
-            java.lang.reflect.Constructor<?> eventCtor = leaveEventClass.getConstructor(teamClass, teamPlayerClass);
-            Event event = (Event) eventCtor.newInstance(team, teamPlayer);
-
             Bukkit.getPluginManager().callEvent(event);
             getLogger().info("BetterTeams API: fired PlayerLeaveTeamEvent for '" + playerName + "' from team '" + nationName + "'.");
             return true;
-        } catch (ClassNotFoundException e) {
-            if (debugMode) {
-                getLogger().warning("[DEBUG] BetterTeams API classes not found for removal, falling back to commands.");
-            }
-            return false;
         } catch (Exception e) {
             getLogger().log(Level.WARNING, "Failed to remove player '" + playerName + "' from team '" + nationName + "' via BetterTeams API events.", e);
             return false;
@@ -673,26 +2271,21 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
         if (nationName == null || nationName.isEmpty()) return false;
 
         // If configured, do not block commands based on BetterTeams API checks
-        if (alwaysRunTeamCommands) {
+        if (settings.alwaysRunTeamCommands) {
             if (debugMode) {
                 getLogger().info("[DEBUG] always-run-team-commands=true, skipping BetterTeams API existence check for '" + nationName + "'");
             }
             return true;
         }
 
-        try {
-            // Use BetterTeams Team API from docs: Team.getTeam(String)
-            Class<?> teamClass = Class.forName("com.booksaw.betterTeams.Team");
-            java.lang.reflect.Method getTeamMethod = teamClass.getMethod("getTeam", String.class);
-            Object team = getTeamMethod.invoke(null, nationName);
-            return team != null;
-        } catch (ClassNotFoundException e) {
+        if (!betterTeams.isAvailable()) {
             // BetterTeams not present or API class not found
             getLogger().warning("BetterTeams API not found (com.booksaw.betterTeams.Team). Cannot verify nation existence.");
             return false;
-        } catch (NoSuchMethodException e) {
-            getLogger().log(Level.WARNING, "BetterTeams API method getTeam(String) not found.", e);
-            return false;
+        }
+
+        try {
+            return betterTeams.teamExists(nationName);
         } catch (Exception e) {
             getLogger().log(Level.WARNING, "Error while checking BetterTeams nation existence for '" + nationName + "'", e);
             return false;
@@ -700,30 +2293,32 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
     }
 
     private void runTeamAddCommand(String playerName, String nation) {
-        String template = getConfig().getString("team-add-command", "teamadmin add %player_name% %nation%");
-        String cmd = template
-                .replace("%player_name%", playerName)
-                .replace("%nation%", nation);
+        String cmd = settings.teamAddCommand.expand(commandBuffer, playerName, null, null, nation);
         getLogger().info("Dispatching BetterTeams ADD command from web request: /" + cmd);
         Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmd);
     }
 
     private void runTeamRemoveCommand(String playerName, String nation) {
-        String template = getConfig().getString("team-remove-command", "teamadmin remove %player_name% %nation%");
-        String cmd = template
-                .replace("%player_name%", playerName)
-                .replace("%nation%", nation);
+        String cmd = settings.teamRemoveCommand.expand(commandBuffer, playerName, null, null, nation);
         getLogger().info("Dispatching BetterTeams REMOVE command from web request: /" + cmd);
         Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmd);
     }
 
     private void queuePendingTeamAction(String playerName, UUID uuid, String streamer, String nation) {
         PendingTeamAction action = new PendingTeamAction(playerName, uuid, streamer, nation, System.currentTimeMillis());
-        pendingTeamActions.computeIfAbsent(nation, k -> new ArrayList<>()).add(action);
+        // One pending add per player and nation; a repeat request just refreshes it.
+        pendingTeamActions.computeIfAbsent(nation, k -> new LinkedHashMap<>()).put(OfflineQueue.key(playerName), action);
+        rosterState.setPending(playerName, streamer, nation, true);
+        savePendingTeamActions();
+        startPendingTask();
+    }
 
-        if (pendingTaskId == -1) {
-            // Check every 10 seconds
-            pendingTaskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(this, this::processPendingTeamActions, 20L * 10, 20L * 10);
+    private void startPendingTask() {
+        // Pending adds are saved, so the poll picks them up again after the next start.
+        if (pendingTask == null && !shuttingDown) {
+            // CreateTeamEvent normally releases actions straight away; this poll is only a fallback.
+            long period = 20L * settings.pendingNationPollSeconds;
+            pendingTask = scheduler.runGlobalTimer(this::processPendingTeamActions, period, period);
         }
     }
 
@@ -733,62 +2328,228 @@ public class NetworkBridgePlugin extends JavaPlugin implements Listener {
             return;
         }
 
-        Iterator<Map.Entry<String, List<PendingTeamAction>>> it = pendingTeamActions.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, List<PendingTeamAction>> entry = it.next();
-            String nation = entry.getKey();
-            if (!doesNationExist(nation)) {
-                continue;
-            }
+        for (String nation : new ArrayList<>(pendingTeamActions.keySet())) {
+            releasePendingTeamActions(nation);
+        }
+
+        if (pendingTeamActions.isEmpty()) {
+            cancelPendingTask();
+        }
+    }
+
+    // Hands all pending adds for the nation to the action queue if the nation exists now.
+    private void releasePendingTeamActions(String nation) {
+        if (!doesNationExist(nation)) {
+            return;
+        }
+        Map<String, PendingTeamAction> actions = pendingTeamActions.remove(nation);
+        if (actions == null) return;
 
-            List<PendingTeamAction> actions = entry.getValue();
-            for (PendingTeamAction action : actions) {
+        for (PendingTeamAction action : actions.values()) {
+            actionDrainer.submit(laneFor(action.streamer), false, () -> {
                 runTeamAddCommand(action.playerName, nation);
+                rosterState.setPending(action.playerName, action.streamer, nation, false);
+                rosterState.setMember(action.playerName, action.streamer, nation, true);
+            });
+        }
+        getLogger().info("Nation '" + nation + "' now exists, releasing " + actions.size() + " pending team add(s).");
+        savePendingTeamActions();
+    }
+
+    private void loadPendingTeamActions() {
+        pendingTeamActions.clear();
+        int count = 0;
+        for (PendingTeamAction action : queueStore.loadPendingTeamActions()) {
+            if (pendingTeamActions.computeIfAbsent(action.nation, k -> new LinkedHashMap<>())
+                    .put(OfflineQueue.key(action.playerName), action) == null) {
+                count++;
             }
-            it.remove();
         }
+        pendingTeamActionCount = count;
+    }
 
-        if (pendingTeamActions.isEmpty()) {
-            cancelPendingTask();
+    private void savePendingTeamActions() {
+        List<PendingTeamAction> snapshot = new ArrayList<>();
+        for (Map<String, PendingTeamAction> actions : pendingTeamActions.values()) {
+            snapshot.addAll(actions.values());
         }
+        pendingTeamActionCount = snapshot.size();
+        queueStore.savePendingTeamActions(snapshot);
     }
 
-    private void cancelPendingTask() {
-        if (pendingTaskId != -1) {
-            Bukkit.getScheduler().cancelTask(pendingTaskId);
-            pendingTaskId = -1;
+    private void loadRosterState() {
+        long savedVersion = 0L;
+        List<SavedMember> members = List.of();
+        if (rosterFile.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(rosterFile), StandardCharsets.UTF_8)) {
+                SavedRoster saved = gson.fromJson(reader, SavedRoster.class);
+                if (saved != null) {
+                    savedVersion = saved.version;
+                    if (saved.members != null) members = saved.members;
+                }
+            } catch (Exception e) {
+                getLogger().log(Level.WARNING, "Failed to load roster state from JSON.", e);
+            }
+        }
+
+        // Starting at the wall clock keeps versions increasing across restarts even if the last save was lost,
+        // as long as the bridge averages fewer than 1000 changes per second.
+        RosterState state = new RosterState(settings.stateChangeLogSize,
+                Math.max(savedVersion, System.currentTimeMillis()));
+        for (SavedMember member : members) {
+            if (member == null || member.playerName == null || member.streamer == null) continue;
+            state.setMember(member.playerName, member.streamer, member.nation, true);
+        }
+        for (OfflinePlayer player : Bukkit.getWhitelistedPlayers()) {
+            if (player.getName() != null) {
+                state.setWhitelisted(player.getName(), true);
+            }
+        }
+        // A database-backed queue is read from the store by GET /state instead of being copied here.
+        if (queueStore.inMemory()) {
+            try {
+                queueStore.forEachPending(null, state::setQueued);
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Failed to read queued team changes for the roster state.", e);
+            }
+        }
+        for (Map<String, PendingTeamAction> actions : pendingTeamActions.values()) {
+            for (PendingTeamAction action : actions.values()) {
+                state.setPending(action.playerName, action.streamer, action.nation, true);
+            }
         }
+        rosterState = state;
+        savedRosterVersion = -1L;
     }
 
-    private static final class PendingTeamAction {
-        private final String playerName;
-        private final UUID uuid;
-        private final String streamer;
-        private final String nation;
-        private final long createdAt;
+    // Joined names from player-uuids.json first, so they win over the server's user cache.
+    private void loadPlayerUuids() {
+        try {
+            int joined = playerUuids.loadJoined(playerUuidsFile.toPath());
+            int cached = playerUuids.loadUserCache(Path.of("usercache.json"));
+            if (debugMode) {
+                getLogger().info("[DEBUG] Loaded " + joined + " player UUIDs from " + playerUuidsFile.getName() + " and " + cached + " from usercache.json");
+            }
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING, "Failed to load player UUIDs; names will be resolved as players join.", e);
+        }
+        // Covers /reload, where players are already online and won't join again.
+        for (Player online : Bukkit.getOnlinePlayers()) {
+            playerUuids.joined(online.getName(), online.getUniqueId());
+        }
+        savedPlayerUuidsVersion = playerUuids.version();
+    }
 
-        private PendingTeamAction(String playerName, UUID uuid, String streamer, String nation, long createdAt) {
-            this.playerName = playerName;
-            this.uuid = uuid;
-            this.streamer = streamer;
-            this.nation = nation;
-            this.createdAt = createdAt;
+    // Disk writes off the main thread, or right here once onDisable has started.
+    private void runAsync(Runnable task) {
+        if (shuttingDown) {
+            task.run();
+        } else {
+            scheduler.runAsync(task);
+        }
+    }
+
+    // Writes player-uuids.json off the main thread if a join taught us something new.
+    private void savePlayerUuids() {
+        if (playerUuidsFile == null) return;
+        String json = playerUuidsJson();
+        if (json == null) return;
+        runAsync(() -> writePlayerUuids(json));
+    }
+
+    // Null if nothing changed since the last save.
+    private String playerUuidsJson() {
+        long version = playerUuids.version();
+        if (version == savedPlayerUuidsVersion) return null;
+        savedPlayerUuidsVersion = version;
+        return playerUuids.toJson();
+    }
+
+    private void writePlayerUuids(String json) {
+        try {
+            long start = System.nanoTime();
+            long bytes = QueueJournal.writeAtomically(playerUuidsFile.toPath(), json);
+            metrics.recordPersist("uuids", System.nanoTime() - start, bytes);
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING, "Failed to save player UUIDs to JSON.", e);
+        }
+    }
+
+    // Writes roster-state.json off the main thread if anything changed since the last save.
+    private void saveRosterState() {
+        if (rosterFile == null) return;
+        String json = rosterStateJson();
+        if (json == null) return;
+        runAsync(() -> writeRosterState(json));
+    }
+
+    // Null if the state has not changed since it was last saved.
+    private String rosterStateJson() {
+        RosterState.Snapshot snapshot = rosterState.snapshot();
+        if (snapshot.version == savedRosterVersion) return null;
+        savedRosterVersion = snapshot.version;
+        SavedRoster saved = new SavedRoster();
+        saved.version = snapshot.version;
+        saved.members = new ArrayList<>();
+        for (RosterState.Fact fact : snapshot.facts) {
+            if (fact.kind != RosterState.Kind.MEMBER) continue;
+            SavedMember member = new SavedMember();
+            member.playerName = fact.playerName;
+            member.streamer = fact.streamer;
+            member.nation = fact.nation;
+            saved.members.add(member);
+        }
+        return gson.toJson(saved);
+    }
+
+    private void writeRosterState(String json) {
+        try {
+            long start = System.nanoTime();
+            long bytes = QueueJournal.writeAtomically(rosterFile.toPath(), json);
+            metrics.recordPersist("roster", System.nanoTime() - start, bytes);
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING, "Failed to save roster state to JSON.", e);
+        }
+    }
+
+    private void cancelPendingTask() {
+        if (pendingTask != null) {
+            pendingTask.cancel();
+            pendingTask = null;
         }
     }
 
-    private static final class QueuedTeamChange {
+    // roster-state.json: only memberships need saving, the rest is rebuilt from where it already lives.
+    private static final class SavedRoster {
+        private long version;
+        private List<SavedMember> members;
+    }
+
+    private static final class SavedMember {
         private String playerName;
         private String streamer;
-        private String actionType; // "add" or "remove"
-        private long createdAt;
-        private boolean applied;
+        private String nation;
+    }
+
+    private static final class PreparedAction {
+        private final String playerName;
+        private final String streamer;
+        private final String nation;
+        private final String actionType;
+        private final UUID uuid;
+        private final List<CommandTemplate> commands;
+        private final boolean papiAvailable;
+        // Set by trackAction when a client may poll for this action; completed after it was applied.
+        private CompletableFuture<Void> completion;
 
-        private QueuedTeamChange(String playerName, String streamer, String actionType, long createdAt) {
+        private PreparedAction(String playerName, String streamer, String nation, String actionType, UUID uuid, List<CommandTemplate> commands, boolean papiAvailable) {
             this.playerName = playerName;
             this.streamer = streamer;
+            this.nation = nation;
             this.actionType = actionType;
-            this.createdAt = createdAt;
-            this.applied = false;
+            this.uuid = uuid;
+            this.commands = commands;
+            this.papiAvailable = papiAvailable;
         }
     }
 }
@@ -0,0 +1,949 @@
+package com.deehain.smp.networkbridge;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selector-based HTTP/1.1 listener behind the same {@link HttpServer} API as the JDK server, used when
+ * {@code transport} is "nio".
+ *
+ * A fixed number of event-loop threads own every socket: they accept, read through a direct buffer,
+ * frame requests and write responses. Connections are kept alive and pipelined requests are answered
+ * in order. Only complete requests are handed to the context's filters and handler, which run on the
+ * configured executor exactly as with the JDK server, so idle or slow clients never hold a thread.
+ *
+ * Request bodies must carry a Content-Length (chunked uploads get 411). Responses are buffered in full
+ * and always sent with a Content-Length. A context's {@link Authenticator} runs before its filters, as
+ * with the JDK server.
+ */
+final class NioHttpServer extends HttpServer {
+
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+    private static final int INITIAL_INPUT_BYTES = 2048;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000L;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final int eventLoopCount;
+    private final int maxBodyBytes;
+    private final long idleTimeoutMillis;
+    private final Logger logger;
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private ServerSocketChannel serverChannel;
+    private EventLoop[] loops;
+    private Executor executor;
+    private volatile boolean running;
+    // Only touched by the accepting loop.
+    private int nextLoop;
+
+    private NioHttpServer(int eventLoops, int maxBodyBytes, long idleTimeoutMillis, Logger logger) {
+        this.eventLoopCount = Math.max(1, eventLoops);
+        this.maxBodyBytes = Math.max(0, maxBodyBytes);
+        this.idleTimeoutMillis = Math.max(1000L, idleTimeoutMillis);
+        this.logger = logger;
+    }
+
+    /**
+     * Creates a server bound to {@code address}. Request bodies larger than {@code maxBodyBytes} are
+     * refused with 413 before they are buffered; idle keep-alive connections are closed after
+     * {@code idleTimeoutMillis}.
+     */
+    static NioHttpServer create(InetSocketAddress address, int backlog, int eventLoops, int maxBodyBytes,
+                                long idleTimeoutMillis, Logger logger) throws IOException {
+        NioHttpServer server = new NioHttpServer(eventLoops, maxBodyBytes, idleTimeoutMillis, logger);
+        server.bind(address, backlog);
+        return server;
+    }
+
+    /** Connections currently open, idle keep-alive ones included. */
+    int openConnections() {
+        return openConnections.get();
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new BindException("NioHttpServer is already bound");
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(address, backlog);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+        serverChannel = channel;
+    }
+
+    @Override
+    public void start() {
+        if (serverChannel == null) {
+            throw new IllegalStateException("NioHttpServer is not bound");
+        }
+        if (loops != null) {
+            throw new IllegalStateException("NioHttpServer already started");
+        }
+        if (executor == null) {
+            // Same default as the JDK server: handlers run on the dispatching thread.
+            executor = Runnable::run;
+        }
+        EventLoop[] created = new EventLoop[eventLoopCount];
+        try {
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new EventLoop(i);
+            }
+            serverChannel.register(created[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            for (EventLoop loop : created) {
+                if (loop != null) closeQuietly(loop.selector);
+            }
+            throw new UncheckedIOException(e);
+        }
+        loops = created;
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Stops accepting, waits up to {@code delay} seconds for requests already handed to a handler to be
+     * answered, then closes every connection and stops the event loops.
+     */
+    @Override
+    public void stop(int delay) {
+        closeQuietly(serverChannel);
+        if (loops == null) return;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.max(0, delay));
+        while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(20L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        running = false;
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        for (EventLoop loop : loops) {
+            try {
+                loop.thread.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        if (loops != null) {
+            throw new IllegalStateException("server already started");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Illegal value for path or protocol");
+        }
+        synchronized (contexts) {
+            for (Context context : contexts) {
+                if (context.path.equals(path)) {
+                    throw new IllegalArgumentException("cannot add context to list");
+                }
+            }
+            Context context = new Context(path, handler);
+            contexts.add(context);
+            return context;
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path) {
+        return createContext(path, null);
+    }
+
+    @Override
+    public void removeContext(String path) {
+        synchronized (contexts) {
+            if (!contexts.removeIf(context -> context.path.equals(path))) {
+                throw new IllegalArgumentException("cannot remove element from list");
+            }
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        removeContext(context.getPath());
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Longest registered path that prefixes the request path, like the JDK server.
+    private Context findContext(String path) {
+        Context best = null;
+        for (Context context : contexts) {
+            if (path.startsWith(context.path) && (best == null || context.path.length() > best.path.length())) {
+                best = context;
+            }
+        }
+        return best;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String reason(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 409 -> "Conflict";
+            case 411 -> "Length Required";
+            case 412 -> "Precondition Failed";
+            case 413 -> "Content Too Large";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            case 505 -> "HTTP Version Not Supported";
+            default -> "";
+        };
+    }
+
+    // Bridge-style JSON error for requests answered by the transport itself.
+    private static ByteBuffer errorResponse(int status, String error, boolean close) {
+        byte[] body = ("{\"ok\":false,\"error\":\"" + error + "\"}").getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status + ' ' + reason(status) + "\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + (close ? "Connection: close\r\n" : "")
+                + "\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+        return ByteBuffer.allocate(headBytes.length + body.length).put(headBytes).put(body).flip();
+    }
+
+    private static boolean hasToken(String headerValue, String token) {
+        if (headerValue == null) return false;
+        for (String part : headerValue.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    private final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Thread thread;
+        // Shared by every connection on this loop for socket reads and writes.
+        private final ByteBuffer io = ByteBuffer.allocateDirect(IO_BUFFER_BYTES);
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "bridge-nio-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /** Runs {@code task} on this loop's thread. */
+        private void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastSweep = System.currentTimeMillis();
+            try {
+                while (running) {
+                    selector.select(SWEEP_INTERVAL_MILLIS);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isWritable()) connection.flush();
+                            if (key.isValid() && key.isReadable()) connection.read();
+                        } catch (IOException | CancelledKeyException e) {
+                            connection.close();
+                        }
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - lastSweep >= SWEEP_INTERVAL_MILLIS) {
+                        sweep(now);
+                        lastSweep = now;
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    logger.log(Level.WARNING, "HTTP event loop " + thread.getName() + " failed.", e);
+                }
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection connection) {
+                        connection.close();
+                    } else {
+                        closeQuietly(key.channel());
+                    }
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void accept() {
+            while (true) {
+                SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                } catch (IOException e) {
+                    // E.g. out of file descriptors; the pending connection stays in the backlog.
+                    logger.log(Level.WARNING, "Failed to accept HTTP connection.", e);
+                    return;
+                }
+                if (channel == null) return;
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                    continue;
+                }
+                EventLoop target = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                if (target == this) {
+                    register(channel);
+                } else {
+                    target.execute(() -> target.register(channel));
+                }
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                openConnections.incrementAndGet();
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+
+        // Closes connections that sat idle, or took too long to send one request, for the idle timeout.
+        private void sweep(long now) {
+            for (SelectionKey key : selector.keys()) {
+                if (!(key.attachment() instanceof Connection connection) || connection.dispatched) continue;
+                boolean idle = now - connection.lastActiveAt > idleTimeoutMillis;
+                boolean slowRequest = connection.inLength > 0 && now - connection.requestStartedAt > idleTimeoutMillis;
+                if (idle || slowRequest) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /** Per-socket state. Only ever touched on its event loop's thread. */
+    private final class Connection {
+
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final InetSocketAddress remoteAddress;
+        private final InetSocketAddress localAddress;
+        private SelectionKey key;
+
+        private byte[] in = new byte[INITIAL_INPUT_BYTES];
+        private int inLength;
+        // Where to resume looking for the end of the header block.
+        private int scanFrom;
+        // Parsed head of a request whose body has not fully arrived yet.
+        private Exchange pending;
+        private boolean continueSent;
+
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        // A request is with a handler; input is left unread until its response is queued.
+        private boolean dispatched;
+        private boolean closeAfterWrite;
+        private boolean closed;
+        private long lastActiveAt;
+        private long requestStartedAt;
+
+        private Connection(EventLoop loop, SocketChannel channel) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+            this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+            this.lastActiveAt = System.currentTimeMillis();
+        }
+
+        private void read() throws IOException {
+            ByteBuffer io = loop.io;
+            io.clear();
+            int n = channel.read(io);
+            if (n < 0) {
+                if (out.isEmpty()) {
+                    close();
+                } else {
+                    // Peer finished sending; still deliver what is already queued.
+                    closeAfterWrite = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                return;
+            }
+            if (n == 0) return;
+            long now = System.currentTimeMillis();
+            if (inLength == 0) {
+                requestStartedAt = now;
+            }
+            lastActiveAt = now;
+            if (in.length < inLength + n) {
+                in = Arrays.copyOf(in, Math.max(inLength + n, in.length * 2));
+            }
+            io.flip();
+            io.get(in, inLength, n);
+            inLength += n;
+            processInput();
+        }
+
+        // Frames and dispatches buffered requests, one at a time so responses keep request order.
+        private void processInput() throws IOException {
+            while (!dispatched && !closeAfterWrite && !closed) {
+                if (pending == null) {
+                    skipLeadingLineBreaks();
+                    int headerEnd = findHeaderEnd();
+                    if (headerEnd < 0) {
+                        if (inLength > MAX_HEADER_BYTES) {
+                            reject(431, "headers_too_large");
+                        }
+                        return;
+                    }
+                    pending = parseHead(headerEnd);
+                    if (pending == null) return;
+                }
+                int end = pending.bodyStart + pending.bodyLength;
+                if (inLength < end) {
+                    if (pending.expectContinue && !continueSent) {
+                        continueSent = true;
+                        out.add(ByteBuffer.wrap(CONTINUE));
+                        flush();
+                    }
+                    return;
+                }
+                Exchange exchange = pending;
+                pending = null;
+                continueSent = false;
+                exchange.requestBody = new ByteArrayInputStream(Arrays.copyOfRange(in, exchange.bodyStart, end));
+                consume(end);
+                dispatch(exchange);
+            }
+        }
+
+        private void skipLeadingLineBreaks() {
+            int skip = 0;
+            while (skip < inLength && (in[skip] == '\r' || in[skip] == '\n')) {
+                skip++;
+            }
+            if (skip > 0) consume(skip);
+        }
+
+        // Index just past the blank line ending the header block, or -1 if it has not arrived yet.
+        private int findHeaderEnd() {
+            for (int i = Math.max(scanFrom, 3); i < inLength; i++) {
+                if (in[i] == '\n' && in[i - 1] == '\r' && in[i - 2] == '\n' && in[i - 3] == '\r') {
+                    return i + 1;
+                }
+            }
+            scanFrom = inLength;
+            return -1;
+        }
+
+        private void consume(int count) {
+            inLength -= count;
+            System.arraycopy(in, count, in, 0, inLength);
+            scanFrom = 0;
+            if (inLength > 0) {
+                requestStartedAt = System.currentTimeMillis();
+            } else if (in.length > IO_BUFFER_BYTES) {
+                // Don't keep a large body's buffer around on an idle keep-alive connection.
+                in = new byte[INITIAL_INPUT_BYTES];
+            }
+        }
+
+        private Exchange parseHead(int headerEnd) throws IOException {
+            String[] lines = new String(in, 0, headerEnd - 4, StandardCharsets.ISO_8859_1).split("\r\n", -1);
+            String[] requestLine = lines[0].split(" ", -1);
+            if (requestLine.length != 3) {
+                reject(400, "bad_request");
+                return null;
+            }
+            String protocol = requestLine[2];
+            if (!protocol.startsWith("HTTP/1.")) {
+                reject(505, "unsupported_version");
+                return null;
+            }
+            URI uri;
+            Headers headers = new Headers();
+            try {
+                uri = new URI(requestLine[1]);
+                for (int i = 1; i < lines.length; i++) {
+                    String line = lines[i];
+                    int colon = line.indexOf(':');
+                    if (colon <= 0 || line.charAt(0) == ' ' || line.charAt(0) == '\t') {
+                        reject(400, "bad_request");
+                        return null;
+                    }
+                    headers.add(line.substring(0, colon), line.substring(colon + 1).trim());
+                }
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                reject(400, "bad_request");
+                return null;
+            }
+            if (uri.getRawPath() == null) {
+                reject(400, "bad_request");
+                return null;
+            }
+            if (headers.containsKey("Transfer-Encoding")) {
+                reject(411, "length_required");
+                return null;
+            }
+
+            long bodyLength = 0L;
+            List<String> lengths = headers.get("Content-Length");
+            if (lengths != null) {
+                try {
+                    bodyLength = Long.parseLong(lengths.get(0));
+                    for (String value : lengths) {
+                        // Conflicting lengths would let the next request be framed differently by a proxy.
+                        if (bodyLength < 0 || Long.parseLong(value) != bodyLength) {
+                            reject(400, "bad_request");
+                            return null;
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    reject(400, "bad_request");
+                    return null;
+                }
+                if (bodyLength > maxBodyBytes) {
+                    reject(413, "body_too_large");
+                    return null;
+                }
+            }
+
+            String connectionHeader = headers.getFirst("Connection");
+            boolean keepAlive = "HTTP/1.0".equals(protocol)
+                    ? hasToken(connectionHeader, "keep-alive")
+                    : !hasToken(connectionHeader, "close");
+            Exchange exchange = new Exchange(this, requestLine[0], uri, protocol, headers, keepAlive);
+            exchange.bodyStart = headerEnd;
+            exchange.bodyLength = (int) bodyLength;
+            exchange.expectContinue = hasToken(headers.getFirst("Expect"), "100-continue");
+            return exchange;
+        }
+
+        private void dispatch(Exchange exchange) throws IOException {
+            Context context = findContext(exchange.uri.getPath() != null ? exchange.uri.getPath() : exchange.uri.getRawPath());
+            if (context == null || context.handler == null) {
+                out.add(errorResponse(404, "not_found", !exchange.keepAlive));
+                closeAfterWrite = !exchange.keepAlive;
+                flush();
+                return;
+            }
+            exchange.context = context;
+            dispatched = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            inFlight.incrementAndGet();
+            try {
+                executor.execute(exchange::run);
+            } catch (RejectedExecutionException e) {
+                inFlight.decrementAndGet();
+                dispatched = false;
+                reject(503, "unavailable");
+            }
+        }
+
+        /** Answers without reaching a handler and closes the connection once the answer is written. */
+        private void reject(int status, String error) throws IOException {
+            pending = null;
+            closeAfterWrite = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            out.add(errorResponse(status, error, true));
+            flush();
+        }
+
+        /** Called on the loop thread once a handler has produced its response. */
+        private void complete(ByteBuffer response, boolean close) {
+            if (closed) return;
+            dispatched = false;
+            lastActiveAt = System.currentTimeMillis();
+            requestStartedAt = lastActiveAt;
+            out.add(response);
+            if (close) closeAfterWrite = true;
+            try {
+                flush();
+                if (!closed && !closeAfterWrite) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                    // Pipelined requests may already be buffered.
+                    processInput();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer io = loop.io;
+            while (!out.isEmpty()) {
+                ByteBuffer next = out.peek();
+                int length = Math.min(next.remaining(), io.capacity());
+                io.clear();
+                io.put(0, next, next.position(), length).limit(length);
+                int written = channel.write(io);
+                if (written > 0) {
+                    next.position(next.position() + written);
+                    lastActiveAt = System.currentTimeMillis();
+                }
+                if (written < length) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (!next.hasRemaining()) out.poll();
+            }
+            if (closeAfterWrite) {
+                close();
+                return;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        private void close() {
+            if (closed) return;
+            closed = true;
+            if (key != null) key.cancel();
+            closeQuietly(channel);
+            openConnections.decrementAndGet();
+        }
+    }
+
+    private final class Context extends HttpContext {
+
+        private final String path;
+        private final List<Filter> filters = new CopyOnWriteArrayList<>();
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private volatile HttpHandler handler;
+        private volatile Authenticator authenticator;
+
+        private Context(String path, HttpHandler handler) {
+            this.path = path;
+            this.handler = handler;
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            return NioHttpServer.this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator auth) {
+            Authenticator previous = authenticator;
+            authenticator = auth;
+            return previous;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+
+    /** One request/response. Built on the loop thread, handled on the executor, answered back on the loop. */
+    private final class Exchange extends HttpExchange {
+
+        private final Connection connection;
+        private final String method;
+        private final URI uri;
+        private final String protocol;
+        private final Headers requestHeaders;
+        private final Headers responseHeaders = new Headers();
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final ResponseBuffer responseBuffer = new ResponseBuffer();
+        private boolean keepAlive;
+        private Context context;
+        private int bodyStart;
+        private int bodyLength;
+        private boolean expectContinue;
+
+        private InputStream requestBody;
+        private OutputStream responseBody = responseBuffer;
+        private int responseCode = -1;
+        private HttpPrincipal principal;
+        private boolean noBody;
+        private boolean closed;
+
+        private Exchange(Connection connection, String method, URI uri, String protocol, Headers requestHeaders, boolean keepAlive) {
+            this.connection = connection;
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.requestHeaders = requestHeaders;
+            this.keepAlive = keepAlive;
+        }
+
+        private void run() {
+            try {
+                if (!authenticate()) return;
+                new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(this);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Unhandled error in HTTP handler for " + context.path, e);
+                keepAlive = false;
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return context;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) return;
+            closed = true;
+            if (responseCode < 0) {
+                // Handler returned without answering.
+                responseCode = 500;
+                keepAlive = false;
+            }
+            ByteBuffer response = encodeResponse();
+            boolean close = !keepAlive;
+            inFlight.decrementAndGet();
+            connection.loop.execute(() -> connection.complete(response, close));
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return responseBody;
+        }
+
+        @Override
+        public synchronized void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+            if (responseCode >= 0) {
+                throw new IOException("headers already sent");
+            }
+            responseCode = rCode;
+            noBody = responseLength == -1 || rCode == 204 || rCode == 304 || "HEAD".equals(method);
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return connection.remoteAddress;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return connection.localAddress;
+        }
+
+        @Override
+        public String getProtocol() {
+            return protocol;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void setStreams(InputStream i, OutputStream o) {
+            if (i != null) requestBody = i;
+            if (o != null) responseBody = o;
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return principal;
+        }
+
+        // Runs the context's authenticator, if any. On failure or retry the status it asked for has been sent.
+        private boolean authenticate() throws IOException {
+            Authenticator authenticator = context.authenticator;
+            if (authenticator == null) return true;
+            Authenticator.Result result = authenticator.authenticate(this);
+            if (result instanceof Authenticator.Success success) {
+                principal = success.getPrincipal();
+                return true;
+            }
+            int status = result instanceof Authenticator.Retry retry ? retry.getResponseCode()
+                    : result instanceof Authenticator.Failure failure ? failure.getResponseCode() : 401;
+            sendResponseHeaders(status, -1);
+            return false;
+        }
+
+        private ByteBuffer encodeResponse() {
+            int bodyBytes = noBody ? 0 : responseBuffer.size();
+            StringBuilder sb = new StringBuilder(160);
+            sb.append("HTTP/1.1 ").append(responseCode).append(' ').append(reason(responseCode)).append("\r\n");
+            sb.append("Date: ").append(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC))).append("\r\n");
+            for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+                String name = header.getKey();
+                if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Transfer-Encoding")
+                        || name.equalsIgnoreCase("Connection") || name.equalsIgnoreCase("Date")) {
+                    continue;
+                }
+                for (String value : header.getValue()) {
+                    sb.append(name).append(": ").append(value).append("\r\n");
+                }
+            }
+            if (responseCode != 204 && responseCode != 304) {
+                sb.append("Content-Length: ").append(bodyBytes).append("\r\n");
+            }
+            if (!keepAlive) {
+                sb.append("Connection: close\r\n");
+            }
+            sb.append("\r\n");
+            byte[] head = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+            ByteBuffer response = ByteBuffer.allocate(head.length + bodyBytes);
+            response.put(head);
+            responseBuffer.copyTo(response, bodyBytes);
+            return response.flip();
+        }
+
+        /** Collects the response body; closing it completes the exchange, as with the JDK server. */
+        private final class ResponseBuffer extends ByteArrayOutputStream {
+
+            private ResponseBuffer() {
+                super(256);
+            }
+
+            private synchronized void copyTo(ByteBuffer target, int length) {
+                target.put(buf, 0, length);
+            }
+
+            @Override
+            public void close() {
+                Exchange.this.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-memory offline change queue: unapplied changes indexed by lower-cased player name, plus
+ * the applied changes still inside the history retention window. Persistence is the caller's
+ * job; {@link #snapshot()} and {@link #restore(QueuedTeamChange, Set, long)} are the two ends of it.
+ *
+ * Safe for concurrent use. A player's list is only replaced or removed through the map's atomic
+ * operations, so {@link #enqueue} never appends to a list that {@link #take} has already handed out.
+ */
+final class OfflineQueue {
+
+    private final Map<String, List<QueuedTeamChange>> pending = new ConcurrentHashMap<>();
+    // Oldest first.
+    private final Deque<QueuedTeamChange> history = new ConcurrentLinkedDeque<>();
+    private final AtomicLong seq = new AtomicLong();
+
+    static String key(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
+    }
+
+    void clear() {
+        pending.clear();
+        history.clear();
+        seq.set(0L);
+    }
+
+    /** Queues a new change with the next sequence number, superseding any older change for the same streamer. */
+    QueuedTeamChange enqueue(String playerName, String streamer, String actionType, long now) {
+        return enqueue(playerName, null, streamer, actionType, now);
+    }
+
+    /** Same, recording the player's UUID if it is already known ({@code uuid} may be null). */
+    QueuedTeamChange enqueue(String playerName, UUID uuid, String streamer, String actionType, long now) {
+        QueuedTeamChange change = new QueuedTeamChange(playerName, streamer, actionType, now);
+        change.uuid = uuid;
+        change.seq = seq.incrementAndGet();
+        pending.compute(key(playerName), (k, changes) -> {
+            List<QueuedTeamChange> list = changes != null ? changes : new CopyOnWriteArrayList<>();
+            coalesceInto(list, change);
+            return list;
+        });
+        return change;
+    }
+
+    boolean hasChanges(String playerName) {
+        return pending.containsKey(key(playerName));
+    }
+
+    /** Removes and returns the player's unapplied changes in arrival order, or null if there are none. */
+    List<QueuedTeamChange> take(String playerName) {
+        return pending.remove(key(playerName));
+    }
+
+    void markApplied(QueuedTeamChange change, long at) {
+        change.applied = true;
+        change.appliedAt = at;
+        history.addLast(change);
+    }
+
+    /**
+     * Adds a loaded change to the index or history. Changes already seen (same seq) are ignored,
+     * which keeps journal replay idempotent; applied changes older than {@code historyCutoff} are dropped.
+     */
+    void restore(QueuedTeamChange change, Set<Long> knownSeqs, long historyCutoff) {
+        if (change == null || change.playerName == null) return;
+        if (change.seq == 0L) {
+            change.seq = seq.incrementAndGet();
+        } else {
+            seq.accumulateAndGet(change.seq, Math::max);
+        }
+        if (!knownSeqs.add(change.seq)) return;
+
+        if (!change.applied) {
+            coalesceInto(pending.computeIfAbsent(key(change.playerName), k -> new CopyOnWriteArrayList<>()), change);
+        } else if (change.appliedAt >= historyCutoff) {
+            history.addLast(change);
+        }
+    }
+
+    /** Replays an "apply" journal record: moves the matching change from the index to history. */
+    void replayApplied(String playerName, long changeSeq, long at) {
+        if (playerName == null) return;
+        String key = key(playerName);
+        List<QueuedTeamChange> changes = pending.get(key);
+        if (changes == null) return;
+        for (QueuedTeamChange change : changes) {
+            if (change.seq == changeSeq) {
+                changes.remove(change);
+                markApplied(change, at);
+                break;
+            }
+        }
+        if (changes.isEmpty()) {
+            pending.remove(key);
+        }
+    }
+
+    /** Drops applied changes older than {@code cutoff}. Returns true if anything was removed. */
+    boolean pruneHistory(long cutoff) {
+        boolean removed = false;
+        QueuedTeamChange oldest;
+        while ((oldest = history.peekFirst()) != null && oldest.appliedAt < cutoff) {
+            history.pollFirst();
+            removed = true;
+        }
+        return removed;
+    }
+
+    /** Every unapplied change, each player's in arrival order, without copying the queue. */
+    void forEachPending(Consumer<QueuedTeamChange> consumer) {
+        for (List<QueuedTeamChange> changes : pending.values()) {
+            changes.forEach(consumer);
+        }
+    }
+
+    /** History followed by every unapplied change; the form written to queued-team-changes.json. */
+    List<QueuedTeamChange> snapshot() {
+        List<QueuedTeamChange> snapshot = new ArrayList<>(history);
+        for (List<QueuedTeamChange> changes : pending.values()) {
+            snapshot.addAll(changes);
+        }
+        return snapshot;
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    int playerCount() {
+        return pending.size();
+    }
+
+    long pendingCount() {
+        long total = 0L;
+        for (List<QueuedTeamChange> changes : pending.values()) {
+            total += changes.size();
+        }
+        return total;
+    }
+
+    int historySize() {
+        return history.size();
+    }
+
+    // Only the newest change per (player, streamer) is worth applying: add -> remove -> add is just an add.
+    // Replay goes through here too, so the journal needs no separate record for superseded changes.
+    private static void coalesceInto(List<QueuedTeamChange> playerChanges, QueuedTeamChange change) {
+        playerChanges.removeIf(existing -> existing.streamer == null
+                ? change.streamer == null
+                : existing.streamer.equalsIgnoreCase(change.streamer));
+        playerChanges.add(change);
+    }
+}
@@ -0,0 +1,20 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.UUID;
+
+/** A team add waiting for its nation to be created. Serialized as-is by Gson. */
+final class PendingTeamAction {
+    String playerName;
+    UUID uuid;
+    String streamer;
+    String nation;
+    long createdAt;
+
+    PendingTeamAction(String playerName, UUID uuid, String streamer, String nation, long createdAt) {
+        this.playerName = playerName;
+        this.uuid = uuid;
+        this.streamer = streamer;
+        this.nation = nation;
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,173 @@
+package com.deehain.smp.networkbridge;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bridge-owned player name to UUID index, so request threads can resolve players without touching
+ * server state or doing profile lookups. Seeded at startup from the server's usercache.json and the
+ * bridge's own player-uuids.json, and kept current from joins. Joins and quits also tell it who is
+ * online, which request threads use to decide between applying an action and queueing it.
+ *
+ * Lookups are plain {@link ConcurrentHashMap} reads. Only names learned from joins are persisted:
+ * usercache.json is re-read on every start anyway, and a join is the only source that is sure who
+ * owns a name right now, so those entries win over the server cache when both are loaded.
+ */
+final class PlayerUuidIndex {
+
+    // Lower-cased name -> entry.
+    private final Map<String, Entry> byName = new ConcurrentHashMap<>();
+    // Lower-cased name -> entry, for names seen joining; the part that is persisted.
+    private final Map<String, Entry> joined = new ConcurrentHashMap<>();
+    // Lower-cased names of players online right now.
+    private final Set<String> online = ConcurrentHashMap.newKeySet();
+    private final AtomicLong version = new AtomicLong();
+
+    /** UUID last seen for the name (case-insensitive), or null if the bridge has never seen it. */
+    UUID get(String playerName) {
+        Entry entry = byName.get(key(playerName));
+        return entry != null ? entry.uuid : null;
+    }
+
+    /** Whether the player (case-insensitive) has joined and not quit since. */
+    boolean isOnline(String playerName) {
+        return online.contains(key(playerName));
+    }
+
+    /** Records a player seen joining; they count as online until {@link #quit(String)}. */
+    void joined(String playerName, UUID uuid) {
+        Entry entry = new Entry(playerName, uuid);
+        String key = key(playerName);
+        byName.put(key, entry);
+        online.add(key);
+        Entry previous = joined.put(key, entry);
+        if (previous == null || !previous.uuid.equals(uuid) || !previous.name.equals(playerName)) {
+            version.incrementAndGet();
+        }
+    }
+
+    /** Records a player leaving the server. */
+    void quit(String playerName) {
+        online.remove(key(playerName));
+    }
+
+    int size() {
+        return byName.size();
+    }
+
+    /** Bumped whenever the persisted part changes. */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * Streams a usercache.json ({@code [{"name","uuid","expiresOn"}, ...]}) into the index without
+     * overriding names already known from joins. Returns the number of entries read.
+     */
+    int loadUserCache(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return 0;
+        int count = 0;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String name = null;
+                String uuid = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if (reader.peek() == JsonToken.STRING && "name".equals(field)) {
+                        name = reader.nextString();
+                    } else if (reader.peek() == JsonToken.STRING && "uuid".equals(field)) {
+                        uuid = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                Entry entry = entry(name, uuid);
+                if (entry != null) {
+                    String key = key(name);
+                    if (!joined.containsKey(key)) byName.put(key, entry);
+                    count++;
+                }
+            }
+            reader.endArray();
+        }
+        return count;
+    }
+
+    /** Loads a file written from {@link #toJson()}: {@code {"Name":"uuid", ...}}. Returns the number of entries read. */
+    int loadJoined(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return 0;
+        int count = 0;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() != JsonToken.STRING) {
+                    reader.skipValue();
+                    continue;
+                }
+                Entry entry = entry(name, reader.nextString());
+                if (entry == null) continue;
+                String key = key(name);
+                byName.put(key, entry);
+                joined.put(key, entry);
+                count++;
+            }
+            reader.endObject();
+        }
+        return count;
+    }
+
+    /** Names learned from joins as one compact JSON object. */
+    String toJson() {
+        StringWriter out = new StringWriter(joined.size() * 56 + 2);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            for (Entry entry : joined.values()) {
+                writer.name(entry.name).value(entry.uuid.toString());
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    private static Entry entry(String name, String uuid) {
+        if (name == null || name.isEmpty() || uuid == null) return null;
+        try {
+            return new Entry(name, UUID.fromString(uuid));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String key(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final UUID uuid;
+
+        private Entry(String name, UUID uuid) {
+            this.name = name;
+            this.uuid = uuid;
+        }
+    }
+}
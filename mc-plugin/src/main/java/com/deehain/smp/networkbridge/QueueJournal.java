@@ -0,0 +1,230 @@
+package com.deehain.smp.networkbridge;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only write-ahead journal for the offline change queue.
+ *
+ * Records are single-line JSON strings appended by one writer thread. Everything that is
+ * waiting when the writer wakes up goes out in one write followed by one fsync (group commit).
+ * Periodically, or once the journal holds enough records, the writer asks the plugin for a
+ * full snapshot, writes it to a temp file, atomically renames it over the snapshot file and
+ * truncates the journal. Recovery is "load snapshot, replay journal"; replay must therefore be
+ * idempotent, since a crash between the rename and the truncate replays records the snapshot
+ * already contains.
+ */
+final class QueueJournal {
+
+    private static final String SNAPSHOT_MARKER = "\u0000snapshot";
+    private static final String STOP_MARKER = "\u0000stop";
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Logger logger;
+    private final long snapshotIntervalMillis;
+    private final int compactAfterRecords;
+    private final Supplier<String> snapshotSupplier;
+    private final BridgeMetrics metrics;
+
+    private final LinkedBlockingQueue<String> pending = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread writer;
+    private FileChannel channel;
+    private int recordsSinceSnapshot;
+    private long lastSnapshotAt;
+
+    QueueJournal(Path snapshotFile, Path journalFile, Logger logger, long snapshotIntervalMillis,
+                 int compactAfterRecords, Supplier<String> snapshotSupplier, BridgeMetrics metrics) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.logger = logger;
+        this.snapshotIntervalMillis = Math.max(1000L, snapshotIntervalMillis);
+        this.compactAfterRecords = Math.max(1, compactAfterRecords);
+        this.snapshotSupplier = snapshotSupplier;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the journal records written so far. A torn trailing line (crash mid-write)
+     * is dropped; it was never acknowledged by an fsync.
+     */
+    List<String> readRecords() throws IOException {
+        List<String> records = new ArrayList<>();
+        if (!Files.exists(journalFile)) return records;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) records.add(line);
+            }
+        }
+        if (!records.isEmpty() && !endsWithNewline(journalFile)) {
+            records.remove(records.size() - 1);
+        }
+        return records;
+    }
+
+    void start() throws IOException {
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lastSnapshotAt = System.currentTimeMillis();
+        running = true;
+        writer = new Thread(this::runWriter, "bridge-queue-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queues a record for the writer thread; never blocks the caller on disk I/O. */
+    void append(String record) {
+        pending.add(record);
+    }
+
+    /** Asks the writer thread to snapshot and truncate the journal at its next wake-up. */
+    void requestSnapshot() {
+        pending.add(SNAPSHOT_MARKER);
+    }
+
+    /** Flushes outstanding records, writes a final snapshot and stops the writer thread. */
+    void close() {
+        running = false;
+        // Wake the writer with a marker rather than an interrupt: interrupting a thread inside
+        // FileChannel I/O closes the channel.
+        pending.add(STOP_MARKER);
+        Thread thread = writer;
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writer = null;
+    }
+
+    private void runWriter() {
+        List<String> batch = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                String first = pending.poll(snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                pending.drainTo(batch);
+            }
+
+            try {
+                boolean snapshotRequested = writeBatch(batch);
+                batch.clear();
+                long now = System.currentTimeMillis();
+                if (snapshotRequested || recordsSinceSnapshot >= compactAfterRecords
+                        || (recordsSinceSnapshot > 0 && now - lastSnapshotAt >= snapshotIntervalMillis)) {
+                    snapshot();
+                }
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to write offline queue journal.", e);
+                batch.clear();
+            }
+        }
+
+        try {
+            snapshot();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to write final offline queue snapshot.", e);
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private boolean writeBatch(List<String> batch) throws IOException {
+        if (batch.isEmpty()) return false;
+        boolean snapshotRequested = false;
+        StringBuilder sb = new StringBuilder();
+        int records = 0;
+        for (String record : batch) {
+            if (SNAPSHOT_MARKER.equals(record)) {
+                snapshotRequested = true;
+                continue;
+            }
+            if (STOP_MARKER.equals(record)) continue;
+            sb.append(record).append('\n');
+            records++;
+        }
+        if (records == 0) return snapshotRequested;
+
+        long start = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        long bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        // One fsync for the whole group of records.
+        channel.force(false);
+        metrics.recordPersist("journal", System.nanoTime() - start, bytes);
+        recordsSinceSnapshot += records;
+        return snapshotRequested;
+    }
+
+    private void snapshot() throws IOException {
+        long start = System.nanoTime();
+        long bytes = writeAtomically(snapshotFile, snapshotSupplier.get());
+        channel.truncate(0);
+        channel.force(true);
+        metrics.recordPersist("snapshot", System.nanoTime() - start, bytes);
+        recordsSinceSnapshot = 0;
+        lastSnapshotAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes {@code content} to a temp file next to {@code target}, fsyncs it and atomically
+     * renames it into place, so readers only ever see the old or the new file in full.
+     * Returns the number of bytes written.
+     */
+    static long writeAtomically(Path target, String content) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+        long bytes = buffer.remaining();
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return bytes;
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size == 0) return true;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            in.read(last, size - 1);
+            return last.get(0) == '\n';
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.deehain.smp.networkbridge;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Where offline-queued team changes and team adds waiting for their nation are kept, chosen by
+ * {@code queue-storage}. {@link JsonQueueStore} holds the queue in memory and writes JSON files
+ * (optionally through a journal); {@link SqliteQueueStore} keeps it in an indexed database and only
+ * reads a player's changes when they join.
+ *
+ * Nothing here blocks the caller on disk I/O except {@link #open(long)}, the startup reads and
+ * {@link #close()}.
+ */
+interface QueueStore {
+
+    /** Loads persisted state and starts any background writer. Applied changes older than {@code historyCutoff} are dropped. */
+    void open(long historyCutoff) throws IOException;
+
+    /**
+     * Queues a change for an offline player, superseding an older unapplied change for the same player
+     * and streamer. Any thread. {@code uuid} may be null. The change's sequence number may only be
+     * assigned once it is stored, so it can still be 0 when this returns.
+     */
+    QueuedTeamChange enqueue(String playerName, UUID uuid, String streamer, String actionType, long now);
+
+    /**
+     * Removes the player's unapplied changes, records them as applied at {@code now} and hands them to
+     * {@code consumer} in arrival order. The consumer is not called if there is nothing to apply and
+     * may run on another thread; a change is only ever handed out once.
+     */
+    void take(String playerName, long now, Consumer<List<QueuedTeamChange>> consumer);
+
+    /** Drops applied changes older than {@code cutoff}. */
+    void pruneHistory(long cutoff);
+
+    /** Persists everything changed since the last flush, off the calling thread. */
+    void flush();
+
+    /**
+     * Every unapplied change, or only {@code streamer}'s unless it is null, each player's in arrival
+     * order. Any thread. Sees every change enqueued or taken before the call, which may mean waiting
+     * for the store to write them.
+     */
+    void forEachPending(String streamer, Consumer<QueuedTeamChange> consumer) throws IOException;
+
+    /**
+     * True if the queue is held in memory anyway, so {@link RosterState} may mirror it and GET /state
+     * deltas include queued changes. Otherwise readers ask {@link #forEachPending} when they need it.
+     */
+    boolean inMemory();
+
+    /** Changes whenever unapplied changes may have; 0 for stores that are {@link #inMemory()}. */
+    long queueVersion();
+
+    /** Team adds saved by {@link #savePendingTeamActions(List)}. Startup only. */
+    List<PendingTeamAction> loadPendingTeamActions();
+
+    /** Replaces the saved team adds with {@code actions}, off the calling thread. */
+    void savePendingTeamActions(List<PendingTeamAction> actions);
+
+    /** False while unapplied changes may exist; may lag behind other servers sharing the store. */
+    boolean isEmpty();
+
+    int playerCount();
+
+    long pendingCount();
+
+    int historySize();
+
+    /** Writes out everything outstanding and releases files or connections. */
+    void close();
+}
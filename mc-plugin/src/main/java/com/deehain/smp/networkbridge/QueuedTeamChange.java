@@ -0,0 +1,23 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.UUID;
+
+/** One team change for a player who was offline when it arrived. Serialized as-is by Gson. */
+final class QueuedTeamChange {
+    String playerName;
+    UUID uuid; // null if the bridge had not seen the player yet
+    String streamer;
+    String actionType; // "add" or "remove"
+    long seq;
+    long createdAt;
+    boolean applied;
+    long appliedAt;
+
+    QueuedTeamChange(String playerName, String streamer, String actionType, long createdAt) {
+        this.playerName = playerName;
+        this.streamer = streamer;
+        this.actionType = actionType;
+        this.createdAt = createdAt;
+        this.applied = false;
+    }
+}
@@ -0,0 +1,38 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A semaphore whose number of permits can be changed while permits are held, so a settings reload
+ * keeps counting requests that are still running. Shrinking below what is held leaves the available
+ * count negative until enough permits are released.
+ *
+ * Safe from any thread.
+ */
+final class ResizableSemaphore extends Semaphore {
+
+    private static final long serialVersionUID = 1L;
+
+    // Guarded by this.
+    private int permits;
+
+    ResizableSemaphore(int permits) {
+        super(Math.max(0, permits));
+        this.permits = Math.max(0, permits);
+    }
+
+    synchronized void resize(int permits) {
+        int next = Math.max(0, permits);
+        int delta = next - this.permits;
+        this.permits = next;
+        if (delta > 0) {
+            release(delta);
+        } else if (delta < 0) {
+            reducePermits(-delta);
+        }
+    }
+
+    synchronized int permits() {
+        return permits;
+    }
+}
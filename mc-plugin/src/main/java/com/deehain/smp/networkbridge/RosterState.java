@@ -0,0 +1,191 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Versioned view of what the bridge has applied or is still holding: whitelist entries, nation
+ * memberships per streamer, offline-queued changes and team adds waiting for their nation.
+ *
+ * Every effective change bumps {@link #version()} and is appended to a bounded change log, so a
+ * client that has seen version {@code v} can catch up with {@link #changesSince(long)} instead of
+ * refetching the whole {@link #snapshot()}. Setting a fact to the value it already has is a no-op.
+ *
+ * Safe for concurrent use. Mutators hold the monitor for one map update; snapshots copy the
+ * (immutable) facts under it and leave rendering to the caller.
+ */
+final class RosterState {
+
+    enum Kind {
+        WHITELIST("whitelist"),
+        MEMBER("member"),
+        QUEUED("queued"),
+        PENDING("pending");
+
+        final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    // Insertion order, so snapshots list entries in the order they first appeared.
+    private final Map<String, Fact> facts = new LinkedHashMap<>();
+    private final Change[] log;
+    // Number of changes ever appended; the newest is at (appended - 1) % log.length.
+    private long appended;
+    private long version;
+
+    RosterState(int logSize, long initialVersion) {
+        this.log = new Change[Math.max(1, logSize)];
+        this.version = initialVersion;
+    }
+
+    /** Player is on the whitelist. */
+    void setWhitelisted(String playerName, boolean whitelisted) {
+        Fact fact = new Fact(Kind.WHITELIST, playerName, null, null, null, 0L);
+        if (whitelisted) put(fact); else remove(fact, false);
+    }
+
+    /** Player was added to (or removed from) the streamer's nation by the bridge. */
+    void setMember(String playerName, String streamer, String nation, boolean member) {
+        Fact fact = new Fact(Kind.MEMBER, playerName, streamer, nation, null, 0L);
+        if (member) put(fact); else remove(fact, false);
+    }
+
+    /** Offline-queued change; replaces any older one for the same player and streamer. */
+    void setQueued(QueuedTeamChange change) {
+        put(new Fact(Kind.QUEUED, change.playerName, change.streamer, null, change.actionType, change.seq));
+    }
+
+    /** Clears a queued change once applied, unless a newer change for the same streamer has replaced it. */
+    void clearQueued(QueuedTeamChange change) {
+        remove(new Fact(Kind.QUEUED, change.playerName, change.streamer, null, change.actionType, change.seq), true);
+    }
+
+    /** Team add waiting for the nation to be created. */
+    void setPending(String playerName, String streamer, String nation, boolean pending) {
+        Fact fact = new Fact(Kind.PENDING, playerName, streamer, nation, null, 0L);
+        if (pending) put(fact); else remove(fact, false);
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    synchronized Snapshot snapshot() {
+        return new Snapshot(version, new ArrayList<>(facts.values()));
+    }
+
+    /** Facts of one kind, e.g. for persisting memberships. */
+    synchronized List<Fact> facts(Kind kind) {
+        List<Fact> result = new ArrayList<>();
+        for (Fact fact : facts.values()) {
+            if (fact.kind == kind) result.add(fact);
+        }
+        return result;
+    }
+
+    /**
+     * Changes after {@code since}, oldest first, or null if the log no longer reaches back that far
+     * (or {@code since} is from a version this state never had); the caller should then send a full snapshot.
+     */
+    synchronized List<Change> changesSince(long since) {
+        if (since > version) return null;
+        int retained = (int) Math.min(appended, log.length);
+        long oldest = retained == 0 ? version + 1 : log[(int) ((appended - retained) % log.length)].version;
+        if (since < oldest - 1) return null;
+        List<Change> result = new ArrayList<>((int) Math.min(retained, version - since));
+        for (long i = appended - retained; i < appended; i++) {
+            Change change = log[(int) (i % log.length)];
+            if (change.version > since) result.add(change);
+        }
+        return result;
+    }
+
+    private synchronized void put(Fact fact) {
+        Fact previous = facts.get(fact.key);
+        if (fact.sameAs(previous)) return;
+        facts.put(fact.key, fact);
+        append(fact, true);
+    }
+
+    private synchronized void remove(Fact fact, boolean onlyIfSame) {
+        Fact previous = facts.get(fact.key);
+        if (previous == null || (onlyIfSame && !fact.sameAs(previous))) return;
+        facts.remove(fact.key);
+        append(previous, false);
+    }
+
+    private void append(Fact fact, boolean present) {
+        log[(int) (appended++ % log.length)] = new Change(++version, fact, present);
+    }
+
+    /** One entry of the state. Immutable. */
+    static final class Fact {
+        final Kind kind;
+        final String playerName;
+        final String streamer;
+        final String nation;
+        final String action;
+        // Offline queue sequence number of a queued change; 0 for other kinds.
+        final long seq;
+        private final String key;
+
+        Fact(Kind kind, String playerName, String streamer, String nation, String action, long seq) {
+            this.kind = kind;
+            this.playerName = playerName;
+            this.streamer = streamer;
+            this.nation = nation;
+            this.action = action;
+            this.seq = seq;
+            // Identity: whitelist per player, memberships and queued changes per streamer, pending adds per nation.
+            String scope = switch (kind) {
+                case WHITELIST -> "";
+                case MEMBER, QUEUED -> fold(streamer);
+                case PENDING -> fold(nation);
+            };
+            this.key = kind.label + '|' + fold(playerName) + '|' + scope;
+        }
+
+        private boolean sameAs(Fact other) {
+            return other != null
+                    && Objects.equals(playerName, other.playerName)
+                    && Objects.equals(streamer, other.streamer)
+                    && Objects.equals(nation, other.nation)
+                    && Objects.equals(action, other.action)
+                    && seq == other.seq;
+        }
+
+        private static String fold(String value) {
+            return value == null ? "" : value.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** A fact that was set ({@code present}) or removed at {@code version}. */
+    static final class Change {
+        final long version;
+        final Fact fact;
+        final boolean present;
+
+        private Change(long version, Fact fact, boolean present) {
+            this.version = version;
+            this.fact = fact;
+            this.present = present;
+        }
+    }
+
+    static final class Snapshot {
+        final long version;
+        final List<Fact> facts;
+
+        private Snapshot(long version, List<Fact> facts) {
+            this.version = version;
+            this.facts = facts;
+        }
+    }
+}
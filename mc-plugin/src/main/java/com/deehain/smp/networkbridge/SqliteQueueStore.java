@@ -0,0 +1,523 @@
+package com.deehain.smp.networkbridge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link QueueStore} backed by an SQLite database (the driver ships with Paper). Nothing is kept in
+ * memory: a join looks up just that player's rows through an index on the case-folded name, and
+ * GET /state and PUT /roster read the unapplied rows (all, or one streamer's) when they need them.
+ *
+ * All statements run on one writer thread. Whatever is waiting when it wakes up runs in a single
+ * {@code BEGIN IMMEDIATE} transaction with one commit (group commit), and callbacks such as a
+ * {@link #take} consumer run once that commit succeeded. A batch that fails to commit is kept and
+ * retried with backoff ahead of anything queued after it, so no change is lost or reordered. Because a take reads and marks its rows
+ * inside one write transaction, several servers on the same host can share the database file and
+ * each queued change is still applied by exactly one of them.
+ */
+final class SqliteQueueStore implements QueueStore {
+
+    // Upper bound on operations per transaction, so one commit never holds the write lock for long.
+    private static final int MAX_BATCH = 1000;
+    private static final long COUNT_REFRESH_MILLIS = 5000L;
+    // How long a read waits for the writer to store what was queued before it.
+    private static final long READ_WAIT_SECONDS = 5L;
+    private static final long RETRY_MIN_MILLIS = 100L;
+    private static final long RETRY_MAX_MILLIS = 5000L;
+    // Failed commits tried again while closing before what is left is given up.
+    private static final int CLOSE_ATTEMPTS = 3;
+
+    private final Path file;
+    private final Logger logger;
+    private final BridgeMetrics metrics;
+    private final LinkedBlockingQueue<Op> ops = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread writer;
+    private boolean created;
+
+    // Refreshed from the database every few seconds (other servers may share it), and adjusted after each commit.
+    private final AtomicLong pendingCount = new AtomicLong();
+    private volatile int playerCount;
+    private volatile int historySize;
+    private long countsRefreshedAt;
+    // Bumped by every enqueue, so queueVersion() moves before the write is committed.
+    private final AtomicLong enqueued = new AtomicLong();
+
+    // Writer thread only, apart from open() and the startup reads.
+    private Connection connection;
+    private PreparedStatement supersede;
+    private PreparedStatement insert;
+    private PreparedStatement selectPlayer;
+    private PreparedStatement markApplied;
+    private PreparedStatement prune;
+
+    // Reads from any thread, one at a time under readLock. WAL lets them run alongside the writer.
+    private final Object readLock = new Object();
+    private Connection reader;
+    private PreparedStatement selectPending;
+    private PreparedStatement selectStreamer;
+
+    SqliteQueueStore(Path file, Logger logger, BridgeMetrics metrics) {
+        this.file = file;
+        this.logger = logger;
+        this.metrics = metrics;
+    }
+
+    /** Whether {@link #open(long)} created the database, i.e. nothing was stored in it before. */
+    boolean created() {
+        return created;
+    }
+
+    @Override
+    public synchronized void open(long historyCutoff) throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("SQLite JDBC driver not available on this server", e);
+        }
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            created = !Files.exists(file);
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+            try (Statement st = connection.createStatement()) {
+                // WAL lets readers on other servers proceed during a commit; busy_timeout makes writers wait for each other.
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA synchronous=NORMAL");
+                st.execute("PRAGMA busy_timeout=5000");
+                st.execute("CREATE TABLE IF NOT EXISTS queued_changes ("
+                        + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "player_key TEXT NOT NULL, "
+                        + "player_name TEXT NOT NULL, "
+                        + "uuid TEXT, "
+                        + "streamer TEXT, "
+                        + "streamer_key TEXT NOT NULL, "
+                        + "action TEXT NOT NULL, "
+                        + "created_at INTEGER NOT NULL, "
+                        + "applied_at INTEGER)");
+                st.execute("CREATE INDEX IF NOT EXISTS queued_changes_pending "
+                        + "ON queued_changes (player_key, streamer_key) WHERE applied_at IS NULL");
+                st.execute("CREATE INDEX IF NOT EXISTS queued_changes_history "
+                        + "ON queued_changes (applied_at) WHERE applied_at IS NOT NULL");
+                st.execute("CREATE INDEX IF NOT EXISTS queued_changes_streamer "
+                        + "ON queued_changes (streamer_key) WHERE applied_at IS NULL");
+                st.execute("CREATE TABLE IF NOT EXISTS pending_team_actions ("
+                        + "nation TEXT NOT NULL, "
+                        + "player_key TEXT NOT NULL, "
+                        + "player_name TEXT NOT NULL, "
+                        + "uuid TEXT, "
+                        + "streamer TEXT, "
+                        + "created_at INTEGER NOT NULL, "
+                        + "PRIMARY KEY (nation, player_key))");
+            }
+            supersede = connection.prepareStatement(
+                    "DELETE FROM queued_changes WHERE player_key = ? AND streamer_key = ? AND applied_at IS NULL");
+            // The row id is the change's sequence number, so every server sharing the file agrees on the order.
+            insert = connection.prepareStatement("INSERT INTO queued_changes "
+                    + "(player_key, player_name, uuid, streamer, streamer_key, action, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            selectPlayer = connection.prepareStatement("SELECT id, player_name, uuid, streamer, action, created_at "
+                    + "FROM queued_changes WHERE player_key = ? AND applied_at IS NULL ORDER BY id");
+            markApplied = connection.prepareStatement(
+                    "UPDATE queued_changes SET applied_at = ? WHERE player_key = ? AND applied_at IS NULL");
+            prune = connection.prepareStatement(
+                    "DELETE FROM queued_changes WHERE applied_at IS NOT NULL AND applied_at < ?");
+            prune.setLong(1, historyCutoff);
+            prune.executeUpdate();
+            refreshCounts();
+            synchronized (readLock) {
+                reader = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+                try (Statement st = reader.createStatement()) {
+                    st.execute("PRAGMA busy_timeout=5000");
+                    st.execute("PRAGMA query_only=1");
+                }
+                selectPending = reader.prepareStatement("SELECT id, player_name, uuid, streamer, action, created_at "
+                        + "FROM queued_changes WHERE applied_at IS NULL ORDER BY id");
+                selectStreamer = reader.prepareStatement("SELECT id, player_name, uuid, streamer, action, created_at "
+                        + "FROM queued_changes WHERE streamer_key = ? AND applied_at IS NULL ORDER BY id");
+            }
+        } catch (SQLException e) {
+            closeConnection();
+            throw new IOException("Could not open queue database " + file, e);
+        }
+
+        running = true;
+        writer = new Thread(this::runWriter, "bridge-queue-db");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public QueuedTeamChange enqueue(String playerName, UUID uuid, String streamer, String actionType, long now) {
+        QueuedTeamChange change = new QueuedTeamChange(playerName, streamer, actionType, now);
+        change.uuid = uuid;
+        enqueued.incrementAndGet();
+        ops.add(after -> {
+            String playerKey = OfflineQueue.key(playerName);
+            String streamerKey = streamer != null ? streamer.toLowerCase(Locale.ROOT) : "";
+            supersede.setString(1, playerKey);
+            supersede.setString(2, streamerKey);
+            int superseded = supersede.executeUpdate();
+            insert.setString(1, playerKey);
+            insert.setString(2, playerName);
+            setNullable(insert, 3, uuid != null ? uuid.toString() : null);
+            setNullable(insert, 4, streamer);
+            insert.setString(5, streamerKey);
+            insert.setString(6, actionType);
+            insert.setLong(7, now);
+            insert.executeUpdate();
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                if (keys.next()) change.seq = keys.getLong(1);
+            }
+            after.add(() -> pendingCount.addAndGet(1L - superseded));
+        });
+        return change;
+    }
+
+    @Override
+    public void take(String playerName, long now, Consumer<List<QueuedTeamChange>> consumer) {
+        ops.add(after -> {
+            String playerKey = OfflineQueue.key(playerName);
+            List<QueuedTeamChange> changes = new ArrayList<>();
+            selectPlayer.setString(1, playerKey);
+            try (ResultSet rs = selectPlayer.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(readChange(rs));
+                }
+            }
+            if (changes.isEmpty()) return;
+            markApplied.setLong(1, now);
+            markApplied.setString(2, playerKey);
+            markApplied.executeUpdate();
+            for (QueuedTeamChange change : changes) {
+                change.applied = true;
+                change.appliedAt = now;
+            }
+            after.add(() -> {
+                pendingCount.addAndGet(-changes.size());
+                consumer.accept(changes);
+            });
+        });
+    }
+
+    @Override
+    public void pruneHistory(long cutoff) {
+        ops.add(after -> {
+            prune.setLong(1, cutoff);
+            prune.executeUpdate();
+        });
+    }
+
+    @Override
+    public void flush() {
+        // The writer commits whatever is waiting as soon as it wakes up.
+    }
+
+    @Override
+    public void forEachPending(String streamer, Consumer<QueuedTeamChange> consumer) throws IOException {
+        awaitWrites();
+        synchronized (readLock) {
+            if (reader == null) throw new IOException("Queue database " + file + " is closed");
+            try {
+                PreparedStatement select = selectPending;
+                if (streamer != null) {
+                    select = selectStreamer;
+                    select.setString(1, streamer.toLowerCase(Locale.ROOT));
+                }
+                select.setFetchSize(500);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(readChange(rs));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IOException("Failed to read queued team changes from " + file, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean inMemory() {
+        return false;
+    }
+
+    @Override
+    public long queueVersion() {
+        // data_version moves whenever another connection commits, this store's writer or another server's.
+        long version = enqueued.get();
+        synchronized (readLock) {
+            if (reader == null) return version;
+            try (Statement st = reader.createStatement();
+                 ResultSet rs = st.executeQuery("PRAGMA data_version")) {
+                if (rs.next()) version += rs.getLong(1);
+            } catch (SQLException e) {
+                logger.log(Level.FINE, "Could not read the queue database version.", e);
+            }
+        }
+        return version;
+    }
+
+    // Waits until everything queued for the writer so far has been committed.
+    private void awaitWrites() throws IOException {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        ops.add(after -> after.add(() -> written.complete(null)));
+        try {
+            written.get(READ_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new IOException("Queue database " + file + " did not finish writing in time", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the queue database", e);
+        }
+    }
+
+    @Override
+    public synchronized List<PendingTeamAction> loadPendingTeamActions() {
+        List<PendingTeamAction> actions = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT player_name, uuid, streamer, nation, created_at FROM pending_team_actions")) {
+            while (rs.next()) {
+                actions.add(new PendingTeamAction(rs.getString(1), parseUuid(rs.getString(2)), rs.getString(3),
+                        rs.getString(4), rs.getLong(5)));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to load pending team actions from " + file, e);
+        }
+        return actions;
+    }
+
+    @Override
+    public void savePendingTeamActions(List<PendingTeamAction> actions) {
+        List<PendingTeamAction> copy = List.copyOf(actions);
+        ops.add(after -> {
+            try (Statement st = connection.createStatement()) {
+                st.executeUpdate("DELETE FROM pending_team_actions");
+            }
+            try (PreparedStatement ps = connection.prepareStatement("INSERT OR REPLACE INTO pending_team_actions "
+                    + "(nation, player_key, player_name, uuid, streamer, created_at) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (PendingTeamAction action : copy) {
+                    ps.setString(1, action.nation);
+                    ps.setString(2, OfflineQueue.key(action.playerName));
+                    ps.setString(3, action.playerName);
+                    setNullable(ps, 4, action.uuid != null ? action.uuid.toString() : null);
+                    setNullable(ps, 5, action.streamer);
+                    ps.setLong(6, action.createdAt);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pendingCount.get() <= 0L;
+    }
+
+    @Override
+    public int playerCount() {
+        return playerCount;
+    }
+
+    @Override
+    public long pendingCount() {
+        return Math.max(0L, pendingCount.get());
+    }
+
+    @Override
+    public int historySize() {
+        return historySize;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        // Wake the writer so it commits what is left and exits.
+        ops.add(after -> { });
+        Thread thread = writer;
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writer = null;
+        synchronized (this) {
+            closeConnection();
+        }
+    }
+
+    private void runWriter() {
+        // Survives a failed commit: the same operations go first in the next attempt.
+        List<Op> batch = new ArrayList<>();
+        List<Runnable> after = new ArrayList<>();
+        int failures = 0;
+        while (running || !ops.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    Op first = ops.poll(COUNT_REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first != null) batch.add(first);
+                } else {
+                    Thread.sleep(Math.min(RETRY_MAX_MILLIS, RETRY_MIN_MILLIS << Math.min(failures - 1, 10)));
+                }
+                if (!batch.isEmpty() && batch.size() < MAX_BATCH) {
+                    ops.drainTo(batch, MAX_BATCH - batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                ops.drainTo(batch);
+            }
+            synchronized (this) {
+                // Before the commit, whose count adjustments only run afterwards and would otherwise be counted twice.
+                if (System.currentTimeMillis() - countsRefreshedAt >= COUNT_REFRESH_MILLIS) {
+                    try {
+                        refreshCounts();
+                    } catch (SQLException e) {
+                        logger.log(Level.FINE, "Could not refresh offline queue counts.", e);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    if (commit(batch, after, failures)) {
+                        batch.clear();
+                        failures = 0;
+                    } else if (++failures >= CLOSE_ATTEMPTS && !running) {
+                        logger.severe("Giving up on " + batch.size() + " offline queue operation(s) that could not be written to "
+                                + file + "; changes in them are lost.");
+                        batch.clear();
+                    }
+                }
+            }
+            for (Runnable callback : after) {
+                try {
+                    callback.run();
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Offline queue callback failed.", e);
+                }
+            }
+            after.clear();
+        }
+    }
+
+    // Runs the batch in one write transaction. On failure nothing of it is applied, its callbacks are dropped
+    // and false is returned; the operations can simply run again.
+    private boolean commit(List<Op> batch, List<Runnable> after, int failures) {
+        long start = System.nanoTime();
+        try (Statement st = connection.createStatement()) {
+            st.execute("BEGIN IMMEDIATE");
+            try {
+                for (Op op : batch) {
+                    op.run(after);
+                }
+                st.execute("COMMIT");
+            } catch (SQLException | RuntimeException e) {
+                after.clear();
+                try {
+                    st.execute("ROLLBACK");
+                } catch (SQLException ignored) {
+                }
+                throw e;
+            }
+            metrics.recordPersist("sqlite", System.nanoTime() - start, 0L);
+            if (failures > 0) {
+                logger.info("Wrote " + batch.size() + " offline queue operation(s) to " + file + " after " + failures + " failed attempt(s).");
+            }
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            // A busy or locked database usually clears up; log the first failure and then every tenth.
+            if (failures % 10 == 0) {
+                logger.log(Level.WARNING, "Failed to write " + batch.size() + " offline queue operation(s) to " + file
+                        + ", retrying.", e);
+            }
+            return false;
+        }
+    }
+
+    private void refreshCounts() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*), COUNT(DISTINCT player_key) FROM queued_changes WHERE applied_at IS NULL")) {
+                if (rs.next()) {
+                    pendingCount.set(rs.getLong(1));
+                    playerCount = rs.getInt(2);
+                }
+            }
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM queued_changes WHERE applied_at IS NOT NULL")) {
+                if (rs.next()) historySize = rs.getInt(1);
+            }
+        }
+        countsRefreshedAt = System.currentTimeMillis();
+    }
+
+    private void closeConnection() {
+        synchronized (readLock) {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (SQLException e) {
+                    logger.log(Level.FINE, "Failed to close queue database reader " + file, e);
+                }
+                reader = null;
+            }
+        }
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to close queue database " + file, e);
+        }
+        connection = null;
+    }
+
+    private static QueuedTeamChange readChange(ResultSet rs) throws SQLException {
+        QueuedTeamChange change = new QueuedTeamChange(rs.getString(2), rs.getString(4), rs.getString(5), rs.getLong(6));
+        change.seq = rs.getLong(1);
+        change.uuid = parseUuid(rs.getString(3));
+        return change;
+    }
+
+    private static UUID parseUuid(String value) {
+        if (value == null) return null;
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void setNullable(PreparedStatement ps, int index, String value) throws SQLException {
+        if (value != null) {
+            ps.setString(index, value);
+        } else {
+            ps.setNull(index, Types.VARCHAR);
+        }
+    }
+
+    /** One step of a write transaction; {@code after} collects callbacks to run once it committed. */
+    private interface Op {
+        void run(List<Runnable> after) throws SQLException;
+    }
+}
@@ -0,0 +1,56 @@
+package com.deehain.smp.networkbridge;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable streamer -> nation index built from the {@code streamer-nations} config section.
+ * Keys are case-folded once at build time, so lookups are a single hash probe and safe from any thread.
+ */
+final class StreamerNations {
+
+    static final StreamerNations EMPTY = new StreamerNations(Map.of(), Map.of());
+
+    private final Map<String, String> nations;
+    // Same entries with the streamer names as written in the config, in config order.
+    private final Map<String, String> configured;
+
+    private StreamerNations(Map<String, String> nations, Map<String, String> configured) {
+        this.nations = nations;
+        this.configured = configured;
+    }
+
+    /** streamer-nations maps streamer IGN directly to nation name. A null section yields an empty index. */
+    static StreamerNations from(ConfigurationSection section) {
+        if (section == null) return EMPTY;
+        Map<String, String> map = new HashMap<>();
+        Map<String, String> configured = new LinkedHashMap<>();
+        for (String key : section.getKeys(false)) {
+            String value = section.getString(key);
+            if (value != null && !value.isEmpty() && map.putIfAbsent(key.toLowerCase(Locale.ROOT), value) == null) {
+                configured.put(key, value);
+            }
+        }
+        return new StreamerNations(Map.copyOf(map), Collections.unmodifiableMap(configured));
+    }
+
+    /** Returns the nation for the streamer, ignoring case, or null if there is none. */
+    String nationFor(String streamer) {
+        if (streamer == null || streamer.isEmpty()) return null;
+        return nations.get(streamer.toLowerCase(Locale.ROOT));
+    }
+
+    /** Streamer -> nation as configured, in config order. */
+    Map<String, String> entries() {
+        return configured;
+    }
+
+    int size() {
+        return nations.size();
+    }
+}
@@ -0,0 +1,58 @@
+package com.deehain.smp.networkbridge;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-streamer token buckets for actions accepted over HTTP. Each streamer may send up to
+ * {@code burst} actions at once and {@code ratePerSecond} on average after that; actions over the
+ * limit are rejected with a retry hint instead of being queued behind everyone else's work.
+ *
+ * Buckets are keyed like the {@link ActionDrainer} lanes and refilled lazily on use, so an idle
+ * streamer costs nothing. Safe from any thread.
+ */
+final class StreamerRateLimiter {
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile double ratePerNano;
+    private volatile double burst;
+
+    /** {@code ratePerSecond <= 0} turns the limit off. */
+    void configure(double ratePerSecond, int burst) {
+        this.ratePerNano = Math.max(0.0D, ratePerSecond) / 1_000_000_000.0D;
+        this.burst = Math.max(1, burst);
+    }
+
+    boolean enabled() {
+        return ratePerNano > 0.0D;
+    }
+
+    /**
+     * Takes a token for the streamer lane. Returns 0 if the action may go ahead, otherwise how many
+     * milliseconds until the next token is available.
+     */
+    long tryAcquire(String lane) {
+        double rate = ratePerNano;
+        if (rate <= 0.0D) return 0L;
+        return buckets.computeIfAbsent(lane, k -> new Bucket(burst)).tryAcquire(rate, burst, System.nanoTime());
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        private Bucket(double tokens) {
+            this.tokens = tokens;
+        }
+
+        private synchronized long tryAcquire(double ratePerNano, double burst, long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            if (tokens >= 1.0D) {
+                tokens -= 1.0D;
+                return 0L;
+            }
+            return Math.max(1L, (long) Math.ceil((1.0D - tokens) / ratePerNano / 1_000_000.0D));
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.deehain.smp.networkbridge;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects whitelist changes requested by bridge actions and applies them once per tick, after the
+ * action drainer has run. Within a tick only the last requested state per player counts, and players
+ * already in that state are skipped, so re-sent batches and roster syncs cost no writes.
+ *
+ * Changes go through {@link OfflinePlayer#setWhitelisted(boolean)} rather than the console command.
+ * The server saves whitelist.json on every such call, so when a flush has at least the bulk threshold
+ * of changes the new list is written to whitelist.json once and loaded with
+ * {@link Bukkit#reloadWhitelist()} instead.
+ *
+ * Players are looked up without blocking: by UUID, or by name in the server's profile cache. A name
+ * the server has never seen needs a profile lookup, which runs async; the request is held until it
+ * comes back and then applied with the next flush.
+ *
+ * Main thread only.
+ */
+final class WhitelistCoalescer {
+
+    private final Logger logger;
+    private final BridgeMetrics metrics;
+    private final BridgeScheduler scheduler;
+    private final Path whitelistFile;
+    // Told about every requested state once it holds, including no-ops.
+    private final BiConsumer<String, Boolean> applied;
+    // Lower-cased name -> latest request, in request order.
+    private final Map<String, Request> pending = new LinkedHashMap<>();
+    // Lower-cased name -> latest request for a name whose profile is being looked up.
+    private final Map<String, Request> unresolved = new LinkedHashMap<>();
+    private int bulkThreshold = 8;
+
+    WhitelistCoalescer(Logger logger, BridgeMetrics metrics, BridgeScheduler scheduler, Path whitelistFile,
+                       BiConsumer<String, Boolean> applied) {
+        this.logger = logger;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.whitelistFile = whitelistFile;
+        this.applied = applied;
+    }
+
+    /** Changes per flush from which whitelist.json is rewritten once; 0 always uses the per-player API. */
+    void setBulkThreshold(int bulkThreshold) {
+        this.bulkThreshold = Math.max(0, bulkThreshold);
+    }
+
+    /** Requests a whitelist state for the player, applied on the next {@link #flush()}. {@code uuid} may be null. */
+    void request(String playerName, UUID uuid, boolean whitelisted) {
+        String key = playerName.toLowerCase(Locale.ROOT);
+        if (uuid == null && unresolved.containsKey(key)) {
+            // The lookup in flight applies whatever was requested last.
+            unresolved.put(key, new Request(playerName, null, whitelisted));
+            return;
+        }
+        pending.put(key, new Request(playerName, uuid, whitelisted));
+    }
+
+    /** Applies everything requested since the last flush. Returns the number of players whose state changed. */
+    int flush() {
+        return flush(false);
+    }
+
+    /**
+     * Looks up every held name right here and applies everything. Blocks on profile lookups, so only
+     * for shutdown, when the scheduler no longer takes async lookups.
+     */
+    int flushBlocking() {
+        for (Map.Entry<String, Request> entry : unresolved.entrySet()) {
+            // A request made with a known UUID in the meantime is newer and wins.
+            pending.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        unresolved.clear();
+        return flush(true);
+    }
+
+    private int flush(boolean blocking) {
+        if (pending.isEmpty()) return 0;
+        List<Request> requests = new ArrayList<>(pending.values());
+        pending.clear();
+
+        List<Change> changes = new ArrayList<>();
+        List<Request> settled = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            OfflinePlayer player = request.uuid != null
+                    ? Bukkit.getOfflinePlayer(request.uuid)
+                    : Bukkit.getOfflinePlayerIfCached(request.playerName);
+            if (player == null) {
+                if (!blocking) {
+                    lookUp(request);
+                    continue;
+                }
+                UUID uuid = lookUpUuid(request.playerName);
+                if (uuid == null) {
+                    logger.warning("Could not look up player '" + request.playerName + "', whitelist not changed.");
+                    continue;
+                }
+                player = Bukkit.getOfflinePlayer(uuid);
+            }
+            settled.add(request);
+            if (player.isWhitelisted() != request.whitelisted) {
+                changes.add(new Change(request, player));
+            }
+        }
+
+        if (!changes.isEmpty()) {
+            if (bulkThreshold == 0 || changes.size() < bulkThreshold || !writeBulk(changes)) {
+                for (Change change : changes) {
+                    change.player.setWhitelisted(change.request.whitelisted);
+                }
+            }
+            int added = 0;
+            for (Change change : changes) {
+                if (change.request.whitelisted) added++;
+            }
+            logger.info("Whitelist updated: " + added + " added, " + (changes.size() - added) + " removed"
+                    + " (" + (settled.size() - changes.size()) + " already up to date).");
+        }
+        for (Request request : settled) {
+            applied.accept(request.playerName, request.whitelisted);
+        }
+        return changes.size();
+    }
+
+    // Same profile lookup the whitelist command would do for a name it has never seen, off the tick thread.
+    private void lookUp(Request request) {
+        String key = request.playerName.toLowerCase(Locale.ROOT);
+        unresolved.put(key, request);
+        scheduler.runAsync(() -> {
+            UUID uuid = lookUpUuid(request.playerName);
+            scheduler.runGlobal(() -> resolved(key, uuid));
+        });
+    }
+
+    private void resolved(String key, UUID uuid) {
+        Request latest = unresolved.remove(key);
+        if (latest == null) return;
+        if (uuid == null) {
+            logger.warning("Could not look up player '" + latest.playerName + "', whitelist not changed.");
+            return;
+        }
+        // A request made with a known UUID in the meantime is newer and wins.
+        pending.putIfAbsent(key, new Request(latest.playerName, uuid, latest.whitelisted));
+    }
+
+    private UUID lookUpUuid(String playerName) {
+        try {
+            OfflinePlayer player = Bukkit.getOfflinePlayer(playerName);
+            return player != null ? player.getUniqueId() : null;
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Profile lookup for '" + playerName + "' failed.", e);
+            return null;
+        }
+    }
+
+    // Writes the whole new whitelist once and has the server reload it. False if that isn't possible
+    // here (no whitelist.json where expected, or entries without a name the file format needs).
+    private boolean writeBulk(List<Change> changes) {
+        if (!Files.isRegularFile(whitelistFile)) return false;
+        Map<UUID, String> entries = new LinkedHashMap<>();
+        for (OfflinePlayer player : Bukkit.getWhitelistedPlayers()) {
+            if (player.getName() == null) return false;
+            entries.put(player.getUniqueId(), player.getName());
+        }
+        Set<UUID> removed = new LinkedHashSet<>();
+        for (Change change : changes) {
+            UUID uuid = change.player.getUniqueId();
+            if (change.request.whitelisted) {
+                String name = change.player.getName();
+                entries.put(uuid, name != null ? name : change.request.playerName);
+            } else {
+                removed.add(uuid);
+            }
+        }
+        entries.keySet().removeAll(removed);
+
+        JsonArray json = new JsonArray();
+        for (Map.Entry<UUID, String> entry : entries.entrySet()) {
+            JsonObject object = new JsonObject();
+            object.addProperty("uuid", entry.getKey().toString());
+            object.addProperty("name", entry.getValue());
+            json.add(object);
+        }
+        long start = System.nanoTime();
+        try {
+            long bytes = QueueJournal.writeAtomically(whitelistFile, json.toString());
+            metrics.recordPersist("whitelist", System.nanoTime() - start, bytes);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write " + whitelistFile + ", applying whitelist changes one by one.", e);
+            return false;
+        }
+        Bukkit.reloadWhitelist();
+        return true;
+    }
+
+    private static final class Request {
+        private final String playerName;
+        private final UUID uuid;
+        private final boolean whitelisted;
+
+        private Request(String playerName, UUID uuid, boolean whitelisted) {
+            this.playerName = playerName;
+            this.uuid = uuid;
+            this.whitelisted = whitelisted;
+        }
+    }
+
+    private static final class Change {
+        private final Request request;
+        private final OfflinePlayer player;
+
+        private Change(Request request, OfflinePlayer player) {
+            this.request = request;
+            this.player = player;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.deehain.smp.networkbridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActionDrainerTest {
+
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    void lanesTakeTurns() {
+        ActionDrainer drainer = drainer(TimeUnit.MILLISECONDS.toNanos(50));
+        for (int i = 0; i < 5; i++) {
+            submit(drainer, "Pulse", false, "p" + i);
+        }
+        submit(drainer, "Chonk", false, "c0");
+
+        drainer.drainAll();
+        // Chonk's single add waits for one Pulse task, not for the whole import.
+        assertEquals(List.of("p0", "c0", "p1", "p2", "p3", "p4"), ran);
+    }
+
+    @Test
+    void weightsSetTasksPerTurn() {
+        ActionDrainer drainer = drainer(TimeUnit.MILLISECONDS.toNanos(50));
+        drainer.setWeights(Map.of("pulse", 2));
+        for (int i = 0; i < 4; i++) {
+            submit(drainer, "pulse", false, "p" + i);
+            submit(drainer, "chonk", false, "c" + i);
+        }
+
+        drainer.drainAll();
+        assertEquals(List.of("p0", "p1", "c0", "p2", "p3", "c1", "c2", "c3"), ran);
+    }
+
+    @Test
+    void priorityTasksRunFirst() {
+        ActionDrainer drainer = drainer(TimeUnit.MILLISECONDS.toNanos(50));
+        submit(drainer, "Pulse", false, "add");
+        submit(drainer, "Pulse", true, "remove");
+        assertEquals(1, drainer.priorityDepth());
+
+        drainer.drainAll();
+        assertEquals(List.of("remove", "add"), ran);
+    }
+
+    @Test
+    void runsAtLeastOneTaskPerDrain() {
+        ActionDrainer drainer = drainer(0L);
+        submit(drainer, "Pulse", false, "a");
+        submit(drainer, "Pulse", false, "b");
+
+        drainer.drain();
+        assertEquals(List.of("a"), ran);
+        assertEquals(1, drainer.depth());
+        assertEquals(Map.of("Pulse", 1L), drainer.laneDepths());
+        drainer.drain();
+        assertEquals(0, drainer.depth());
+        assertEquals(0L, drainer.lagMillis());
+    }
+
+    @Test
+    void laneGetsBackInLineWhenWorkArrivesAfterItRanDry() {
+        ActionDrainer drainer = drainer(TimeUnit.MILLISECONDS.toNanos(50));
+        // The lane empties and is parked while this task runs; the submit has to put it back.
+        drainer.submit("Pulse", false, () -> {
+            ran.add("first");
+            submit(drainer, "Pulse", false, "second");
+        });
+
+        drainer.drainAll();
+        assertEquals(List.of("first", "second"), ran);
+    }
+
+    @Test
+    void submitRacingTheLaneRunningDryIsNotStranded() throws InterruptedException {
+        ActionDrainer drainer = drainer(TimeUnit.MILLISECONDS.toNanos(50));
+        int rounds = 5_000;
+        AtomicInteger round = new AtomicInteger();
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger ran = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            for (int r = 1; r <= rounds; r++) {
+                while (round.get() < r) Thread.yield();
+                drainer.submit("Pulse", false, ran::incrementAndGet);
+                submitted.set(r);
+            }
+        });
+        producer.setDaemon(true);
+        producer.start();
+
+        // Each round the lane's only task is taken while the producer submits the next one, so with
+        // more than one core the submit regularly lands right as the lane is parked.
+        for (int r = 1; r <= rounds; r++) {
+            drainer.submit("Pulse", false, () -> { });
+            round.set(r);
+            drainer.drain();
+            while (submitted.get() < r) Thread.yield();
+            drainer.drainAll();
+            assertEquals(r, ran.get(), "task submitted in round " + r + " never ran");
+        }
+        producer.join();
+        assertEquals(0, drainer.depth());
+    }
+
+    private ActionDrainer drainer(long budgetNanos) {
+        return new ActionDrainer(Logger.getLogger("ActionDrainerTest"), new BridgeMetrics(), budgetNanos);
+    }
+
+    private void submit(ActionDrainer drainer, String lane, boolean priority, String name) {
+        drainer.submit(lane, priority, () -> ran.add(name));
+    }
+}
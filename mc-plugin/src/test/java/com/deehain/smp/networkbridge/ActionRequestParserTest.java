@@ -0,0 +1,149 @@
+package com.deehain.smp.networkbridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActionRequestParserTest {
+
+    private static final byte[] TOKEN = "s3cret".getBytes(StandardCharsets.US_ASCII);
+
+    private final ActionRequestParser parser = new ActionRequestParser(256, 2);
+
+    @Test
+    void decodesFormFields() throws IOException {
+        ActionRequestParser.ActionRequest request = parse(
+                "token=s3cret&playerName=Alice&streamer=Pulse+TV&action=add&extra=%7Bignored%7D&requestId=r%2D1",
+                "application/x-www-form-urlencoded");
+
+        assertTrue(request.tokenMatches(TOKEN));
+        assertEquals("Alice", request.playerName);
+        assertEquals("Pulse TV", request.streamer);
+        assertSame("add", request.action);
+        assertEquals("r-1", request.requestId);
+    }
+
+    @Test
+    void ignoresFormPairsWithoutAName() throws IOException {
+        ActionRequestParser.ActionRequest request = parse("=x&playerName&action=remove&&", null);
+
+        assertNull(request.playerName);
+        assertSame("remove", request.action);
+        assertFalse(request.hasToken());
+    }
+
+    @Test
+    void decodesFlatJsonObjects() throws IOException {
+        ActionRequestParser.ActionRequest request = parse(
+                "{ \"token\": \"s3cret\", \"playerName\": \"Ren\\u00e9\\ud83d\\ude00\", \"meta\": {\"a\": [1, \"}\"]},"
+                        + " \"streamer\": \"Pu\\\"lse\", \"action\": \"kick\", \"requestId\": null, \"seq\": 42 }",
+                "application/json; charset=utf-8");
+
+        assertTrue(request.tokenMatches(TOKEN));
+        assertEquals("René\uD83D\uDE00", request.playerName);
+        assertEquals("Pu\"lse", request.streamer);
+        assertEquals("kick", request.action);
+        assertNull(request.requestId);
+        assertEquals(42L, request.seq);
+    }
+
+    @Test
+    void rejectsAWrongToken() throws IOException {
+        assertFalse(parse("token=s3cre", null).tokenMatches(TOKEN));
+        assertFalse(parse("token=s3cretX", null).tokenMatches(TOKEN));
+        assertFalse(parse("playerName=Alice", null).tokenMatches(TOKEN));
+    }
+
+    @Test
+    void rejectsBodiesOverTheLimit() {
+        String big = "playerName=" + "a".repeat(300);
+
+        // Declared too long: rejected before anything is read.
+        assertThrows(FormCodec.BodyTooLargeException.class, () -> parser.parse(
+                new ByteArrayInputStream(new byte[0]), null, 257, parser.acquire()));
+        // Chunked, so only noticed while reading.
+        assertThrows(FormCodec.BodyTooLargeException.class, () -> parser.parse(
+                stream(big), null, -1, parser.acquire()));
+    }
+
+    @Test
+    void acceptsABodyOfExactlyTheLimit() throws IOException {
+        String body = "playerName=" + "a".repeat(256 - "playerName=".length());
+
+        assertEquals(256 - "playerName=".length(), parse(body, null).playerName.length());
+    }
+
+    @Test
+    void rejectsMalformedBodies() {
+        String[][] cases = {
+                {"playerName=%4", null},
+                {"playerName=%zz", null},
+                {"[\"playerName\"]", "application/json"},
+                {"{\"playerName\" \"Alice\"}", "application/json"},
+                {"{\"playerName\": \"Alice}", "application/json"},
+                {"{\"playerName\": \"Alice\"} trailing", "application/json"},
+                {"{\"playerName\": \"\\q\"}", "application/json"},
+                {"{\"playerName\": }", "application/json"},
+        };
+        for (String[] c : cases) {
+            assertThrows(FormCodec.MalformedBodyException.class, () -> parse(c[0], c[1]), c[0]);
+        }
+    }
+
+    @Test
+    void readsNdjsonLinesAndSkipsBlankOnes() throws IOException {
+        InputStream in = stream("{\"playerName\":\"Alice\",\"seq\":1}\n\n  \n{\"playerName\":\"Bob\",\"seq\":\"x\"}");
+        ActionRequestParser.ActionRequest request = parser.acquire();
+
+        assertTrue(parser.parseLine(in, request));
+        assertEquals("Alice", request.playerName);
+        assertEquals(1L, request.seq);
+        assertTrue(parser.parseLine(in, request));
+        assertEquals("Bob", request.playerName);
+        assertEquals(-1L, request.seq);
+        assertFalse(parser.parseLine(in, request));
+    }
+
+    @Test
+    void skipsTheRestOfAnOverlongLine() throws IOException {
+        InputStream in = stream("{\"playerName\":\"" + "a".repeat(300) + "\"}\n{\"playerName\":\"Bob\"}\n");
+        ActionRequestParser.ActionRequest request = parser.acquire();
+
+        assertThrows(FormCodec.BodyTooLargeException.class, () -> parser.parseLine(in, request));
+        assertTrue(parser.parseLine(in, request));
+        assertEquals("Bob", request.playerName);
+    }
+
+    @Test
+    void releasedRequestsComeBackEmpty() throws IOException {
+        ActionRequestParser.ActionRequest request = parse("token=s3cret&playerName=Alice&requestId=r1", null);
+        parser.release(request);
+
+        ActionRequestParser.ActionRequest reused = parser.acquire();
+        assertSame(request, reused);
+        assertNull(reused.playerName);
+        assertNull(reused.requestId);
+        assertFalse(reused.hasToken());
+    }
+
+    private ActionRequestParser.ActionRequest parse(String body, String contentType) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ActionRequestParser.ActionRequest request = parser.acquire();
+        parser.parse(new ByteArrayInputStream(bytes), contentType, bytes.length, request);
+        return request;
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,68 @@
+package com.deehain.smp.networkbridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandTemplateTest {
+
+    private final StringBuilder out = new StringBuilder();
+
+    @Test
+    void expandsEveryBridgePlaceholder() {
+        CommandTemplate template = CommandTemplate.compile("teamadmin add %player_name% %nation% (%streamer%, %player_uuid%)");
+
+        assertEquals("teamadmin add Alice Pulse (Pulse, 1234)", template.expand(out, "Alice", "Pulse", "1234", "Pulse"));
+        assertTrue(template.needsUuid());
+        assertFalse(template.needsPlaceholderApi());
+    }
+
+    @Test
+    void repeatsPlaceholdersAndKeepsLiteralPercentSigns() {
+        CommandTemplate template = CommandTemplate.compile("say 100% sure: %player_name%%player_name%%");
+
+        assertEquals("say 100% sure: BobBob%", template.expand(out, "Bob", null, null, null));
+        assertFalse(template.needsUuid());
+    }
+
+    @Test
+    void leavesNullValuesAsPlaceholders() {
+        CommandTemplate template = CommandTemplate.compile("give %player_name% diamond %nation%");
+
+        assertEquals("give Alice diamond %nation%", template.expand(out, "Alice", "Pulse", null, null));
+    }
+
+    @Test
+    void reusesTheBuilder() {
+        CommandTemplate template = CommandTemplate.compile("kick %player_name%");
+        template.expand(out, "SomeoneWithALongName", null, null, null);
+
+        assertEquals("kick Al", template.expand(out, "Al", null, null, null));
+    }
+
+    @Test
+    void marksUnknownTokensForPlaceholderApi() {
+        CommandTemplate template = CommandTemplate.compile("say %player_name% has %vault_eco_balance% coins");
+
+        assertTrue(template.needsPlaceholderApi());
+        assertEquals("say Alice has %vault_eco_balance% coins", template.expand(out, "Alice", null, null, null));
+        // A percent pair around whitespace is plain text, not a placeholder.
+        assertFalse(CommandTemplate.compile("say 5% of 10% off").needsPlaceholderApi());
+    }
+
+    @Test
+    void compileAllSkipsBlankTemplates() {
+        List<CommandTemplate> templates = CommandTemplate.compileAll(Arrays.asList("say %player_name%", "", "  ", null, "say %papi_token%"));
+
+        assertEquals(2, templates.size());
+        assertEquals("say %papi_token%", templates.get(1).raw());
+        assertTrue(CommandTemplate.anyNeedsPlaceholderApi(templates));
+        assertFalse(CommandTemplate.anyNeedsPlaceholderApi(templates.subList(0, 1)));
+        assertEquals(List.of(), CommandTemplate.compileAll(null));
+    }
+}
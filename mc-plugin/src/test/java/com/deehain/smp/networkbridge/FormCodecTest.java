@@ -0,0 +1,35 @@
+package com.deehain.smp.networkbridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FormCodecTest {
+
+    @Test
+    void readsBodiesUpToTheLimit() throws IOException {
+        String body = "ü".repeat(10);
+
+        assertEquals(body, FormCodec.readBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), 20));
+        assertThrows(FormCodec.BodyTooLargeException.class,
+                () -> FormCodec.readBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), 19));
+    }
+
+    @Test
+    void parsesQueryStrings() {
+        Map<String, String> params = FormCodec.parseFormEncoded("since=42&token=a%2Bb&empty=&=nameless&flag");
+
+        assertEquals("42", params.get("since"));
+        assertEquals("a+b", params.get("token"));
+        assertEquals("", params.get("empty"));
+        assertEquals(3, params.size());
+        assertTrue(FormCodec.parseFormEncoded(null).isEmpty());
+    }
+}
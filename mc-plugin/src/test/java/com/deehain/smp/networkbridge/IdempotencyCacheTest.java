@@ -0,0 +1,54 @@
+package com.deehain.smp.networkbridge;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IdempotencyCacheTest {
+
+    @Test
+    void reservesOnceAndReplaysTheCompletedResponse() {
+        IdempotencyCache cache = new IdempotencyCache();
+
+        assertNull(cache.reserve("req-1"));
+        // A duplicate arriving while the first request still runs sees the reservation.
+        assertEquals(IdempotencyCache.IN_PROGRESS, cache.reserve("req-1"));
+
+        cache.complete("req-1", "{\"ok\":true}");
+        assertEquals("{\"ok\":true}", cache.reserve("req-1"));
+        assertNull(cache.reserve("req-2"));
+    }
+
+    @Test
+    void releasedIdsCanBeRetried() {
+        IdempotencyCache cache = new IdempotencyCache();
+        cache.reserve("req-1");
+        cache.release("req-1");
+
+        assertNull(cache.reserve("req-1"));
+    }
+
+    @Test
+    void evictsTheOldestEntriesBeyondTheLimit() {
+        IdempotencyCache cache = new IdempotencyCache();
+        cache.configure(2, 60_000L);
+        cache.reserve("a");
+        cache.complete("a", "A");
+        cache.reserve("b");
+        cache.reserve("c");
+
+        assertNull(cache.reserve("a"));
+        assertEquals(IdempotencyCache.IN_PROGRESS, cache.reserve("c"));
+    }
+
+    @Test
+    void forgetsEntriesOnceTheyExpire() {
+        IdempotencyCache cache = new IdempotencyCache();
+        cache.configure(10, 0L);
+        cache.reserve("req-1");
+        cache.complete("req-1", "{\"ok\":true}");
+
+        assertNull(cache.reserve("req-1"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.deehain.smp.networkbridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OfflineQueueTest {
+
+    @Test
+    void keepsOnlyTheNewestChangePerStreamer() {
+        OfflineQueue queue = new OfflineQueue();
+        queue.enqueue("Alice", "Pulse", "add", 1L);
+        queue.enqueue("Alice", "Chonk", "add", 2L);
+        queue.enqueue("alice", "pulse", "remove", 3L);
+        queue.enqueue("ALICE", "Pulse", "add", 4L);
+
+        assertEquals(2L, queue.pendingCount());
+        List<QueuedTeamChange> changes = queue.take("Alice");
+        assertEquals(2, changes.size());
+        assertEquals("Chonk", changes.get(0).streamer);
+        assertEquals("Pulse", changes.get(1).streamer);
+        assertEquals("add", changes.get(1).actionType);
+        assertEquals(4L, changes.get(1).createdAt);
+    }
+
+    @Test
+    void takeHandsChangesOutOnce() {
+        OfflineQueue queue = new OfflineQueue();
+        queue.enqueue("Alice", "Pulse", "add", 1L);
+        queue.enqueue("Bob", "Pulse", "add", 2L);
+
+        assertTrue(queue.hasChanges("ALICE"));
+        assertEquals(1, queue.take("alice").size());
+        assertNull(queue.take("Alice"));
+        assertFalse(queue.hasChanges("Alice"));
+        assertEquals(1, queue.playerCount());
+
+        // A change arriving after the take starts a new list instead of joining the one handed out.
+        queue.enqueue("Alice", "Chonk", "add", 3L);
+        assertEquals("Chonk", queue.take("Alice").get(0).streamer);
+    }
+
+    @Test
+    void sequenceNumbersFollowArrivalOrder() {
+        OfflineQueue queue = new OfflineQueue();
+        long first = queue.enqueue("Alice", "Pulse", "add", 1L).seq;
+        long second = queue.enqueue("Bob", "Pulse", "add", 1L).seq;
+        long third = queue.enqueue("Alice", "Pulse", "remove", 1L).seq;
+
+        assertTrue(first < second && second < third);
+    }
+
+    @Test
+    void prunesAppliedChangesOlderThanTheCutoff() {
+        OfflineQueue queue = new OfflineQueue();
+        for (int i = 0; i < 3; i++) {
+            queue.enqueue("Player" + i, "Pulse", "add", 0L);
+            for (QueuedTeamChange change : queue.take("Player" + i)) {
+                queue.markApplied(change, 100L * (i + 1));
+            }
+        }
+        queue.enqueue("Waiting", "Pulse", "add", 0L);
+        assertEquals(3, queue.historySize());
+
+        assertTrue(queue.pruneHistory(250L));
+        assertEquals(1, queue.historySize());
+        assertFalse(queue.pruneHistory(250L));
+        // Unapplied changes are never compacted out.
+        assertEquals(1L, queue.pendingCount());
+        assertEquals(2, queue.snapshot().size());
+    }
+
+    @Test
+    void restoreSkipsKnownSequencesAndExpiredHistory() {
+        OfflineQueue queue = new OfflineQueue();
+        Set<Long> known = new HashSet<>();
+        queue.restore(change("Alice", 5L, false, 0L), known, 1000L);
+        queue.restore(change("Alice", 5L, false, 0L), known, 1000L);
+        queue.restore(change("Bob", 3L, true, 500L), known, 1000L);
+        queue.restore(change("Carol", 4L, true, 1500L), known, 1000L);
+
+        assertEquals(1L, queue.pendingCount());
+        assertEquals(1, queue.historySize());
+        // New changes continue after the highest sequence number seen.
+        assertEquals(6L, queue.enqueue("Dave", "Pulse", "add", 2000L).seq);
+    }
+
+    @Test
+    void replayedApplyMovesTheChangeToHistory() {
+        OfflineQueue queue = new OfflineQueue();
+        QueuedTeamChange change = queue.enqueue("Alice", "Pulse", "add", 1L);
+        queue.enqueue("Alice", "Chonk", "add", 2L);
+
+        queue.replayApplied("ALICE", change.seq, 10L);
+        assertEquals(1L, queue.pendingCount());
+        assertEquals(1, queue.historySize());
+        assertTrue(change.applied);
+        assertEquals(10L, change.appliedAt);
+
+        queue.replayApplied("Alice", change.seq + 1, 11L);
+        assertFalse(queue.hasChanges("Alice"));
+        assertTrue(queue.isEmpty());
+    }
+
+    private static QueuedTeamChange change(String playerName, long seq, boolean applied, long appliedAt) {
+        QueuedTeamChange change = new QueuedTeamChange(playerName, "Pulse", "add", 0L);
+        change.seq = seq;
+        change.applied = applied;
+        change.appliedAt = appliedAt;
+        return change;
+    }
+}
@@ -0,0 +1,46 @@
+package com.deehain.smp.networkbridge;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResizableSemaphoreTest {
+
+    @Test
+    void growingAddsPermitsNextToTheHeldOnes() {
+        ResizableSemaphore semaphore = new ResizableSemaphore(2);
+        assertTrue(semaphore.tryAcquire(2));
+
+        semaphore.resize(3);
+        assertTrue(semaphore.tryAcquire());
+        assertFalse(semaphore.tryAcquire());
+        assertEquals(3, semaphore.permits());
+    }
+
+    @Test
+    void shrinkingBelowWhatIsHeldWaitsForReleases() {
+        ResizableSemaphore semaphore = new ResizableSemaphore(4);
+        assertTrue(semaphore.tryAcquire(3));
+
+        semaphore.resize(1);
+        assertEquals(-2, semaphore.availablePermits());
+        semaphore.release(2);
+        assertFalse(semaphore.tryAcquire());
+        semaphore.release();
+        assertTrue(semaphore.tryAcquire());
+        assertFalse(semaphore.tryAcquire());
+    }
+
+    @Test
+    void negativeSizesCountAsZero() {
+        ResizableSemaphore semaphore = new ResizableSemaphore(-1);
+        assertFalse(semaphore.tryAcquire());
+
+        semaphore.resize(-5);
+        assertEquals(0, semaphore.availablePermits());
+        semaphore.resize(1);
+        assertTrue(semaphore.tryAcquire());
+    }
+}
@@ -0,0 +1,95 @@
+package com.deehain.smp.networkbridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RosterStateTest {
+
+    @Test
+    void bumpsTheVersionOnlyForEffectiveChanges() {
+        RosterState state = new RosterState(16, 100L);
+        state.setWhitelisted("Alice", true);
+        state.setWhitelisted("Alice", true);
+        state.setMember("Alice", "Pulse", "Pulse", true);
+        state.setMember("Bob", "Pulse", "Pulse", false);
+
+        assertEquals(102L, state.version());
+        assertEquals(2, state.snapshot().facts.size());
+    }
+
+    @Test
+    void returnsTheChangesAfterAVersion() {
+        RosterState state = new RosterState(16, 0L);
+        state.setMember("Alice", "Pulse", "Pulse", true);
+        state.setPending("Bob", "Chonk", "Chonk", true);
+        state.setMember("Alice", "Pulse", "Pulse", false);
+
+        List<RosterState.Change> changes = state.changesSince(1L);
+        assertEquals(2, changes.size());
+        assertEquals(RosterState.Kind.PENDING, changes.get(0).fact.kind);
+        assertEquals(2L, changes.get(0).version);
+        assertTrue(changes.get(0).present);
+        assertEquals("Alice", changes.get(1).fact.playerName);
+        assertFalse(changes.get(1).present);
+
+        assertTrue(state.changesSince(3L).isEmpty());
+        assertEquals(3, state.changesSince(0L).size());
+    }
+
+    @Test
+    void asksForAResetOnceTheLogNoLongerReachesBack() {
+        RosterState state = new RosterState(2, 0L);
+        for (int i = 0; i < 5; i++) {
+            state.setWhitelisted("Player" + i, true);
+        }
+
+        // Versions 4 and 5 are kept, so a client at 3 can still catch up but one at 2 cannot.
+        assertEquals(2, state.changesSince(3L).size());
+        assertNull(state.changesSince(2L));
+        // A version this state never reached, e.g. from before a restart with a lost save.
+        assertNull(state.changesSince(6L));
+    }
+
+    @Test
+    void clearsAQueuedChangeOnlyIfItWasNotReplaced() {
+        RosterState state = new RosterState(16, 0L);
+        QueuedTeamChange first = queued("Alice", "Pulse", "add", 1L);
+        QueuedTeamChange second = queued("Alice", "pulse", "remove", 2L);
+        state.setQueued(first);
+        state.setQueued(second);
+        state.clearQueued(first);
+
+        List<RosterState.Fact> queued = state.facts(RosterState.Kind.QUEUED);
+        assertEquals(1, queued.size());
+        assertEquals("remove", queued.get(0).action);
+        assertEquals(2L, queued.get(0).seq);
+
+        state.clearQueued(second);
+        assertTrue(state.facts(RosterState.Kind.QUEUED).isEmpty());
+        assertEquals(3L, state.version());
+    }
+
+    @Test
+    void keepsMembershipsPerStreamer() {
+        RosterState state = new RosterState(16, 0L);
+        state.setMember("Alice", "Pulse", "Pulse", true);
+        state.setMember("Alice", "Chonk", "Chonk", true);
+        state.setMember("ALICE", "PULSE", "Pulse", false);
+
+        List<RosterState.Fact> members = state.facts(RosterState.Kind.MEMBER);
+        assertEquals(1, members.size());
+        assertEquals("Chonk", members.get(0).streamer);
+    }
+
+    private static QueuedTeamChange queued(String playerName, String streamer, String action, long seq) {
+        QueuedTeamChange change = new QueuedTeamChange(playerName, streamer, action, 0L);
+        change.seq = seq;
+        return change;
+    }
+}